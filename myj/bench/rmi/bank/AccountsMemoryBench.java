@@ -0,0 +1,63 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ * <code> AccountsMemoryBench </code> measures the heap taken by Accounts
+ * holding N accounts, for each AccountStore, and the cost of Accounts.get.
+ * The heap is measured after a full gc, before and after loading.
+ *
+ * Run with (the map store needs ~1 GB of heap per million accounts):
+ *    java -Xmx8g -cp classes rmi.bank.AccountsMemoryBench packed 1000000 10000000
+ *    java -Xmx8g -cp classes rmi.bank.AccountsMemoryBench map 1000000
+ */
+public class AccountsMemoryBench {
+
+   private static final int GET_SAMPLES = 100000;
+
+   private static long usedHeap() {
+      Runtime runtime = Runtime.getRuntime();
+      for (int i = 0; i < 4; i++) System.gc();
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+
+   private static AccountStore newStore(String kind, int count) {
+      return "packed".equals(kind) ? new PackedAccountStore(count)
+         : new MapAccountStore();
+   }
+
+   public static void main(String[] args) throws Exception {
+      String kind = args.length > 0 ? args[0] : "packed";
+      int[] counts = args.length > 1 ? new int[args.length - 1]
+         : new int[] { 1000000, 10000000 };
+      for (int i = 1; i < args.length; i++) counts[i - 1] = Integer.parseInt(args[i]);
+
+      for (int count : counts) {
+         long before = usedHeap();
+         long start = System.nanoTime();
+         Accounts accounts = new Accounts(newStore(kind, count));
+         for (int id = 1; id <= count; id++) accounts.add(id, 100 * Money.CENTS_PER_DOLLAR);
+         long loadNanos = System.nanoTime() - start;
+         long after = usedHeap();
+
+         // Time Accounts.get over a sample of the accounts (each get of
+         // a packed account exports a view, so we do not get them all)
+         int samples = Math.min(count, GET_SAMPLES);
+         start = System.nanoTime();
+         long sum = 0;
+         for (int i = 0; i < samples; i++)
+            sum += accounts.get(1 + (int) ((i * 2654435761L) % count)).hashCode() & 1;
+         long getNanos = System.nanoTime() - start;
+
+         System.out.println(String.format(
+            "%s store, %,d accounts: %,d bytes (%.1f bytes/account), load %d ms, get %.1f ns/op [%d]",
+            kind, accounts.size(), after - before,
+            (after - before) / (double) count, loadNanos / 1000000,
+            getNanos / (double) samples, sum));
+         accounts = null;
+      }
+      System.exit(0); // RMI exports keep the jvm alive otherwise
+   }
+
+} // end class AccountsMemoryBench
@@ -0,0 +1,126 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <code> AccountsStressBench </code> runs deposits and withdrawals on a few
+ * accounts from many threads at once, as RMI does for concurrent ATMs,
+ * then checks that every account's balance is exactly its initial balance
+ * plus what the threads deposited, less what they withdrew. It prints the
+ * throughput for each thread count, to show how it scales with cores.
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.AccountsStressBench packed 1024 1000000
+ *    java -cp classes rmi.bank.AccountsStressBench map 16 1000000 1 2 4 8
+ * The arguments are the store, the number of accounts, the operations per
+ * thread, and the thread counts (by default 1, 2, 4, ... up to the cores).
+ */
+public class AccountsStressBench {
+
+   private static final long INITIAL_BALANCE = 1000 * Money.CENTS_PER_DOLLAR;
+
+   public static void main(String[] args) throws Exception {
+      String kind = args.length > 0 ? args[0] : "packed";
+      int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+      int opsPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+      int[] threadCounts;
+      if (args.length > 3) {
+         threadCounts = new int[args.length - 3];
+         for (int i = 3; i < args.length; i++)
+            threadCounts[i - 3] = Integer.parseInt(args[i]);
+      }
+      else {
+         int cores = Runtime.getRuntime().availableProcessors();
+         int n = 0;
+         for (int t = 1; t <= cores; t <<= 1) n++;
+         threadCounts = new int[n];
+         for (int i = 0, t = 1; i < n; i++, t <<= 1) threadCounts[i] = t;
+      }
+
+      boolean allExact = true;
+      for (int threads : threadCounts) {
+         allExact &= run(kind, accountCount, opsPerThread, threads);
+      }
+      System.out.println(allExact ? "All balances exact." : "BALANCES LOST UPDATES!");
+      System.exit(allExact ? 0 : 1);
+   }
+
+   // One round: threads hammer the accounts, then the balances are checked
+   private static boolean run(String kind, final int accountCount,
+      final int opsPerThread, int threads) throws Exception {
+
+      AccountStore store = "packed".equals(kind)
+         ? new PackedAccountStore(accountCount) : new MapAccountStore();
+      final Accounts accounts = new Accounts(store);
+      final Account[] views = new Account[accountCount];
+      for (int id = 1; id <= accountCount; id++) {
+         accounts.add(id, INITIAL_BALANCE);
+         views[id - 1] = accounts.get(id);
+      }
+
+      // Each thread records the net amount it moved into each account
+      final long[][] deltas = new long[threads][accountCount];
+      final long[] refused = new long[threads];
+      final CountDownLatch start = new CountDownLatch(1);
+      Thread[] workers = new Thread[threads];
+      for (int t = 0; t < threads; t++) {
+         final int me = t;
+         workers[t] = new Thread(new Runnable() {
+            public void run() {
+               Random random = new Random(me);
+               long[] delta = deltas[me];
+               try {
+                  start.await();
+                  for (int i = 0; i < opsPerThread; i++) {
+                     int a = random.nextInt(accountCount);
+                     long cents = 1 + random.nextInt(10000);
+                     if (random.nextBoolean()) {
+                        views[a].depositCents(cents);
+                        delta[a] += cents;
+                     }
+                     else {
+                        try {
+                           views[a].withdrawCents(cents);
+                           delta[a] -= cents;
+                        }
+                        catch (ATMException overdraft) {
+                           refused[me]++;
+                        }
+                     }
+                  }
+               }
+               catch (Exception e) {
+                  e.printStackTrace();
+               }
+            }
+         });
+         workers[t].start();
+      }
+
+      long begin = System.nanoTime();
+      start.countDown();
+      for (Thread worker : workers) worker.join();
+      long nanos = System.nanoTime() - begin;
+
+      int wrong = 0;
+      long refusedTotal = 0;
+      for (int a = 0; a < accountCount; a++) {
+         long expected = INITIAL_BALANCE;
+         for (int t = 0; t < threads; t++) expected += deltas[t][a];
+         if (views[a].getBalanceCents() != expected) wrong++;
+      }
+      for (int t = 0; t < threads; t++) refusedTotal += refused[t];
+
+      long ops = (long) threads * opsPerThread;
+      System.out.println(String.format(
+         "%s store, %d accounts, %2d threads: %,12.0f ops/s, %,d overdrafts refused, %s",
+         kind, accountCount, threads, ops * 1e9 / nanos, refusedTotal,
+         wrong == 0 ? "balances exact" : wrong + " balances WRONG"));
+      return wrong == 0;
+   }
+
+} // end class AccountsStressBench
@@ -0,0 +1,78 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * <code> CoLocationBench </code> measures the latency of ATM operations
+ * when the ATM calls the bank and security through their RMI stubs, over
+ * loopback, as with BankServer and ATMServer on one host, and when it
+ * holds the implementations themselves, as under CoLocatedServer. Each
+ * operation is timed as a client calls it, through the ATM's stub, and
+ * inside the ATM, on the ATMImpl itself, which leaves only the ATM to bank
+ * hop. Everything runs in this jvm, one ATM at a time (ATMImpl keeps its
+ * bank and security in static fields).
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.CoLocationBench 5000
+ * The argument is the number of calls per operation and case.
+ */
+public class CoLocationBench {
+
+   private static final AccountInfo ACCOUNT = new AccountInfo(0000001, 1234);
+
+   interface Operation {
+      void run(ATM atm) throws Exception;
+   }
+
+   public static void main(String[] args) throws Exception {
+      int calls = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+      System.setProperty("java.rmi.server.hostname", "localhost");
+
+      SecurityImpl security = new SecurityImpl();
+      BankImpl bank = new BankImpl(security);
+
+      ATMImpl split = new ATMImpl((Bank) UnicastRemoteObject.toStub(bank),
+         (Security) UnicastRemoteObject.toStub(security));
+      run("split, bank over loopback", split, calls);
+      UnicastRemoteObject.unexportObject(split, true);
+
+      ATMImpl coLocated = new ATMImpl(bank, security);
+      run("co-located, bank in process", coLocated, calls);
+
+      for (SocketStats stats : SocketStats.all())
+         if (stats.getSide().equals("client")) System.out.println("   " + stats);
+      System.exit(0);
+   }
+
+   private static void run(String label, ATMImpl atm, int calls) throws Exception {
+      ATM stub = (ATM) UnicastRemoteObject.toStub(atm);
+      Operation balance = new Operation() {
+         public void run(ATM a) throws Exception {
+            a.getBalanceCents(ACCOUNT);
+         }
+      };
+      Operation deposit = new Operation() {
+         public void run(ATM a) throws Exception {
+            a.depositCents(ACCOUNT, 1);
+         }
+      };
+      System.out.println(label + ":");
+      time("getBalanceCents, client view", stub, balance, calls);
+      time("getBalanceCents, inside the ATM", atm, balance, calls);
+      time("depositCents, client view", stub, deposit, calls);
+      time("depositCents, inside the ATM", atm, deposit, calls);
+   }
+
+   private static void time(String label, ATM atm, Operation op, int calls)
+      throws Exception {
+      for (int i = 0; i < calls; i++) op.run(atm); // warm up
+      long start = System.nanoTime();
+      for (int i = 0; i < calls; i++) op.run(atm);
+      System.out.println(String.format("   %-34s %8.1f us/op",
+         label, (System.nanoTime() - start) / 1e3 / calls));
+   }
+
+} // end class CoLocationBench
@@ -0,0 +1,88 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * <code> FactoryLatencyBench </code> times ATMFactory.getATM, called
+ * remotely as a client would, for a factory that builds a new ATMImpl per
+ * request (two registry lookups and an export each time) and for the
+ * pooled ATMFactoryImpl. It starts its own registry, bank and security in
+ * this jvm, so port 1099 must be free.
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.FactoryLatencyBench 2000
+ * The argument is the number of getATM calls per factory.
+ */
+public class FactoryLatencyBench {
+
+   /**
+    * The factory as it was before pooling: a new ATM per request, each
+    * looking up the bank and security, never unexported.
+    */
+   static class NewPerRequestFactory extends UnicastRemoteObject
+      implements ATMFactory {
+
+      NewPerRequestFactory() throws RemoteException {
+         super();
+      }
+
+      public ATM getATM() throws RemoteException {
+         try {
+            return new ATMImpl((Bank) Naming.lookup("//localhost/bank"),
+               (Security) Naming.lookup("//localhost/security"));
+         }
+         catch (java.rmi.NotBoundException | java.net.MalformedURLException e) {
+            throw new RemoteException ("Lookup failed!", e);
+         }
+      }
+
+      public void returnATM(ATM atm) {
+      }
+
+      public boolean renewATM(ATM atm) {
+         return true;
+      }
+   } // end class NewPerRequestFactory
+
+   public static void main(String[] args) throws Exception {
+      int calls = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+      System.setProperty("java.rmi.server.hostname", "localhost");
+
+      LocateRegistry.createRegistry(1099);
+      SecurityImpl security = new SecurityImpl();
+      Naming.rebind("//localhost/security", security);
+      Naming.rebind("//localhost/bank", new BankImpl(security));
+      Naming.rebind("//localhost/newfactory", new NewPerRequestFactory());
+      ATMFactoryImpl pooled = new ATMFactoryImpl();
+      Naming.rebind("//localhost/atmfactory", pooled);
+
+      time("new ATMImpl per getATM", (ATMFactory) Naming.lookup("//localhost/newfactory"), calls);
+      time("pooled getATM + returnATM", (ATMFactory) Naming.lookup("//localhost/atmfactory"), calls);
+      System.out.println(pooled.getPool());
+      System.exit(0);
+   }
+
+   private static void time(String label, ATMFactory factory, int calls)
+      throws Exception {
+      // Warm up, then measure
+      for (int i = 0; i < calls / 10; i++) factory.returnATM(factory.getATM());
+      long getNanos = 0;
+      long start = System.nanoTime();
+      for (int i = 0; i < calls; i++) {
+         long begin = System.nanoTime();
+         ATM atm = factory.getATM();
+         getNanos += System.nanoTime() - begin;
+         factory.returnATM(atm);
+      }
+      long totalNanos = System.nanoTime() - start;
+      System.out.println(String.format("%-28s getATM %7.1f us/call, with returnATM %7.1f us",
+         label, getNanos / 1e3 / calls, totalNanos / 1e3 / calls));
+   }
+
+} // end class FactoryLatencyBench
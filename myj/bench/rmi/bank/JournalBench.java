@@ -0,0 +1,102 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <code> JournalBench </code> compares the throughput of journaled
+ * deposits with one fsync per operation, and with group commit at a few
+ * commit delays. Each round runs deposits from many threads against a
+ * journaled store in a temporary file, then replays the journal into a
+ * new store and checks it rebuilt the same balances.
+ *
+ * Run with (the journal goes to the given directory, which should be on
+ * the disk to measure, not on a tmpfs):
+ *    java -cp classes rmi.bank.JournalBench /var/tmp 16 2000
+ * The arguments are the directory, the threads, and the deposits per
+ * thread.
+ */
+public class JournalBench {
+
+   private static final int ACCOUNTS = 1000;
+
+   public static void main(String[] args) throws Exception {
+      File dir = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+      int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+      int deposits = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+      boolean allOk = run(dir, threads, deposits, false, 0);
+      for (long delayMicros : new long[] { 0, 200, 1000, 5000 })
+         allOk &= run(dir, threads, deposits, true, delayMicros);
+      System.out.println(allOk ? "All journals replayed exactly." : "REPLAY MISMATCH!");
+      System.exit(allOk ? 0 : 1);
+   }
+
+   private static boolean run(File dir, int threads, final int deposits,
+      boolean groupCommit, long delayMicros) throws Exception {
+
+      File file = File.createTempFile("journal-bench", ".journal", dir);
+      try {
+         Journal journal = new Journal(file, groupCommit, delayMicros);
+         AccountStore store = new PackedAccountStore(ACCOUNTS, journal);
+         journal.replay(store);
+         final Accounts accounts = new Accounts(store, journal);
+         for (int id = 1; id <= ACCOUNTS; id++) accounts.add(id, 0);
+         long syncsBefore = journal.getSyncCount();
+
+         final CountDownLatch start = new CountDownLatch(1);
+         Thread[] workers = new Thread[threads];
+         for (int t = 0; t < threads; t++) {
+            final int me = t;
+            workers[t] = new Thread(new Runnable() {
+               public void run() {
+                  Random random = new Random(me);
+                  try {
+                     start.await();
+                     for (int i = 0; i < deposits; i++)
+                        accounts.get(1 + random.nextInt(ACCOUNTS))
+                           .depositCents(1 + random.nextInt(10000));
+                  }
+                  catch (Exception e) {
+                     e.printStackTrace();
+                  }
+               }
+            });
+            workers[t].start();
+         }
+         long begin = System.nanoTime();
+         start.countDown();
+         for (Thread worker : workers) worker.join();
+         long nanos = System.nanoTime() - begin;
+         long syncs = journal.getSyncCount() - syncsBefore;
+         journal.close();
+
+         // Rebuild the balances from the journal alone, and compare
+         Journal reopened = new Journal(file, groupCommit, delayMicros);
+         AccountStore replayed = new PackedAccountStore(ACCOUNTS);
+         reopened.replay(replayed);
+         reopened.close();
+         int wrong = 0;
+         for (int id = 1; id <= ACCOUNTS; id++) {
+            if (replayed.get(id).getBalanceCents()
+                != accounts.get(id).getBalanceCents()) wrong++;
+         }
+
+         long ops = (long) threads * deposits;
+         System.out.println(String.format(
+            "%-28s %2d threads: %,10.0f deposits/s, %,7d fsyncs (%.1f deposits/fsync), %s",
+            groupCommit ? "group commit, delay " + delayMicros + " us" : "fsync per deposit",
+            threads, ops * 1e9 / nanos, syncs, ops / (double) Math.max(syncs, 1),
+            wrong == 0 ? "replay exact" : wrong + " balances WRONG after replay"));
+         return wrong == 0;
+      }
+      finally {
+         file.delete();
+      }
+   }
+
+} // end class JournalBench
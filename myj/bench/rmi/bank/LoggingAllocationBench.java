@@ -0,0 +1,85 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * <code> LoggingAllocationBench </code> measures the bytes allocated per
+ * call by LogHelper calls whose level is not logged, as on the hot paths
+ * with the default INFO level: a message concatenated at the call site,
+ * as the package used to log, against the guarded, parameterized and
+ * supplied forms. It also measures an AccountInfo construction, which logs
+ * at FINE. The thread's allocation counter (what the JMH gc profiler
+ * reads) is taken around a few million calls, after a warm up that lets
+ * the JIT compile them.
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.LoggingAllocationBench 5000000
+ * The argument is the number of calls per case. Run it again with
+ * -Drmi.bank.log.level=FINER 2>/dev/null to see the cost when logged.
+ */
+public class LoggingAllocationBench {
+
+   private static final com.sun.management.ThreadMXBean THREADS
+      = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+   static long sink;
+
+   interface Case {
+      void run(int i);
+   }
+
+   public static void main(String[] args) {
+      int calls = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+      System.out.println("FINER logged: " + LogHelper.isFiner());
+
+      measure("concatenated: finer(\"id \" + id)", calls, new Case() {
+         public void run(int i) {
+            LogHelper.finer("Accounts: Request for account received. id = " + (i + 1000));
+         }
+      });
+      measure("guarded: if (isFiner()) finer(\"id \" + id)", calls, new Case() {
+         public void run(int i) {
+            if (LogHelper.isFiner())
+               LogHelper.finer("Accounts: Request for account received. id = " + (i + 1000));
+         }
+      });
+      measure("parameterized: finer(\"op {}\", op)", calls, new Case() {
+         public void run(int i) {
+            LogHelper.finer("ATMImpl sendNotification called with operation {}",
+               Operation.DEPOSIT);
+         }
+      });
+      measure("supplied: finer(() -> \"id \" + id)", calls, new Case() {
+         public void run(final int i) {
+            LogHelper.finer(() -> "Accounts: Request for account received. id = " + (i + 1000));
+         }
+      });
+      measure("constant: fine(\"...\")", calls, new Case() {
+         public void run(int i) {
+            LogHelper.fine("AccountInfo: constructor with id and pin called ");
+         }
+      });
+      measure("new AccountInfo(id, pin), logs at FINE", calls, new Case() {
+         public void run(int i) {
+            sink += new AccountInfo(i, 1234).getId();
+         }
+      });
+      System.exit(0);
+   }
+
+   private static void measure(String label, int calls, Case c) {
+      for (int i = 0; i < calls; i++) c.run(i); // warm up
+      long thread = Thread.currentThread().getId();
+      long before = THREADS.getThreadAllocatedBytes(thread);
+      long start = System.nanoTime();
+      for (int i = 0; i < calls; i++) c.run(i);
+      long nanos = System.nanoTime() - start;
+      long bytes = THREADS.getThreadAllocatedBytes(thread) - before;
+      System.out.println(String.format("%-46s %8.2f bytes/call %7.1f ns/call",
+         label, (double) bytes / calls, (double) nanos / calls));
+   }
+
+} // end class LoggingAllocationBench
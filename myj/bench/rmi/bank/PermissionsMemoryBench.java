@@ -0,0 +1,113 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <code> PermissionsMemoryBench </code> measures the heap taken by the
+ * permissions and pins of N accounts, each with every permission, as
+ * SecurityImpl held them before (a HashSet of ids per permission and a
+ * HashMap of pins) and in a PermissionTable, and the cost of answering
+ * authorize's questions (pin and three permissions) about an account.
+ * The table's accounts share one credential, hashed once, and its pin
+ * check is that of a pin found in the CredentialCache: the credential's
+ * stamp is compared, not hashed again. The heap is measured after a full
+ * gc, before and after loading.
+ *
+ * Run with (the sets need ~250 MB of heap per million accounts):
+ *    java -Xmx8g -cp classes rmi.bank.PermissionsMemoryBench table 1000000 10000000
+ *    java -Xmx8g -cp classes rmi.bank.PermissionsMemoryBench sets 1000000
+ */
+public class PermissionsMemoryBench {
+
+   private static final int LOOKUP_SAMPLES = 1000000;
+
+   // The permissions as SecurityImpl held them before PermissionTable
+   private static class Sets {
+      final Set<Integer> deposit = new HashSet<Integer>();
+      final Set<Integer> withdraw = new HashSet<Integer>();
+      final Set<Integer> balance = new HashSet<Integer>();
+      final Map<Integer, Integer> pins = new HashMap<Integer, Integer>();
+
+      int authorize(int id, int pin) {
+         Integer actual = pins.get(id);
+         if (actual == null || actual != pin) return Permissions.NONE;
+         int mask = Permissions.AUTHENTICATED;
+         if (deposit.contains(id)) mask |= Permissions.DEPOSIT;
+         if (withdraw.contains(id)) mask |= Permissions.WITHDRAW;
+         if (balance.contains(id)) mask |= Permissions.BALANCE;
+         return mask;
+      }
+   }
+
+   private static int authorize(PermissionTable table, int id, int stamp) {
+      long record = table.lookup(id);
+      if (record == PermissionTable.MISSING || PermissionTable.stampOf(record) != stamp)
+         return Permissions.NONE;
+      return Permissions.AUTHENTICATED | PermissionTable.maskOf(record);
+   }
+
+   private static long usedHeap() {
+      Runtime runtime = Runtime.getRuntime();
+      for (int i = 0; i < 4; i++) System.gc();
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+
+   public static void main(String[] args) throws Exception {
+      String kind = args.length > 0 ? args[0] : "table";
+      int[] counts = args.length > 1 ? new int[args.length - 1]
+         : new int[] { 1000000, 10000000 };
+      for (int i = 1; i < args.length; i++) counts[i - 1] = Integer.parseInt(args[i]);
+      int all = Permissions.DEPOSIT | Permissions.WITHDRAW | Permissions.BALANCE;
+
+      for (int count : counts) {
+         long before = usedHeap();
+         long start = System.nanoTime();
+         Sets sets = null;
+         PermissionTable table = null;
+         int stamp = 0;
+         if ("sets".equals(kind)) {
+            sets = new Sets();
+            for (int id = 1; id <= count; id++) {
+               sets.deposit.add(id); sets.withdraw.add(id); sets.balance.add(id);
+               sets.pins.put(id, id % 10000);
+            }
+         }
+         else {
+            table = new PermissionTable(count);
+            PinCredential credential = PinCredential.of(1234, PinCredential.ITERATIONS);
+            stamp = credential.stamp();
+            for (int id = 1; id <= count; id++) table.grant(id, credential, all);
+         }
+         long loadNanos = System.nanoTime() - start;
+         long after = usedHeap();
+
+         // Authorize a sample of the accounts, spread over the ids
+         int[] ids = new int[LOOKUP_SAMPLES];
+         for (int i = 0; i < ids.length; i++)
+            ids[i] = 1 + (int) ((i * 2654435761L) % count);
+         long sum = 0;
+         for (int pass = 0; pass < 2; pass++) { // The first pass warms up
+            start = System.nanoTime();
+            sum = 0;
+            for (int id : ids)
+               sum += sets != null ? sets.authorize(id, id % 10000)
+                  : authorize(table, id, stamp);
+         }
+         long lookupNanos = System.nanoTime() - start;
+
+         System.out.println(String.format(
+            "%s, %,d accounts: %,d bytes (%.1f bytes/account), load %d ms, authorize %.1f ns/op [%d]",
+            kind, count, after - before, (after - before) / (double) count,
+            loadNanos / 1000000, lookupNanos / (double) ids.length, sum));
+         sets = null;
+         table = null;
+      }
+   }
+
+} // end class PermissionsMemoryBench
@@ -0,0 +1,78 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.Random;
+
+/**
+ * <code> PinCacheBench </code> measures the latency of Security.authorize,
+ * called in process, with the CredentialCache on and off. Each ATM
+ * operation authorizes its account again, so the calls come in sessions:
+ * a client picks an account at random and makes a few operations on it.
+ * The accounts are load accounts (see LoadAccounts), each with its own pin,
+ * hashed with the default PinCredential iterations, so that a call the
+ * cache does not answer pays for the full hash. The cache is:
+ *    on     as configured: once warm, it answers every call
+ *    cold   of two entries only: it forgets an account between two of its
+ *           sessions, so each session hashes its pin once
+ *    off    of no entry: each call hashes its pin
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.PinCacheBench on 20000
+ *    java -cp classes rmi.bank.PinCacheBench cold 1000
+ *    java -cp classes rmi.bank.PinCacheBench off 200
+ * The arguments are the cache and the number of sessions.
+ */
+public class PinCacheBench {
+
+   private static final int ACCOUNTS = 100;
+   private static final int OPERATIONS_PER_SESSION = 5;
+
+   public static void main(String[] args) throws Exception {
+      String cache = args.length > 0 ? args[0] : "on";
+      int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+      // Before SecurityImpl reads them: ACCOUNTS accounts, pins all apart,
+      // hashed as real accounts are
+      System.setProperty(LoadAccounts.ACCOUNTS_PROP, Integer.toString(ACCOUNTS));
+      System.setProperty("rmi.bank.load.pinIterations",
+         Integer.toString(PinCredential.ITERATIONS));
+      if (cache.equals("cold"))
+         System.setProperty("rmi.bank.security.credentialCache.size", "2");
+      else if (cache.equals("off"))
+         System.setProperty("rmi.bank.security.credentialCache.size", "0");
+      System.setProperty("rmi.bank.metrics", "false");
+
+      long start = System.nanoTime();
+      SecurityImpl security = new SecurityImpl();
+      System.out.println(String.format("%d accounts hashed with %d iterations in %d ms",
+         ACCOUNTS, PinCredential.ITERATIONS, (System.nanoTime() - start) / 1000000));
+
+      Random random = new Random(42);
+      for (int pass = 0; pass < 2; pass++) { // The first pass warms up
+         LatencyHistogram latencies = new LatencyHistogram();
+         int sessionsRun = pass == 0 ? Math.max(1, sessions / 10) : sessions;
+         for (int s = 0; s < sessionsRun; s++) {
+            int id = LoadAccounts.FIRST_ACCOUNT + random.nextInt(ACCOUNTS);
+            AccountInfo info = new AccountInfo(id, LoadAccounts.pinOf(id));
+            for (int op = 0; op < OPERATIONS_PER_SESSION; op++) {
+               long callStart = System.nanoTime();
+               int mask = security.authorize(info);
+               latencies.record(System.nanoTime() - callStart);
+               if (mask == Permissions.NONE)
+                  throw new IllegalStateException("Account " + id + " failed to authorize!");
+            }
+         }
+         if (pass == 0) continue;
+         System.out.println(String.format(
+            "cache %s, %d authorizations: mean %.1f us, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+            cache, latencies.getCount(), latencies.getMeanNanos() / 1e3,
+            latencies.getNanosAtPercentile(50) / 1e3,
+            latencies.getNanosAtPercentile(99) / 1e3,
+            latencies.getNanosAtPercentile(99.9) / 1e3, latencies.getMaxNanos() / 1e3));
+      }
+      System.exit(0); // The SecurityImpl export keeps the jvm alive otherwise
+   }
+
+} // end class PinCacheBench
@@ -0,0 +1,104 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <code> SecurityCallsBench </code> counts the calls each ATM operation
+ * makes to Security, Bank and Account. Every interface is wrapped in a
+ * counting proxy, so each counted call stands for one RMI hop in the
+ * distributed deployment (Security calls made by BankImpl are local to
+ * BankServer, and are reported separately).
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.SecurityCallsBench
+ */
+public class SecurityCallsBench {
+
+   // Call counts, keyed by "Interface.method", for the current operation
+   private static final Map<String, Integer> calls = new TreeMap<String, Integer>();
+
+   /**
+    * Wrap target in a proxy that counts every call made through iface
+    * under the given label. Accounts handed out by Bank are wrapped too.
+    */
+   @SuppressWarnings("unchecked")
+   private static <T> T counting(final Class<T> iface, final Object target,
+      final String label) {
+      InvocationHandler handler = new InvocationHandler() {
+         @Override
+         public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable {
+            String key = label + "." + method.getName();
+            Integer count = calls.get(key);
+            calls.put(key, count == null ? 1 : count + 1);
+            try {
+               Object result = method.invoke(target, args);
+               if (result instanceof Account)
+                  return counting(Account.class, result, "Account");
+               return result;
+            }
+            catch (InvocationTargetException e) {
+               throw e.getCause();
+            }
+         }
+      };
+      return (T) Proxy.newProxyInstance(iface.getClassLoader(),
+         new Class<?>[] { iface }, handler);
+   }
+
+   private interface Step {
+      void run(ATM atm) throws Exception;
+   }
+
+   private static void measure(String name, ATM atm, Step step) {
+      calls.clear();
+      try {
+         step.run(atm);
+      }
+      catch (Exception e) {
+         System.out.println(name + " failed: " + e);
+      }
+      int securityHops = 0;
+      int total = 0;
+      for (Map.Entry<String, Integer> entry : calls.entrySet()) {
+         if (entry.getKey().startsWith("Security")
+             || entry.getKey().startsWith("BankSecurity"))
+            securityHops += entry.getValue();
+         total += entry.getValue();
+      }
+      System.out.println(String.format("%-10s security calls: %d, total calls: %d %s",
+         name, securityHops, total, calls));
+   }
+
+   public static void main(String[] args) throws Exception {
+      SecurityImpl securityImpl = new SecurityImpl();
+      Bank bank = counting(Bank.class,
+         new BankImpl(counting(Security.class, securityImpl, "BankSecurity")),
+         "Bank");
+      ATM atm = new ATMImpl(bank,
+         counting(Security.class, securityImpl, "Security"));
+
+      final AccountInfo one = new AccountInfo(1, 1234);
+      final AccountInfo two = new AccountInfo(2, 2345);
+
+      measure("deposit", atm, new Step() {
+         public void run(ATM atm) throws Exception { atm.deposit(one, 100); } });
+      measure("withdraw", atm, new Step() {
+         public void run(ATM atm) throws Exception { atm.withdraw(one, 10); } });
+      measure("balance", atm, new Step() {
+         public void run(ATM atm) throws Exception { atm.getBalance(one); } });
+      measure("transfer", atm, new Step() {
+         public void run(ATM atm) throws Exception { atm.transfer(one, two, 10); } });
+
+      System.exit(0); // RMI exports keep the jvm alive otherwise
+   }
+
+} // end class SecurityCallsBench
@@ -0,0 +1,145 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code> SnapshotStartupBench </code> measures the time Accounts.recover
+ * takes to get N journaled accounts ready, from the journal alone and
+ * from a snapshot plus the journal written since. It also times the
+ * checkpoint, while a thread keeps depositing, to show that deposits go on
+ * during it, and checks that both recoveries give the same balances.
+ *
+ * Run with (the files go to the given directory, about 35 bytes per
+ * account):
+ *    java -Xmx4g -cp classes rmi.bank.SnapshotStartupBench /var/tmp 10000000 50000
+ * The arguments are the directory, the accounts, and the deposits made
+ * after the checkpoint.
+ */
+public class SnapshotStartupBench {
+
+   private static final int THREADS = 16;
+
+   public static void main(String[] args) throws Exception {
+      File dir = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+      int count = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+      int tail = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+      System.setProperty("rmi.bank.accounts.store", "packed");
+      System.setProperty("rmi.bank.snapshot.intervalSeconds", "0");
+
+      File file = File.createTempFile("snapshot-bench", ".journal", dir);
+      File snapshot = new File(file.getPath() + ".snapshot");
+      try {
+         // A journal opening count accounts, written directly
+         long start = System.nanoTime();
+         Journal journal = new Journal(file, true, 0);
+         AccountStore store = new PackedAccountStore(count, journal);
+         journal.replay(store);
+         long lsn = 0;
+         for (int id = 1; id <= count; id++) {
+            lsn = journal.record(id, 100 * Money.CENTS_PER_DOLLAR);
+            store.restore(id, 100 * Money.CENTS_PER_DOLLAR);
+         }
+         journal.awaitDurable(lsn);
+         journal.close();
+         store = null;
+         System.out.println(String.format("journal of %,d accounts written in %d ms, %,d bytes",
+            count, (System.nanoTime() - start) / 1000000, file.length()));
+
+         // Ready from the journal alone
+         start = System.nanoTime();
+         Accounts accounts = Accounts.recover(file);
+         System.out.println(String.format("ready from the journal alone:      %,6d ms",
+            (System.nanoTime() - start) / 1000000));
+
+         // Checkpoint, while deposits go on
+         final Accounts depositing = accounts;
+         final AtomicBoolean stop = new AtomicBoolean();
+         final AtomicLong deposits = new AtomicLong();
+         final AtomicLong slowest = new AtomicLong();
+         final int accountCount = count;
+         Thread depositor = new Thread(new Runnable() {
+            public void run() {
+               Random random = new Random(1);
+               try {
+                  while (stop.get() == false) {
+                     long begin = System.nanoTime();
+                     depositing.get(1 + random.nextInt(accountCount)).depositCents(1);
+                     long nanos = System.nanoTime() - begin;
+                     if (nanos > slowest.get()) slowest.set(nanos);
+                     deposits.incrementAndGet();
+                  }
+               }
+               catch (Exception e) {
+                  e.printStackTrace();
+               }
+            }
+         });
+         depositor.start();
+         start = System.nanoTime();
+         accounts.checkpoint();
+         long checkpointMillis = (System.nanoTime() - start) / 1000000;
+         stop.set(true);
+         depositor.join();
+         System.out.println(String.format(
+            "checkpoint written in %,d ms, %,d bytes; %,d deposits meanwhile, slowest %.1f ms",
+            checkpointMillis, snapshot.length(), deposits.get(), slowest.get() / 1e6));
+
+         // The tail, journaled after the checkpoint
+         deposit(accounts, count, tail);
+         long[] expected = new long[count + 1];
+         for (int id = 1; id <= count; id++)
+            expected[id] = accounts.get(id).getBalanceCents();
+         accounts.close();
+         accounts = null;
+
+         // Ready from the snapshot and the tail
+         start = System.nanoTime();
+         accounts = Accounts.recover(file);
+         System.out.println(String.format("ready from snapshot + %,d tail records: %,6d ms",
+            tail, (System.nanoTime() - start) / 1000000));
+
+         int wrong = 0;
+         for (int id = 1; id <= count; id++)
+            if (accounts.get(id).getBalanceCents() != expected[id]) wrong++;
+         accounts.close();
+         System.out.println(wrong == 0 ? "Recovered balances exact."
+            : wrong + " balances WRONG after recovery!");
+         System.exit(wrong == 0 ? 0 : 1);
+      }
+      finally {
+         file.delete();
+         snapshot.delete();
+      }
+   }
+
+   // Make deposits from THREADS threads, as concurrent ATMs would
+   private static void deposit(final Accounts accounts, final int count,
+      int total) throws InterruptedException {
+      final int each = total / THREADS;
+      Thread[] workers = new Thread[THREADS];
+      for (int t = 0; t < THREADS; t++) {
+         final int me = t;
+         workers[t] = new Thread(new Runnable() {
+            public void run() {
+               Random random = new Random(me);
+               try {
+                  for (int i = 0; i < each; i++)
+                     accounts.get(1 + random.nextInt(count)).depositCents(1 + random.nextInt(10000));
+               }
+               catch (Exception e) {
+                  e.printStackTrace();
+               }
+            }
+         });
+         workers[t].start();
+      }
+      for (Thread worker : workers) worker.join();
+   }
+
+} // end class SnapshotStartupBench
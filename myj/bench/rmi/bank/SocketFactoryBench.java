@@ -0,0 +1,57 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * <code> SocketFactoryBench </code> times Bank.getBalanceCents over RMI on
+ * loopback, with the bank exported on RMI's default sockets, then on a
+ * TunedSocketFactory with TCP_NODELAY on (the default), then off, and
+ * prints what the factory counted on both sides of the connections. Both
+ * ends of the calls are in this jvm.
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.SocketFactoryBench 5000
+ * The argument is the number of calls per case.
+ */
+public class SocketFactoryBench {
+
+   private static final AccountInfo ACCOUNT = new AccountInfo(0000001, 1234);
+
+   public static void main(String[] args) throws Exception {
+      int calls = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+      System.setProperty("java.rmi.server.hostname", "localhost");
+
+      SecurityImpl security = new SecurityImpl();
+      BankImpl bank = new BankImpl(security);
+
+      UnicastRemoteObject.unexportObject(bank, true);
+      time("default sockets", (Bank) UnicastRemoteObject.exportObject(bank, 0), calls);
+
+      TunedSocketFactory noDelay = new TunedSocketFactory("bench", "Bank",
+         true, true, 0, 0, 0);
+      UnicastRemoteObject.unexportObject(bank, true);
+      time("tuned, TCP_NODELAY on",
+         (Bank) UnicastRemoteObject.exportObject(bank, 0, noDelay, noDelay), calls);
+      for (SocketStats stats : SocketStats.all()) System.out.println("   " + stats);
+
+      TunedSocketFactory nagle = new TunedSocketFactory("bench", "Bank (Nagle)",
+         false, true, 0, 0, 0);
+      UnicastRemoteObject.unexportObject(bank, true);
+      time("tuned, TCP_NODELAY off",
+         (Bank) UnicastRemoteObject.exportObject(bank, 0, nagle, nagle), calls);
+      System.exit(0);
+   }
+
+   private static void time(String label, Bank stub, int calls) throws Exception {
+      for (int i = 0; i < calls; i++) stub.getBalanceCents(ACCOUNT); // warm up
+      long start = System.nanoTime();
+      for (int i = 0; i < calls; i++) stub.getBalanceCents(ACCOUNT);
+      long nanos = System.nanoTime() - start;
+      System.out.println(String.format("%-24s %8.1f us/call, %d calls",
+         label, nanos / 1e3 / calls, calls));
+   }
+
+} // end class SocketFactoryBench
@@ -0,0 +1,112 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code> TransferContentionBench </code> runs transfers between the same
+ * two accounts from many threads, half of them starting A to B and half
+ * B to A, each thread then alternating direction, so that opposite
+ * transfers always run at once: this is where a transfer locking its
+ * accounts in call order would deadlock. It checks that no thread is
+ * stuck, that the total of A and B is unchanged, and that no balance went
+ * negative, and prints the throughput for each thread count.
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.TransferContentionBench packed 200000 2 4 8 16
+ * The arguments are the store, the transfers per thread, and the thread
+ * counts.
+ */
+public class TransferContentionBench {
+
+   private static final int A = 1;
+   private static final int B = 2;
+   private static final long INITIAL_BALANCE = 1000 * Money.CENTS_PER_DOLLAR;
+   private static final long STUCK_SECONDS = 60;
+
+   public static void main(String[] args) throws Exception {
+      String kind = args.length > 0 ? args[0] : "packed";
+      int transfers = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+      int[] threadCounts = { 2, 4, 8, 16 };
+      if (args.length > 2) {
+         threadCounts = new int[args.length - 2];
+         for (int i = 2; i < args.length; i++)
+            threadCounts[i - 2] = Integer.parseInt(args[i]);
+      }
+
+      boolean allOk = true;
+      for (int threads : threadCounts) {
+         allOk &= run(kind, transfers, threads);
+      }
+      System.out.println(allOk ? "All transfers consistent." : "TRANSFERS INCONSISTENT!");
+      System.exit(allOk ? 0 : 1);
+   }
+
+   private static boolean run(String kind, final int transfers, int threads)
+      throws Exception {
+
+      final Accounts accounts = new Accounts("packed".equals(kind)
+         ? new PackedAccountStore(2) : new MapAccountStore());
+      accounts.add(A, INITIAL_BALANCE);
+      accounts.add(B, INITIAL_BALANCE);
+
+      final long[] refused = new long[threads];
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(threads);
+      for (int t = 0; t < threads; t++) {
+         final int me = t;
+         Thread worker = new Thread(new Runnable() {
+            public void run() {
+               Random random = new Random(me);
+               try {
+                  start.await();
+                  for (int i = 0; i < transfers; i++) {
+                     // Even threads start A to B, odd threads B to A
+                     boolean aToB = ((me + i) & 1) == 0;
+                     try {
+                        accounts.transferCents(aToB ? A : B, aToB ? B : A,
+                           1 + random.nextInt(5000));
+                     }
+                     catch (ATMException overdraft) {
+                        refused[me]++;
+                     }
+                  }
+               }
+               catch (Exception e) {
+                  e.printStackTrace();
+               }
+               done.countDown();
+            }
+         });
+         worker.setDaemon(true); // so a deadlock cannot keep the jvm up
+         worker.start();
+      }
+
+      long begin = System.nanoTime();
+      start.countDown();
+      boolean finished = done.await(STUCK_SECONDS, TimeUnit.SECONDS);
+      long nanos = System.nanoTime() - begin;
+      if (!finished) {
+         System.out.println(String.format("%s store, %2d threads: STUCK after %d s",
+            kind, threads, STUCK_SECONDS));
+         return false;
+      }
+
+      long a = accounts.get(A).getBalanceCents();
+      long b = accounts.get(B).getBalanceCents();
+      long refusedTotal = 0;
+      for (long r : refused) refusedTotal += r;
+      boolean ok = a + b == 2 * INITIAL_BALANCE && a >= 0 && b >= 0;
+      System.out.println(String.format(
+         "%s store, %2d threads: %,12.0f transfers/s, %,d overdrafts refused, "
+         + "A %s + B %s, %s",
+         kind, threads, (long) threads * transfers * 1e9 / nanos, refusedTotal,
+         Money.format(a), Money.format(b), ok ? "total kept" : "TOTAL CHANGED"));
+      return ok;
+   }
+
+} // end class TransferContentionBench
@@ -0,0 +1,119 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * <code> WireFormatBench </code> compares the serialized size and the
+ * serialize plus deserialize time of AccountInfo and TransactionNotification
+ * in their WireForm against their former default serialization, which the
+ * Legacy classes below reproduce field for field (their class names are 6
+ * bytes longer, per class described). It measures one object per stream, as
+ * an RMI argument or a notification callback travels, and a batch of
+ * notifications in one stream, as a BatchATMListener gets them.
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.WireFormatBench 200000
+ * The argument is the number of round trips per case.
+ */
+public class WireFormatBench {
+
+   /** AccountInfo as default serialization wrote it */
+   static class LegacyAccountInfo implements Serializable {
+      private int account_id;
+      private int pin;
+
+      LegacyAccountInfo(int id, int accountPin) {
+         account_id = id;
+         pin = accountPin;
+      }
+   } // end class LegacyAccountInfo
+
+   /** TransactionNotification as default serialization wrote it */
+   static class LegacyNotification implements Serializable {
+      private int account1_id;
+      private int account2_id;
+      private Operation operation;
+      private long amountCents;
+
+      LegacyNotification(int id1, int id2, Operation op, long cents) {
+         account1_id = id1;
+         account2_id = id2;
+         operation = op;
+         amountCents = cents;
+      }
+   } // end class LegacyNotification
+
+   private static final int BATCH = 100;
+
+   public static void main(String[] args) throws Exception {
+      int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+      AccountInfo info = new AccountInfo(1234567, 4321);
+      AccountInfo other = new AccountInfo(7654321, 1234);
+      TransactionNotification note = new TransactionNotification(info, other,
+         Operation.TRANSFER, 12345);
+      ArrayList<Object> batch = new ArrayList<Object>();
+      ArrayList<Object> legacyBatch = new ArrayList<Object>();
+      for (int i = 0; i < BATCH; i++) {
+         batch.add(new TransactionNotification(new AccountInfo(i, 0), null,
+            Operation.DEPOSIT, 100 + i));
+         legacyBatch.add(new LegacyNotification(i, -1, Operation.DEPOSIT, 100 + i));
+      }
+
+      compare("AccountInfo", new LegacyAccountInfo(1234567, 4321), info, rounds);
+      compare("TransactionNotification",
+         new LegacyNotification(1234567, 7654321, Operation.TRANSFER, 12345), note, rounds);
+      compare(BATCH + " notifications in one stream", legacyBatch, batch, rounds / BATCH);
+
+      // The round trip must give back what was sent
+      TransactionNotification back = (TransactionNotification) roundTrip(note);
+      AccountInfo infoBack = (AccountInfo) roundTrip(info);
+      boolean same = back.toString().equals(note.toString())
+         && infoBack.getId() == info.getId() && infoBack.getPin() == info.getPin();
+      System.out.println(same ? "Round trips exact." : "Round trips WRONG!");
+      System.exit(same ? 0 : 1);
+   }
+
+   private static void compare(String label, Object legacy, Object compact,
+      int rounds) throws Exception {
+      int legacySize = serialize(legacy).length;
+      int compactSize = serialize(compact).length;
+      double legacyMicros = time(legacy, rounds);
+      double compactMicros = time(compact, rounds);
+      System.out.println(String.format(
+         "%-32s default %5d bytes %7.2f us   WireForm %5d bytes %7.2f us",
+         label, legacySize, legacyMicros, compactSize, compactMicros));
+   }
+
+   // Microseconds per serialize plus deserialize, after a warm up
+   private static double time(Object o, int rounds) throws Exception {
+      for (int i = 0; i < rounds; i++) roundTrip(o);
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) roundTrip(o);
+      return (System.nanoTime() - start) / 1e3 / rounds;
+   }
+
+   private static byte[] serialize(Object o) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(o);
+      out.close();
+      return bytes.toByteArray();
+   }
+
+   private static Object roundTrip(Object o) throws Exception {
+      ObjectInputStream in = new ObjectInputStream(
+         new ByteArrayInputStream(serialize(o)));
+      return in.readObject();
+   }
+
+} // end class WireFormatBench
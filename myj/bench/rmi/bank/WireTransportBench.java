@@ -0,0 +1,98 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.net.InetSocketAddress;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <code> WireTransportBench </code> compares the RMI and the WireProtocol
+ * front ends of the same ATMImpl on loopback, with deposits of a cent:
+ * RMI calls one at a time, RMI calls from many threads, wire calls one at
+ * a time, and wire calls pipelined on a single connection. The ATM runs in
+ * this jvm on a local bank and security, so that only the front end
+ * transport differs between the cases.
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.WireTransportBench 20000 16 64
+ * The arguments are the deposits per case, the RMI threads, and the
+ * commands kept in flight on the wire connection.
+ */
+public class WireTransportBench {
+
+   private static final AccountInfo ACCOUNT = new AccountInfo(0000001, 1234);
+
+   public static void main(String[] args) throws Exception {
+      final int ops = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+      int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+      int depth = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+      System.setProperty("java.rmi.server.hostname", "localhost");
+
+      SecurityImpl security = new SecurityImpl();
+      ATMImpl atmImpl = new ATMImpl(new BankImpl(security), security);
+      final ATM atm = (ATM) UnicastRemoteObject.toStub(atmImpl);
+      ATMWireServer server = new ATMWireServer(atmImpl,
+         new InetSocketAddress("localhost", 0), threads, 256);
+      server.start();
+      ATMWireClient client = new ATMWireClient("localhost", server.getPort());
+
+      long before = client.getBalanceCents(ACCOUNT);
+      for (int round = 0; round < 2; round++) {
+         boolean report = round == 1; // The first round warms up
+         long start = System.nanoTime();
+         for (int i = 0; i < ops; i++) atm.depositCents(ACCOUNT, 1);
+         if (report) print("RMI, one call at a time", ops, start);
+
+         start = System.nanoTime();
+         Thread[] workers = new Thread[threads];
+         final int each = ops / threads;
+         for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+               public void run() {
+                  try {
+                     for (int i = 0; i < each; i++) atm.depositCents(ACCOUNT, 1);
+                  }
+                  catch (Exception e) {
+                     e.printStackTrace();
+                  }
+               }
+            });
+            workers[t].start();
+         }
+         for (Thread worker : workers) worker.join();
+         if (report) print("RMI, " + threads + " threads", each * threads, start);
+
+         start = System.nanoTime();
+         for (int i = 0; i < ops; i++) client.depositCents(ACCOUNT, 1);
+         if (report) print("wire, one call at a time", ops, start);
+
+         start = System.nanoTime();
+         List<ATMCommand> window = new ArrayList<ATMCommand>();
+         for (int i = 0; i < depth; i++) window.add(ATMCommand.depositCents(ACCOUNT, 1));
+         int sent = 0;
+         while (sent < ops) {
+            for (CompletableFuture<ATMResult> result : client.submitAll(window))
+               if (result.get().isOk() == false) throw result.get().getError();
+            sent += depth;
+         }
+         if (report) print("wire, " + depth + " pipelined on 1 connection", sent, start);
+      }
+
+      System.out.println("requests served on the wire: " + server.getRequestCount()
+         + ", balance grew by " + (client.getBalanceCents(ACCOUNT) - before) + " cents");
+      client.close();
+      server.close();
+      System.exit(0);
+   }
+
+   private static void print(String label, int ops, long start) {
+      long nanos = System.nanoTime() - start;
+      System.out.println(String.format("%-36s %,9.0f deposits/s %8.1f us each",
+         label, ops * 1e9 / nanos, nanos / 1e3 / ops));
+   }
+
+} // end class WireTransportBench
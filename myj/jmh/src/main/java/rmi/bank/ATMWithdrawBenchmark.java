@@ -0,0 +1,68 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <code> ATMWithdrawBenchmark </code> times ATM.withdrawCents end to end
+ * over RMI on loopback: the benchmark calls an ATM's stub, and the ATM
+ * calls the bank and security through theirs, as a Client, ATMServer and
+ * BankServer would on one host. All of it runs in the benchmark's jvm,
+ * without the registry.
+ *
+ * Each iteration gets a new ATM, which resets the ATM's cash (500
+ * dollars, some 50000 withdrawals of a cent, many more than an
+ * iteration of a second makes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ATMWithdrawBenchmark {
+
+   private static final AccountInfo ACCOUNT = new AccountInfo(0000001, 1234);
+
+   private SecurityImpl security;
+   private BankImpl bank;
+   private ATMImpl atm;
+   private ATM stub;
+
+   @Setup(Level.Trial)
+   public void setUpBank() throws Exception {
+      System.setProperty("java.rmi.server.hostname", "localhost");
+      security = new SecurityImpl();
+      bank = new BankImpl(security);
+      bank.depositCents(ACCOUNT, 1000000 * Money.CENTS_PER_DOLLAR);
+   }
+
+   @Setup(Level.Iteration)
+   public void setUpATM() throws Exception {
+      atm = new ATMImpl((Bank) UnicastRemoteObject.toStub(bank),
+         (Security) UnicastRemoteObject.toStub(security));
+      stub = (ATM) UnicastRemoteObject.toStub(atm);
+   }
+
+   @TearDown(Level.Iteration)
+   public void tearDownATM() throws Exception {
+      UnicastRemoteObject.unexportObject(atm, true);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDownBank() throws Exception {
+      UnicastRemoteObject.unexportObject(bank, true);
+      UnicastRemoteObject.unexportObject(security, true);
+   }
+
+   @Benchmark
+   public void withdrawCents() throws Exception {
+      stub.withdrawCents(ACCOUNT, 1);
+   }
+
+} // end class ATMWithdrawBenchmark
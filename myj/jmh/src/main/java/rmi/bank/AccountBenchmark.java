@@ -0,0 +1,47 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <code> AccountBenchmark </code> times AccountImpl.depositCents and
+ * withdrawCents on one account of a store, in process, through its
+ * AccountLocks and without a journal. The account opens with a balance
+ * that no run can withdraw to zero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBenchmark {
+
+   private AccountImpl account;
+
+   @Setup
+   public void setUp() {
+      account = new AccountImpl(new AccountLocks(16), null, 1, Long.MAX_VALUE / 2);
+   }
+
+   @Benchmark
+   public long depositCents() throws ATMException {
+      return account.depositCents(1);
+   }
+
+   @Benchmark
+   public long withdrawCents() throws ATMException {
+      return account.withdrawCents(1);
+   }
+
+   @Benchmark
+   @Threads(4)
+   public long depositCentsContended() throws ATMException {
+      return account.depositCents(1);
+   }
+
+} // end class AccountBenchmark
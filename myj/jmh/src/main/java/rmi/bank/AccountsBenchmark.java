@@ -0,0 +1,51 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <code> AccountsBenchmark </code> times Accounts.get on each account
+ * store, filled with a number of accounts, for ids drawn at random from
+ * the accounts open.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountsBenchmark {
+
+   private static final int IDS = 1 << 12; // A power of 2, to mask
+
+   @Param({"map", "packed"})
+   public String store;
+
+   @Param({"1000", "1000000"})
+   public int accounts;
+
+   private Accounts bankAccounts;
+   private final int[] ids = new int[IDS];
+   private int next;
+
+   @Setup
+   public void setUp() throws Exception {
+      AccountStore accountStore = store.equals("packed")
+         ? new PackedAccountStore(accounts) : new MapAccountStore();
+      bankAccounts = new Accounts(accountStore);
+      for (int id = 1; id <= accounts; id++) bankAccounts.add(id, 100);
+      Random random = new Random(42);
+      for (int i = 0; i < IDS; i++) ids[i] = 1 + random.nextInt(accounts);
+   }
+
+   @Benchmark
+   public Account get() throws ATMException {
+      return bankAccounts.get(ids[next++ & (IDS - 1)]);
+   }
+
+} // end class AccountsBenchmark
@@ -0,0 +1,47 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <code> OperationStatsBenchmark </code> times what counting a call in
+ * OperationStats costs: the call's two System.nanoTime() reads, an
+ * outcome counter and a histogram bucket, from one thread and from four
+ * on the same stats. Run it with -prof gc to see it allocate nothing.
+ *
+ * What it adds to a whole operation shows running the other benchmarks
+ * with the recording off, e.g.
+ *    java -jar jmh/target/benchmarks.jar SecurityBenchmark.authorize
+ *       -jvmArgsAppend -Drmi.bank.metrics=false
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationStatsBenchmark {
+
+   private final OperationStats stats = OperationStats.of("Benchmark", Operation.DEPOSIT);
+
+   @Benchmark
+   public void succeeded() {
+      stats.succeeded(System.nanoTime());
+   }
+
+   @Benchmark
+   @Threads(4)
+   public void succeededContended() {
+      stats.succeeded(System.nanoTime());
+   }
+
+   @Benchmark
+   public long nanoTime() {
+      return System.nanoTime();
+   }
+
+} // end class OperationStatsBenchmark
@@ -0,0 +1,61 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <code> SecurityBenchmark </code> times the SecurityImpl checks, called
+ * in process: the single checks an operation made before authorize, and
+ * authorize, which answers all of them in one call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityBenchmark {
+
+   private final AccountInfo account = new AccountInfo(0000001, 1234);
+   private SecurityImpl security;
+
+   @Setup
+   public void setUp() throws RemoteException {
+      security = new SecurityImpl();
+   }
+
+   @TearDown
+   public void tearDown() throws RemoteException {
+      UnicastRemoteObject.unexportObject(security, true);
+   }
+
+   @Benchmark
+   public boolean isAuthenticationOk() {
+      return security.isAuthenticationOk(account);
+   }
+
+   @Benchmark
+   public boolean isWithdrawOk() {
+      return security.isWithdrawOk(account);
+   }
+
+   // The checks of a withdrawal, one call each
+   @Benchmark
+   public boolean withdrawChecks() {
+      return security.isAuthenticationOk(account)
+         && security.isAccountAtmAccessOk(account)
+         && security.isWithdrawOk(account);
+   }
+
+   @Benchmark
+   public int authorize() {
+      return security.authorize(account);
+   }
+
+} // end class SecurityBenchmark
@@ -0,0 +1,65 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <code> TransactionNotificationBenchmark </code> times the life of a
+ * notification: its construction, its toString (what a listener shows),
+ * and its serialization, as RMI sends it to a listener, alone and with
+ * the reading back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionNotificationBenchmark {
+
+   private final AccountInfo from = new AccountInfo(0000001, 1234);
+   private final AccountInfo to = new AccountInfo(0000002, 2345);
+   private TransactionNotification notification;
+   private byte[] serialized;
+
+   @Setup
+   public void setUp() throws IOException {
+      notification = new TransactionNotification(from, to, Operation.TRANSFER, 12345L);
+      serialized = serialize();
+   }
+
+   @Benchmark
+   public TransactionNotification construct() {
+      return new TransactionNotification(from, to, Operation.TRANSFER, 12345L);
+   }
+
+   @Benchmark
+   public String toStringed() {
+      return notification.toString();
+   }
+
+   @Benchmark
+   public byte[] serialize() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(notification);
+      out.close();
+      return bytes.toByteArray();
+   }
+
+   @Benchmark
+   public Object deserialize() throws IOException, ClassNotFoundException {
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+      return in.readObject();
+   }
+
+} // end class TransactionNotificationBenchmark
@@ -3,12 +3,32 @@
  */
 package rmi.bank;
 
+import java.util.List;
+
 /**
  * The ATM interface defines the public interface of the ATM.
  * The interface is an RMI enabled-interface.
+ *
+ * Amounts are exact when passed as longs counting cents, via the *Cents
+ * methods. The float methods, in dollars, are kept for compatibility and
+ * round each amount to the nearest cent.
  */
 public interface ATM extends ATMListener, java.rmi.Remote {
 
+   public void depositCents(AccountInfo accountInfo, long cents)
+      throws ATMException, java.rmi.RemoteException;
+
+   public void withdrawCents(AccountInfo accountInfo, long cents)
+      throws ATMException, java.rmi.RemoteException;
+
+   public long getBalanceCents(AccountInfo accountInfo)
+      throws ATMException, java.rmi.RemoteException;
+
+   public void transferCents(AccountInfo fromAccount, AccountInfo toAccount,
+      long cents) throws ATMException, java.rmi.RemoteException;
+
+   /*** Float compatibility methods, in dollars ***/
+
    public void deposit(AccountInfo accountInfo, float amount)
       throws ATMException, java.rmi.RemoteException;
 
@@ -20,4 +40,44 @@ public interface ATM extends ATMListener, java.rmi.Remote {
 
    public void transfer(AccountInfo fromAccount, AccountInfo toAccount, float amount)
       throws ATMException, java.rmi.RemoteException;
+
+   // Register a listener to receive notifications in batches, via
+   // handleNotifications, of at most maxBatchSize notifications. A
+   // notification waits at most lingerMillis for its batch to fill.
+   // Unregister via unregisterForNotifications.
+   public boolean registerForBatchNotifications(BatchATMListener listener,
+      int maxBatchSize, long lingerMillis)
+      throws ATMException, java.rmi.RemoteException;
+
+   // Authenticate once and open a session on the account. The session
+   // operations below skip authentication until the session is closed
+   // or expires.
+   public SessionToken openSession(AccountInfo accountInfo)
+      throws ATMException, java.rmi.RemoteException;
+
+   public void closeSession(SessionToken session)
+      throws java.rmi.RemoteException;
+
+   public void depositCents(SessionToken session, long cents)
+      throws ATMException, java.rmi.RemoteException;
+
+   public void withdrawCents(SessionToken session, long cents)
+      throws ATMException, java.rmi.RemoteException;
+
+   public long getBalanceCents(SessionToken session)
+      throws ATMException, java.rmi.RemoteException;
+
+   public void deposit(SessionToken session, float amount)
+      throws ATMException, java.rmi.RemoteException;
+
+   public void withdraw(SessionToken session, float amount)
+      throws ATMException, java.rmi.RemoteException;
+
+   public Float getBalance(SessionToken session)
+      throws ATMException, java.rmi.RemoteException;
+
+   // Run a list of commands, in order, in a single remote call. One
+   // result is returned per command, in the same order.
+   public List<ATMResult> executeBatch(List<ATMCommand> commands)
+      throws ATMException, java.rmi.RemoteException;
 }
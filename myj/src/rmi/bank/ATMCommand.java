@@ -0,0 +1,90 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.Serializable;
+
+/**
+ *         The class <code> ATMCommand </code> encapsulates a single
+ *         deposit, withdraw, balance or transfer request. A list of
+ *         commands is sent to <code> ATM.executeBatch </code> so that a
+ *         whole customer session travels in one RMI round trip.
+ */
+public class ATMCommand implements Serializable {
+
+   /*** State variables for class ATMCommand */
+   private Operation operation;     // The operation requested
+   private AccountInfo account;     // The account acted upon (source of a transfer)
+   private AccountInfo toAccount;   // The destination of a transfer, if any
+   private long amountCents;        // The amount in cents, unused for BALANCE
+
+   //// Constructor ////
+   private ATMCommand(Operation operationRequested, AccountInfo info1,
+      AccountInfo info2, long centsRequested)
+   {
+      operation = operationRequested;
+      account = info1;
+      toAccount = info2;
+      amountCents = centsRequested;
+   }
+
+   /*** Factory methods, one per operation, amounts in cents ***/
+
+   public static ATMCommand depositCents(AccountInfo info, long cents) {
+      return new ATMCommand(Operation.DEPOSIT, info, null, cents);
+   }
+
+   public static ATMCommand withdrawCents(AccountInfo info, long cents) {
+      return new ATMCommand(Operation.WITHDRAW, info, null, cents);
+   }
+
+   public static ATMCommand balance(AccountInfo info) {
+      return new ATMCommand(Operation.BALANCE, info, null, 0);
+   }
+
+   public static ATMCommand transferCents(AccountInfo fromAccount,
+      AccountInfo toAccount, long cents) {
+      return new ATMCommand(Operation.TRANSFER, fromAccount, toAccount, cents);
+   }
+
+   /*** Float compatibility factory methods, in dollars ***/
+
+   public static ATMCommand deposit(AccountInfo info, float amount)
+      throws ATMException {
+      return depositCents(info, Money.toCents(amount));
+   }
+
+   public static ATMCommand withdraw(AccountInfo info, float amount)
+      throws ATMException {
+      return withdrawCents(info, Money.toCents(amount));
+   }
+
+   public static ATMCommand transfer(AccountInfo fromAccount,
+      AccountInfo toAccount, float amount) throws ATMException {
+      return transferCents(fromAccount, toAccount, Money.toCents(amount));
+   }
+
+   /*** Accessors ***/
+
+   public Operation getOperation() {
+      return operation;
+   }
+
+   public AccountInfo getAccount() {
+      return account;
+   }
+
+   public AccountInfo getToAccount() {
+      return toAccount;
+   }
+
+   public long getAmountCents() {
+      return amountCents;
+   }
+
+   public float getAmount() {
+      return Money.toDollars(amountCents);
+   }
+
+} // end class ATMCommand
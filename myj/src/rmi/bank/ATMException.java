@@ -4,7 +4,20 @@ package rmi.bank;
  * This exception defines the custom exception thrown in the ATM simulation
  */
 public class ATMException extends Exception {
+
+   // What kind of failure, for OperationStats; FAILED unless told
+   private final Outcome outcome;
+
    public ATMException(String msg) {
+      this(msg, Outcome.FAILED);
+   }
+
+   public ATMException(String msg, Outcome failureOutcome) {
       super(msg);
+      outcome = failureOutcome;
+   }
+
+   public Outcome getOutcome() {
+      return outcome;
    }
 }
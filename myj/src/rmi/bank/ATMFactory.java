@@ -5,12 +5,22 @@ package rmi.bank;
 
 /**
  * The ATMFactory interface defines the public interface
- * of the ATM factory. It consists of a single method, to get
- * a remote-aware instance of ATM.
+ * of the ATM factory. Its main method gets a remote-aware instance of
+ * ATM, leased to the caller until it returns it, or until the lease
+ * runs out unless renewed.
  */
 public interface ATMFactory extends java.rmi.Remote  {
 
    public ATM getATM()
       throws java.rmi.RemoteException;
 
+   // Give back an ATM obtained via getATM, which must not be used after
+   public void returnATM(ATM atm)
+      throws java.rmi.RemoteException;
+
+   // Extend the lease of an ATM obtained via getATM. Returns false if
+   // the lease already ran out, in which case the ATM cannot be used.
+   public boolean renewATM(ATM atm)
+      throws java.rmi.RemoteException;
+
 }
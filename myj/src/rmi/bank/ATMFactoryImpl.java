@@ -6,16 +6,54 @@ package rmi.bank;
 import java.rmi.server.UnicastRemoteObject;
 
 /**
- * The ATMFactoryImpl object returns a reference to a new
+ * The ATMFactoryImpl object returns a reference to an
  * object that the new client can act upon via the ATM
  * interface.
+ *
+ * The ATMs come from an ATMPool, created with the factory. They share the
+ * StubHolder proxies of the bank and security, which look them up on
+ * first use (the bank may start after the factory). The pool's settings
+ * can be set with system properties.
  */
 public class ATMFactoryImpl
    extends UnicastRemoteObject implements ATMFactory {
 
+   private static final int POOL_MIN_IDLE
+      = Integer.getInteger("rmi.bank.atm.pool.minIdle", 4);
+   private static final int POOL_MAX_SIZE
+      = Integer.getInteger("rmi.bank.atm.pool.maxSize", 256);
+   private static final long POOL_LEASE_MILLIS
+      = Long.getLong("rmi.bank.atm.pool.leaseMillis", 10 * 60 * 1000L);
+   private static final long POOL_IDLE_MILLIS
+      = Long.getLong("rmi.bank.atm.pool.idleMillis", 5 * 60 * 1000L);
+   private static final long POOL_WAIT_MILLIS
+      = Long.getLong("rmi.bank.atm.pool.waitMillis", 5000);
+   private static final long POOL_REAP_MILLIS
+      = Long.getLong("rmi.bank.atm.pool.reapMillis", 30 * 1000L);
+
+   private final ATMPool pool;
+
    public ATMFactoryImpl() throws java.rmi.RemoteException
    {
-      super();
+      this(StubHolder.of(ATMImpl.BANK_URL, Bank.class).proxy(),
+         StubHolder.of(ATMImpl.SECURITY_URL, Security.class).proxy());
+   }
+
+   /* Constructor for a factory of ATMs on a given bank and security,
+      e.g. the implementations themselves, in the same jvm */
+   ATMFactoryImpl(Bank bank, Security security) throws java.rmi.RemoteException
+   {
+      this(new ATMPool(bank, security, POOL_MIN_IDLE, POOL_MAX_SIZE,
+         POOL_LEASE_MILLIS, POOL_IDLE_MILLIS, POOL_WAIT_MILLIS,
+         POOL_REAP_MILLIS));
+   }
+
+   /* Constructor for a factory handing out the ATMs of a given pool */
+   ATMFactoryImpl(ATMPool atmPool) throws java.rmi.RemoteException
+   {
+      super(0, TunedSocketFactory.forHop("atm", "ATMFactory"),
+         TunedSocketFactory.forHop("atm", "ATMFactory"));
+      pool = atmPool;
    }
 
 
@@ -23,13 +61,39 @@ public class ATMFactoryImpl
 
    /**
     * get a reference to an ATMImpl RMI object the client can use
-    * via the ATM interface
+    * via the ATM interface, leased from the pool
     *
     */
    @Override
    public ATM getATM() throws java.rmi.RemoteException {
-      LogHelper.finer("ATMFactoryImpl returning a requested new instance of ATMImpl!");
-      return new ATMImpl();
+      LogHelper.finer("ATMFactoryImpl returning a pooled instance of ATMImpl!");
+      return getPool().checkout();
+   }
+
+   /**
+    * take back an ATM the client is done with, for the next client
+    *
+    */
+   @Override
+   public void returnATM(ATM atm) {
+      if (getPool().checkin(atm) == false)
+         LogHelper.fine("ATMFactoryImpl asked to take back an ATM not leased!");
+   }
+
+   /**
+    * extend the lease of an ATM the client still uses
+    *
+    */
+   @Override
+   public boolean renewATM(ATM atm) {
+      return getPool().renew(atm);
+   }
+
+   /**
+    * @return the pool of ATMs handed out, e.g. to read its metrics
+    */
+   ATMPool getPool() {
+      return pool;
    }
 
 }
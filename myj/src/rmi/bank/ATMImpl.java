@@ -5,9 +5,8 @@ package rmi.bank;
 
 import java.rmi.*;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
+import java.util.ArrayList;
 
 
 /**
@@ -20,13 +19,59 @@ public class ATMImpl extends UnicastRemoteObject implements ATM {
 
    private static Bank bank;         // Will point to the bank servicing this ATM
    private static Security security; // Will point to the security object servicing this ATM
-   private static int cash;
-   private static final int INITIAL_CASH = 500;
-
-
-   // Implement the listeners as a Set (i.e. one listener reference per listener)
-   static private final Set<ATMListener> listeners
-      = new HashSet<ATMListener>();
+   private long cash;                // In cents, guarded by this ATM
+   private static final long INITIAL_CASH       // Set for load runs
+      = Long.getLong("rmi.bank.atm.cashCents", 500 * Money.CENTS_PER_DOLLAR);
+
+   // Where the bank and security are looked up, via a StubHolder each
+   static final String BANK_URL
+      = System.getProperty("rmi.bank.lookup.bank", "//localhost/bank");
+   static final String SECURITY_URL
+      = System.getProperty("rmi.bank.lookup.security", "//localhost/security");
+
+   // By default the ATM asks the bank to run each operation (one remote
+   // call, into Bank). Setting rmi.bank.atm.accountStubs to true makes it
+   // get a remote Account from the bank and act on it instead (two
+   // remote calls, into Bank then into Account).
+   private static final boolean USE_ACCOUNT_STUBS
+      = Boolean.getBoolean("rmi.bank.atm.accountStubs");
+
+   // The calls of each operation, by outcome, and their latencies,
+   // registered as MBeans by ATMServer (see OperationStats)
+   private static final OperationStats depositStats
+      = OperationStats.of("ATM", Operation.DEPOSIT);
+   private static final OperationStats withdrawStats
+      = OperationStats.of("ATM", Operation.WITHDRAW);
+   private static final OperationStats balanceStats
+      = OperationStats.of("ATM", Operation.BALANCE);
+   private static final OperationStats transferStats
+      = OperationStats.of("ATM", Operation.TRANSFER);
+
+
+   // Sessions opened via openSession, bounded in number and lifetime,
+   // and purged of expired sessions at an interval. All three can be set
+   // with system properties.
+   private static final int MAX_SESSIONS
+      = Integer.getInteger("rmi.bank.session.max", 10000);
+   private static final long SESSION_TTL_MILLIS
+      = Long.getLong("rmi.bank.session.ttlMillis", 5 * 60 * 1000L);
+   private static final long SESSION_PURGE_MILLIS
+      = Long.getLong("rmi.bank.session.purgeMillis", 30 * 1000L);
+   static private final Sessions sessions
+      = new Sessions(MAX_SESSIONS, SESSION_TTL_MILLIS, SESSION_PURGE_MILLIS);
+
+   // The listeners are held by a dispatcher, which notifies them
+   // asynchronously (i.e. one queue per listener, drained by a few
+   // worker threads). Its settings can be set with system properties.
+   private static final int NOTIFY_THREADS
+      = Integer.getInteger("rmi.bank.notify.threads", 2);
+   private static final int NOTIFY_QUEUE_SIZE
+      = Integer.getInteger("rmi.bank.notify.queueSize", 1024);
+   private static final OverflowPolicy NOTIFY_OVERFLOW = OverflowPolicy.valueOf(
+      System.getProperty("rmi.bank.notify.overflow", "DROP_OLDEST"));
+   static private final NotificationDispatcher dispatcher
+      = new NotificationDispatcher(NOTIFY_THREADS, NOTIFY_QUEUE_SIZE,
+         NOTIFY_OVERFLOW);
 
    //// Constructor ////
 
@@ -37,41 +82,163 @@ public class ATMImpl extends UnicastRemoteObject implements ATM {
  */
    public ATMImpl() throws java.rmi.RemoteException
    {
-      super(); // Call any RMI work to do
+      // Call any RMI work to do, on sockets tuned for the client hop
+      super(0, TunedSocketFactory.forHop("atm", "ATM"),
+         TunedSocketFactory.forHop("atm", "ATM"));
 
       LogHelper.fine("AtmImpl: constructor begun!");
-      cash = INITIAL_CASH; // The ATM begins with a set cash amount
+      refill(); // The ATM begins with a set cash amount
 
-      // Now get a reference to bank and security
-      try {
-         bank = (Bank) Naming.lookup("//localhost/bank");
-         security = (Security) Naming.lookup("//localhost/security");
-      }
-      catch (Exception e) {
-         System.err.print("ATMImpl, (implementor of ATM) Error: ");
-         System.err.println("Unsuccessful RMI Bank and/or Security Lookups!");
-         e.printStackTrace();
-         System.exit(-1);
-      }
+      // Now get a reference to bank and security. The StubHolder proxies
+      // look them up on first use, and again if their server restarts.
+      bank = StubHolder.of(BANK_URL, Bank.class).proxy();
+      security = StubHolder.of(SECURITY_URL, Security.class).proxy();
 
       // Otherwise, write success to the log:
       LogHelper.fine("AtmImpl: constructor finished successfully!");
    }
 
+/**
+ *  <code> ATMImpl </code> constructor for an ATM serviced by a given
+ *        bank and security, with no registry lookups (used by ATMPool
+ *        and benchmarks)
+ */
+   ATMImpl(Bank servicingBank, Security servicingSecurity)
+      throws java.rmi.RemoteException
+   {
+      // Call any RMI work to do, on sockets tuned for the client hop
+      super(0, TunedSocketFactory.forHop("atm", "ATM"),
+         TunedSocketFactory.forHop("atm", "ATM"));
+      refill();
+      bank = servicingBank;
+      security = servicingSecurity;
+      LogHelper.fine("AtmImpl: constructor with bank and security finished!");
+   }
+
    /*** private functions ***/
 
    /**
-    * check that the account authenticates, if not throw an exception
+    * check that the account authenticates, if not throw an exception.
+    * Otherwise return all of the account's permissions, fetched in a
+    * single call to security.
     *
-    * @param amount
+    * @param info
     *    AccountInfo, specifying the account and its pin
+    *
+    * @return
+    *    The account's mask of Permissions bits
     */
-   private void checkAuthentication(AccountInfo info)
+   private int checkAuthentication(AccountInfo info)
       throws ATMException, RemoteException
    {
-      if (security.isAuthenticationOk(info) == false) {
+      int permissions = security.authorize(info);
+      if (Permissions.has(permissions, Permissions.AUTHENTICATED) == false) {
          LogHelper.fine("checkAuthentication: authentication failed!");
-         throw new ATMException("Account failed to authenticate!");
+         throw new ATMException("Account failed to authenticate!", Outcome.DENIED);
+      }
+      return permissions;
+   }
+
+   /**
+    * check that the ATM holds enough cash for a withdrawal, if not
+    * throw an exception
+    */
+   private synchronized void checkCash(long cents) throws ATMException
+   {
+      if (cents > cash)
+         throw new ATMException ("Not enough cash on hand at this ATM! Cannot proceed!");
+   }
+
+   /**
+    * take the cash of a withdrawal out of the ATM, checking there is
+    * enough in the same step, so that concurrent withdrawals never take
+    * more than the ATM holds. The cash is given back with putBackCash if
+    * the withdrawal then fails.
+    */
+   private synchronized void takeCash(long cents) throws ATMException
+   {
+      checkCash(cents);
+      cash -= cents;
+   }
+
+   private synchronized void putBackCash(long cents)
+   {
+      cash += cents;
+   }
+
+   /**
+    * <code> refill </code> restocks the ATM with its initial cash; the
+    * ATMPool refills an ATM as it leases it out.
+    *
+    * @return
+    *    the cents restocked, 0 if the drawer was full
+    */
+   synchronized long refill()
+   {
+      long restocked = INITIAL_CASH - cash;
+      cash = INITIAL_CASH;
+      return restocked;
+   }
+
+   /*
+    * The deposit, withdraw and getBalance helpers below act on an account
+    * that has already authenticated, whether just now or when its
+    * session was opened. account may be null, in which case the bank
+    * runs the operation (or, with account stubs, hands out the account).
+    */
+
+   private void deposit(AccountInfo info, int permissions, Account account,
+      long cents) throws ATMException, RemoteException
+   {
+      if (Permissions.has(permissions, Permissions.DEPOSIT)) {
+         // This operation is allowed...
+         if (account == null && USE_ACCOUNT_STUBS) account = bank.getAccount(info);
+         if (account != null) account.depositCents(cents);
+         else bank.depositCents(info, cents);
+         // We do not add deposits to the ATM's cash... they could be
+         // checks, or even if bills, the ATM cannot open the deposit
+         // envelopes and re-sort the bills...
+      }
+      else {
+         LogHelper.fine("AtmImpl, deposit: Not authorized for deposit!");
+         throw new ATMException ("Not authorized to deposit!", Outcome.DENIED);
+      }
+   }
+
+   private void withdraw(AccountInfo info, int permissions, Account account,
+      long cents) throws ATMException, RemoteException
+   {
+      if (Permissions.has(permissions, Permissions.WITHDRAW)) {
+         // This operation is allowed...
+         takeCash(cents); // throws if not enough cash is left
+         boolean done = false;
+         try {
+            if (account == null && USE_ACCOUNT_STUBS) account = bank.getAccount(info);
+            if (account != null) account.withdrawCents(cents);
+            else bank.withdrawCents(info, cents);
+            done = true;
+         }
+         finally {
+            if (done == false) putBackCash(cents);
+         }
+      }
+      else {
+         LogHelper.fine("AtmImpl, withdraw: Not authorized to withdraw!");
+         throw new ATMException ("Not authorized to withdraw!", Outcome.DENIED);
+      }
+   }
+
+   private long getBalance(AccountInfo info, int permissions, Account account)
+      throws ATMException, RemoteException
+   {
+      if (Permissions.has(permissions, Permissions.BALANCE)) {
+         if (account == null && USE_ACCOUNT_STUBS) account = bank.getAccount(info);
+         if (account != null) return account.getBalanceCents();
+         return bank.getBalanceCents(info);
+      }
+      else {
+         LogHelper.fine("AtmImpl, getBalance: Not authorized to get a balance!");
+         throw new ATMException ("Not authorized to see balances!", Outcome.DENIED);
       }
    }
 
@@ -81,57 +248,56 @@ public class ATMImpl extends UnicastRemoteObject implements ATM {
    /**
     * On behalf of a client, deposit a given amount
     *
-    * @param amount
-    *    AccountInfo, specifying the account and its pin
-    *    amount, the amount to deposit
+    * @param
+    *    info - specifying the account and its pin
+    *    cents - the amount to deposit, in cents
     */
    @Override
-   public void deposit(AccountInfo info, float amount)
+   public void depositCents(AccountInfo info, long cents)
       throws ATMException, RemoteException {
 
-         sendNotification(info, null, Operation.DEPOSIT, amount);
-         checkAuthentication(info); // throws exception if we fail.
-         if (security.isDepositOk(info) == true) {
-            // This operation is allowed...
-            Account account = bank.getAccount(info);
-            account.deposit(amount);
-            // We do not add deposits to the ATM's cash... they could be
-            // checks, or even if bills, the ATM cannot open the deposit
-            // envelopes and re-sort the bills...
+         long start = System.nanoTime();
+         BankEvents.ATMOperation event = BankEvents.ATMOperation.started();
+         try {
+            sendNotification(info, null, Operation.DEPOSIT, cents);
+            int permissions = checkAuthentication(info); // throws exception if we fail.
+            deposit(info, permissions, null, cents);
          }
-         else {
-            LogHelper.fine("AtmImpl, deposit: Not authorized for deposit!");
-            throw new ATMException ("Not authorized to deposit!");
+         catch (Exception e) {
+            event.finish(Operation.DEPOSIT, info, null, cents,
+               depositStats.failed(e, start));
+            throw e;
          }
+         event.finish(Operation.DEPOSIT, info, null, cents, depositStats.succeeded(start));
    }
 
    /**
     * On behalf of a client, withdraw a given amount
     *
-    * @param amount
-    *    AccountInfo, specifying the account and its pin
-    *    amount, the amount to withdraw
+    * @param
+    *    info - specifying the account and its pin
+    *    cents - the amount to withdraw, in cents
     */
    @Override
-   public void withdraw(AccountInfo info, float amount)
+   public void withdrawCents(AccountInfo info, long cents)
       throws ATMException, RemoteException {
 
-         // No need to proceed further if not enough cash!
-         if (cash - amount < 0)
-            throw new ATMException ("Not enough cash on hand at this ATM! Cannot proceed!");
-
-         sendNotification(info, null, Operation.WITHDRAW, amount);
-         checkAuthentication(info); // throws exception if we fail.
-         if (security.isWithdrawOk(info) == true) {
-            // This operation is allowed...
-            Account account = bank.getAccount(info);
-            account.withdraw(amount);
-            cash -= amount;
+         long start = System.nanoTime();
+         BankEvents.ATMOperation event = BankEvents.ATMOperation.started();
+         try {
+            // No need to proceed further if not enough cash!
+            checkCash(cents);
+
+            sendNotification(info, null, Operation.WITHDRAW, cents);
+            int permissions = checkAuthentication(info); // throws exception if we fail.
+            withdraw(info, permissions, null, cents);
          }
-         else {
-            LogHelper.fine("AtmImpl, withdraw: Not authorized to withdraw!");
-            throw new ATMException ("Not authorized to withdraw!");
+         catch (Exception e) {
+            event.finish(Operation.WITHDRAW, info, null, cents,
+               withdrawStats.failed(e, start));
+            throw e;
          }
+         event.finish(Operation.WITHDRAW, info, null, cents, withdrawStats.succeeded(start));
    }
 
    /**
@@ -141,23 +307,28 @@ public class ATMImpl extends UnicastRemoteObject implements ATM {
     *    info - specifying the account and its pin
     *
     * @return
-    *    The current balance
+    *    The current balance, in cents
     */
    @Override
-   public Float getBalance(AccountInfo info)
+   public long getBalanceCents(AccountInfo info)
       throws ATMException, RemoteException {
 
          LogHelper.finer("AtmImpl, getBalance called!");
-         sendNotification(info, null, Operation.BALANCE, 0.0f);
-         checkAuthentication(info); // throws exception if we fail.
-         if (security.isBalanceOk(info) == true) {
-            Account account = bank.getAccount(info);
-            return account.getBalance();
+         long start = System.nanoTime();
+         BankEvents.ATMOperation event = BankEvents.ATMOperation.started();
+         long balance;
+         try {
+            sendNotification(info, null, Operation.BALANCE, 0);
+            int permissions = checkAuthentication(info); // throws exception if we fail.
+            balance = getBalance(info, permissions, null);
          }
-         else {
-            LogHelper.fine("AtmImpl, getBalance: Not authorized to get a balance!");
-            throw new ATMException ("Not authorized to see balances!");
+         catch (Exception e) {
+            event.finish(Operation.BALANCE, info, null, 0,
+               balanceStats.failed(e, start));
+            throw e;
          }
+         event.finish(Operation.BALANCE, info, null, 0, balanceStats.succeeded(start));
+         return balance;
    }
 
    /**
@@ -166,36 +337,253 @@ public class ATMImpl extends UnicastRemoteObject implements ATM {
     * @param
     *    fromAccount - specifying the source account and its pin
     *    toAccount - specifying the destination account and its pin
-    *    amount - the amount to transfer
+    *    cents - the amount to transfer, in cents
     *
     */
    @Override
-   public void transfer(AccountInfo fromAccount, AccountInfo toAccount, float amount)
-      throws ATMException, RemoteException {
+   public void transferCents(AccountInfo fromAccount, AccountInfo toAccount,
+      long cents) throws ATMException, RemoteException {
+
+         long start = System.nanoTime();
+         BankEvents.ATMOperation event = BankEvents.ATMOperation.started();
+         try {
+            runTransfer(fromAccount, toAccount, cents);
+         }
+         catch (Exception e) {
+            event.finish(Operation.TRANSFER, fromAccount, toAccount, cents,
+               transferStats.failed(e, start));
+            throw e;
+         }
+         event.finish(Operation.TRANSFER, fromAccount, toAccount, cents, transferStats.succeeded(start));
+   }
+
+   // The transfer itself, timed by transferCents
+   private void runTransfer(AccountInfo fromAccount, AccountInfo toAccount,
+      long cents) throws ATMException, RemoteException {
 
-         sendNotification(fromAccount, toAccount, Operation.TRANSFER, amount);
+         sendNotification(fromAccount, toAccount, Operation.TRANSFER, cents);
 
-         checkAuthentication(fromAccount); // throws exception if we fail.
-         checkAuthentication(toAccount); // throws exception if we fail.
+         // throw exceptions if we fail.
+         int fromPermissions = checkAuthentication(fromAccount);
+         int toPermissions = checkAuthentication(toAccount);
 
          // To transfer, we must have withdraw privs in fromAccount, and
          // then deposit privs in toAccount
 
-         if (security.isWithdrawOk(fromAccount) == true &&
-             security.isDepositOk(toAccount) == true) {
-            // The transfer operation is ok, proceed.
-            Account from = bank.getAccount(fromAccount);
-            Account to = bank.getAccount(toAccount);
-            from.withdraw(amount);
-            to.deposit(amount);
-            // Success assumed, in a real implementation the withdrawal
-            // might need rollback if the deposit, for some reason, failed.
+         if (Permissions.has(fromPermissions, Permissions.WITHDRAW) &&
+             Permissions.has(toPermissions, Permissions.DEPOSIT)) {
+            // The transfer operation is ok, proceed. Even with account
+            // stubs, the bank runs the transfer: it applies both legs
+            // atomically, where two calls on the stubs could not roll back
+            // the withdrawal, or keep an opposite transfer from interleaving.
+            bank.transferCents(fromAccount, toAccount, cents);
          }
          else {
             LogHelper.fine("AtmImpl, transfer: Transfer not allowed!");
-            throw new ATMException ("Not authorized to transfer!");
+            throw new ATMException ("Not authorized to transfer!", Outcome.DENIED);
+         }
+   } // end runTransfer
+
+   /**
+    * On behalf of a client, authenticate an account once and open a
+    * session on it. The operations taking the returned token skip the
+    * authentication the AccountInfo operations perform on every call.
+    *
+    * @param
+    *    info - specifying the account and its pin
+    *
+    * @return
+    *    The token to pass to later operations
+    */
+   @Override
+   public SessionToken openSession(AccountInfo info)
+      throws ATMException, RemoteException {
+
+         LogHelper.finer("AtmImpl, openSession called!");
+         int permissions = checkAuthentication(info); // throws exception if we fail.
+         // With account stubs, the session keeps the account's stub;
+         // otherwise the bank runs each of the session's operations.
+         Account account = USE_ACCOUNT_STUBS ? bank.getAccount(info) : null;
+         return sessions.open(info, permissions, account);
+   }
+
+   /**
+    * On behalf of a client, close a session it no longer needs.
+    *
+    * @param
+    *    token - the session to close
+    */
+   @Override
+   public void closeSession(SessionToken token) {
+      LogHelper.finer("AtmImpl, closeSession called!");
+      sessions.close(token);
+   }
+
+   /**
+    * On behalf of a client holding a session, deposit a given amount
+    *
+    * @param
+    *    token - the session, as returned by openSession
+    *    cents - the amount to deposit, in cents
+    */
+   @Override
+   public void depositCents(SessionToken token, long cents)
+      throws ATMException, RemoteException {
+
+         long start = System.nanoTime();
+         BankEvents.ATMOperation event = BankEvents.ATMOperation.started();
+         AccountInfo info = null; // Known once the session is
+         try {
+            Sessions.Session session = sessions.get(token); // throws if expired
+            info = session.getAccountInfo();
+            sendNotification(info, null, Operation.DEPOSIT, cents);
+            deposit(info, session.getPermissions(), session.getAccount(), cents);
+         }
+         catch (Exception e) {
+            event.finish(Operation.DEPOSIT, info, null, cents,
+               depositStats.failed(e, start));
+            throw e;
+         }
+         event.finish(Operation.DEPOSIT, info, null, cents, depositStats.succeeded(start));
+   }
+
+   /**
+    * On behalf of a client holding a session, withdraw a given amount
+    *
+    * @param
+    *    token - the session, as returned by openSession
+    *    cents - the amount to withdraw, in cents
+    */
+   @Override
+   public void withdrawCents(SessionToken token, long cents)
+      throws ATMException, RemoteException {
+
+         long start = System.nanoTime();
+         BankEvents.ATMOperation event = BankEvents.ATMOperation.started();
+         AccountInfo info = null; // Known once the session is
+         try {
+            checkCash(cents);
+            Sessions.Session session = sessions.get(token); // throws if expired
+            info = session.getAccountInfo();
+            sendNotification(info, null, Operation.WITHDRAW, cents);
+            withdraw(info, session.getPermissions(), session.getAccount(), cents);
+         }
+         catch (Exception e) {
+            event.finish(Operation.WITHDRAW, info, null, cents,
+               withdrawStats.failed(e, start));
+            throw e;
+         }
+         event.finish(Operation.WITHDRAW, info, null, cents, withdrawStats.succeeded(start));
+   }
+
+   /**
+    * On behalf of a client holding a session, request a balance
+    *
+    * @param
+    *    token - the session, as returned by openSession
+    *
+    * @return
+    *    The current balance, in cents
+    */
+   @Override
+   public long getBalanceCents(SessionToken token)
+      throws ATMException, RemoteException {
+
+         long start = System.nanoTime();
+         BankEvents.ATMOperation event = BankEvents.ATMOperation.started();
+         long balance;
+         AccountInfo info = null; // Known once the session is
+         try {
+            Sessions.Session session = sessions.get(token); // throws if expired
+            info = session.getAccountInfo();
+            sendNotification(info, null, Operation.BALANCE, 0);
+            balance = getBalance(info, session.getPermissions(), session.getAccount());
+         }
+         catch (Exception e) {
+            event.finish(Operation.BALANCE, info, null, 0,
+               balanceStats.failed(e, start));
+            throw e;
+         }
+         event.finish(Operation.BALANCE, info, null, 0, balanceStats.succeeded(start));
+         return balance;
+   }
+
+   /*
+    * The float methods below, in dollars, round each amount to the
+    * nearest cent and run the matching *Cents method.
+    */
+
+   @Override
+   public void deposit(AccountInfo info, float amount)
+      throws ATMException, RemoteException {
+         depositCents(info, Money.toCents(amount));
+   }
+
+   @Override
+   public void withdraw(AccountInfo info, float amount)
+      throws ATMException, RemoteException {
+         withdrawCents(info, Money.toCents(amount));
+   }
+
+   @Override
+   public Float getBalance(AccountInfo info)
+      throws ATMException, RemoteException {
+         return Money.toDollars(getBalanceCents(info));
+   }
+
+   @Override
+   public void transfer(AccountInfo fromAccount, AccountInfo toAccount, float amount)
+      throws ATMException, RemoteException {
+         transferCents(fromAccount, toAccount, Money.toCents(amount));
+   }
+
+   @Override
+   public void deposit(SessionToken token, float amount)
+      throws ATMException, RemoteException {
+         depositCents(token, Money.toCents(amount));
+   }
+
+   @Override
+   public void withdraw(SessionToken token, float amount)
+      throws ATMException, RemoteException {
+         withdrawCents(token, Money.toCents(amount));
+   }
+
+   @Override
+   public Float getBalance(SessionToken token)
+      throws ATMException, RemoteException {
+         return Money.toDollars(getBalanceCents(token));
+   }
+
+   /**
+    * On behalf of a client, run a list of commands in a single call.
+    * Each command goes through the same checks and notifications as the
+    * matching single-operation method. A failing command does not stop
+    * the batch: its exception is recorded in its result and the next
+    * command runs.
+    *
+    * @param
+    *    commands - the commands to run, in order
+    *
+    * @return
+    *    One result per command, in the same order as the commands.
+    */
+   @Override
+   public List<ATMResult> executeBatch(List<ATMCommand> commands)
+      throws ATMException, RemoteException {
+
+         if (commands == null)
+            throw new ATMException ("No commands to execute!");
+
+         if (LogHelper.isFiner())
+            LogHelper.finer("AtmImpl, executeBatch called with "
+               + commands.size() + " commands!");
+         List<ATMResult> results = new ArrayList<ATMResult>(commands.size());
+         for (ATMCommand command : commands) {
+            results.add(executeCommand(command));
          }
-   } // end transfer
+         return results;
+   } // end executeBatch
 
    /*** ATMListener Implementation Methods ***/
 
@@ -228,10 +616,34 @@ public class ATMImpl extends UnicastRemoteObject implements ATM {
 
       // A listener has asked us to register with us, we store a
       // reference and will call the registered object when we choose
-      if (listeners.contains(listener)) return true; // No need to add
       LogHelper.fine("ATMImpl adding listener for notifications! listener is: "
          + listener);
-      return listeners.add(listener);
+      return dispatcher.register(listener);
+   }
+
+   /**
+    * Register a third party that wants its notifications in batches, at
+    * most maxBatchSize per call, each notification waiting at most
+    * lingerMillis for its batch to fill.
+    *
+    * @param
+    *    listener - the listener requesting future notifications
+    *    maxBatchSize - the most notifications per handleNotifications call
+    *    lingerMillis - the longest a notification waits to be delivered
+    *
+    */
+   @Override
+   public boolean registerForBatchNotifications(BatchATMListener listener,
+      int maxBatchSize, long lingerMillis) throws ATMException {
+
+      if (maxBatchSize < 1 || lingerMillis < 0 || maxBatchSize > NOTIFY_QUEUE_SIZE) {
+         LogHelper.fine("ATMImpl refusing batch settings " + maxBatchSize
+            + ", " + lingerMillis);
+         throw new ATMException ("Invalid batch size or linger time!");
+      }
+      LogHelper.fine("ATMImpl adding batch listener for notifications! listener is: "
+         + listener);
+      return dispatcher.registerBatch(listener, maxBatchSize, lingerMillis);
    }
 
    /**
@@ -248,10 +660,9 @@ public class ATMImpl extends UnicastRemoteObject implements ATM {
 
       // A (hopefully) previously registered listener has asked us to
       // unregister with us once it is done
-      if (listeners.contains(listener)) {
-         LogHelper.fine("ATMImpl removing a listener perviosuly registered: "
+      if (dispatcher.unregister(listener)) {
+         LogHelper.fine("ATMImpl removed a listener perviosuly registered: "
             + listener);
-         listeners.remove(listener);
       }
       else
          LogHelper.warn("ATMImpl asked to remove an unregistered a listener: "
@@ -262,35 +673,74 @@ public class ATMImpl extends UnicastRemoteObject implements ATM {
 
    /*** Other private functions ***/
 
+   // Helper function to run one command of a batch, turning its outcome
+   // (or its failure) into an ATMResult. Also used by ATMWireServer.
+   ATMResult executeCommand (ATMCommand command) {
+
+      if (command == null || command.getOperation() == null) {
+         return ATMResult.failure(Operation.UNINITALIZED,
+            new ATMException ("Malformed command in batch!"));
+      }
+
+      Operation operation = command.getOperation();
+      try {
+         switch (operation) {
+            case DEPOSIT:
+               depositCents(command.getAccount(), command.getAmountCents());
+               return ATMResult.success(operation, null);
+            case WITHDRAW:
+               withdrawCents(command.getAccount(), command.getAmountCents());
+               return ATMResult.success(operation, null);
+            case BALANCE:
+               return ATMResult.success(operation,
+                  getBalanceCents(command.getAccount()));
+            case TRANSFER:
+               transferCents(command.getAccount(), command.getToAccount(),
+                  command.getAmountCents());
+               return ATMResult.success(operation, null);
+            default:
+               return ATMResult.failure(operation,
+                  new ATMException ("Unsupported operation in batch!"));
+         }
+      }
+      catch (ATMException e) {
+         return ATMResult.failure(operation, e);
+      }
+      catch (RemoteException e) {
+         // The bank could not be reached for this command, report it
+         // and let the remaining commands try on their own.
+         LogHelper.fine("AtmImpl, executeBatch: remote failure " + e);
+         return ATMResult.failure(operation,
+            new ATMException ("Bank unavailable: " + e.getMessage()));
+      }
+   } // executeCommand
+
    // Helper function to send a Notification message to all listeners.
    private void sendNotification (AccountInfo info1, AccountInfo info2,
-      Operation operation, Float amount) {
+      Operation operation, long cents) {
 
-      LogHelper.finer ("ATMImpl sendNotification called with operation " +
+      LogHelper.finer ("ATMImpl sendNotification called with operation {}",
          operation);
 
       // Create a new encapsulation of the TransactionNotification
       // containing a message
       TransactionNotification msg =
-         new TransactionNotification (info1, info2, operation, amount);
+         new TransactionNotification (info1, info2, operation, cents);
 
-      // Call all registered callers.
-      Iterator itr = listeners.iterator();
-      while (itr.hasNext()) {
-         ATMListener listener = (ATMListener) itr.next();
-         try {
-            LogHelper.finer ("Sending notification to listener " + listener);
-            listener.handleNotification(msg); // Call each listener.
-         }
-         catch (Exception e) {
-            // We log and print to stderr, cannot do much more...
-            System.err.println("AtmImpl, Failed to call a handler!");
-            LogHelper.fine("AtmImpl, Failed to call a handler!");
-            e.printStackTrace();
-         } // catch
-      } // while
+      // Queue the message for all registered callers; the dispatcher's
+      // workers make the remote calls, off this transaction's path.
+      dispatcher.dispatch(msg);
    } // sendNotification
 
+   /**
+    * @return
+    *    the dispatcher delivering this ATM's notifications, e.g. to read
+    *    its queue depth and dropped counters
+    */
+   static NotificationDispatcher getDispatcher() {
+      return dispatcher;
+   }
+
 
 }  // end ATMImpl
 
@@ -0,0 +1,281 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *         The class <code> ATMPool </code> holds exported ATMImpl instances
+ *         for ATMFactoryImpl to hand out, so that getting an ATM neither
+ *         looks up the bank and security in the registry nor exports a new
+ *         remote object. All pooled ATMs share the Bank and Security stubs
+ *         the pool is given.
+ *
+ *         An ATM is checked out with a lease. The client returns it (via
+ *         ATMFactory.returnATM) when done, or renews the lease to keep it
+ *         longer. A reaper thread unexports ATMs whose lease ran out, since
+ *         their client is presumably gone. It also unexports idle ATMs
+ *         beyond the minimum kept warm, once idle for a while, and creates
+ *         ATMs to keep the minimum.
+ *
+ *         ATMPool is not RMI-remote enabled; it is used by ATMFactoryImpl.
+ *         ATMServer and CoLocatedServer register it as the platform MBean
+ *         rmi.bank:type=ATMPool, which shows its counts (see ATMPoolMBean).
+ */
+public class ATMPool implements ATMPoolMBean {
+
+   /**
+    * A <code> Lease </code> is the pool's record of a checked out ATM.
+    */
+   private static class Lease {
+      final ATMImpl atm;
+      long expiresAt;
+
+      Lease(ATMImpl leased, long leaseExpiresAt) {
+         atm = leased;
+         expiresAt = leaseExpiresAt;
+      }
+   } // end class Lease
+
+   /**
+    * An <code> Idle </code> is an ATM waiting in the pool.
+    */
+   private static class Idle {
+      final ATMImpl atm;
+      final long since;
+
+      Idle(ATMImpl waiting, long idleSince) {
+         atm = waiting;
+         since = idleSince;
+      }
+   } // end class Idle
+
+   /*** State variables for class ATMPool */
+   private final Bank bank;
+   private final Security security;
+   private final int minIdle;        // ATMs kept ready
+   private final int maxSize;        // ATMs at most, idle and leased
+   private final long leaseMillis;   // Lease given at checkout or renewal
+   private final long idleMillis;    // Idle time after which extras go
+   private final long waitMillis;    // Longest a checkout waits when full
+
+   // Guarded by this
+   private final Deque<Idle> idle = new ArrayDeque<Idle>();
+   private final Map<Remote, Lease> leased = new HashMap<Remote, Lease>();
+   private long created;
+   private long checkouts;
+   private long returns;
+   private long reaped;       // Unexported when their lease ran out
+   private long retired;      // Unexported after idling
+   private long exhausted;    // Checkouts that found the pool full
+   private long refills;      // Checkouts that restocked an ATM's cash
+   private long refilledCents;
+
+   private final ScheduledExecutorService reaper;
+
+   /* Constructor for ATMPool, pre-warming minIdle ATMs */
+   public ATMPool(Bank poolBank, Security poolSecurity, int minIdleAtms,
+      int maxAtms, long atmLeaseMillis, long atmIdleMillis,
+      long checkoutWaitMillis, long reapIntervalMillis) throws RemoteException {
+
+      assert minIdleAtms <= maxAtms : "ATMPool minimum above its maximum!";
+      bank = poolBank;
+      security = poolSecurity;
+      minIdle = minIdleAtms;
+      maxSize = maxAtms;
+      leaseMillis = atmLeaseMillis;
+      idleMillis = atmIdleMillis;
+      waitMillis = checkoutWaitMillis;
+
+      synchronized (this) {
+         long now = System.currentTimeMillis();
+         for (int i = 0; i < minIdle; i++) idle.push(new Idle(create(), now));
+      }
+
+      reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "atm-pool-reaper");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      reaper.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            reap();
+         }
+      }, reapIntervalMillis, reapIntervalMillis, TimeUnit.MILLISECONDS);
+      LogHelper.fine("ATMPool: started " + this);
+   }
+
+   /**
+    * <code> checkout </code> leases an ATM: an idle one if any, else a
+    * new one if the pool is not full, else the first one returned within
+    * the wait time.
+    *
+    * @return
+    *    the stub of the leased ATM
+    * @throws RemoteException
+    *    if no ATM could be had within the wait time
+    */
+   public synchronized ATM checkout() throws RemoteException {
+      long now = System.currentTimeMillis();
+      long deadline = now + waitMillis;
+      while (idle.isEmpty() && leased.size() >= maxSize) {
+         long wait = deadline - System.currentTimeMillis();
+         if (wait <= 0) {
+            exhausted++;
+            LogHelper.warn("ATMPool: no ATM available! " + this);
+            throw new RemoteException ("No ATM available, try again later!");
+         }
+         try {
+            wait(wait);
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException ("Interrupted waiting for an ATM!");
+         }
+      }
+
+      // The most recently used first: it is the likeliest to be warm
+      ATMImpl atm = idle.isEmpty() ? create() : idle.pop().atm;
+      long restocked = atm.refill(); // Each lease starts with a full cash drawer
+      if (restocked > 0) {
+         refills++;
+         refilledCents += restocked;
+      }
+      ATM stub = (ATM) UnicastRemoteObject.toStub(atm);
+      leased.put(stub, new Lease(atm, System.currentTimeMillis() + leaseMillis));
+      checkouts++;
+      return stub;
+   }
+
+   /**
+    * <code> checkin </code> takes back a leased ATM, which the client
+    * must not use anymore.
+    *
+    * @return
+    *    false if the ATM was not leased from this pool, e.g. because its
+    *    lease ran out and it was reaped
+    */
+   public synchronized boolean checkin(ATM atm) {
+      Lease lease = leased.remove(atm);
+      if (lease == null) return false;
+      idle.push(new Idle(lease.atm, System.currentTimeMillis()));
+      returns++;
+      notify();
+      return true;
+   }
+
+   /**
+    * <code> renew </code> extends the lease of an ATM by the lease time.
+    *
+    * @return
+    *    false if the ATM is not leased from this pool anymore
+    */
+   public synchronized boolean renew(ATM atm) {
+      Lease lease = leased.get(atm);
+      if (lease == null) return false;
+      lease.expiresAt = System.currentTimeMillis() + leaseMillis;
+      return true;
+   }
+
+   /*** Pool metrics, shown over JMX (see ATMPoolMBean) ***/
+
+   @Override
+   public synchronized int getIdleCount() { return idle.size(); }
+   @Override
+   public synchronized int getLeasedCount() { return leased.size(); }
+   @Override
+   public int getMaxSize() { return maxSize; }
+   @Override
+   public synchronized long getCreatedCount() { return created; }
+   @Override
+   public synchronized long getCheckoutCount() { return checkouts; }
+   @Override
+   public synchronized long getReturnedCount() { return returns; }
+   @Override
+   public synchronized long getReapedCount() { return reaped; }
+   @Override
+   public synchronized long getRetiredCount() { return retired; }
+   @Override
+   public synchronized long getExhaustedCount() { return exhausted; }
+   @Override
+   public synchronized long getRefillCount() { return refills; }
+   @Override
+   public synchronized long getRefilledCents() { return refilledCents; }
+
+   @Override
+   public synchronized String toString() {
+      return "ATMPool[idle " + idle.size() + ", leased " + leased.size()
+         + " of " + maxSize + ", created " + created + ", checkouts "
+         + checkouts + ", returns " + returns + ", reaped " + reaped
+         + ", retired " + retired + ", exhausted " + exhausted + ", refills "
+         + refills + "]";
+   }
+
+   /*** private functions ***/
+
+   // Make and export a new ATM, serviced by the pool's stubs
+   private ATMImpl create() throws RemoteException {
+      ATMImpl atm = new ATMImpl(bank, security);
+      created++;
+      return atm;
+   }
+
+   // Unexport abandoned and extra idle ATMs, and top up the minimum
+   private void reap() {
+      synchronized (this) {
+         long now = System.currentTimeMillis();
+         Iterator<Lease> leases = leased.values().iterator();
+         while (leases.hasNext()) {
+            Lease lease = leases.next();
+            if (lease.expiresAt <= now) {
+               leases.remove();
+               unexport(lease.atm);
+               reaped++;
+               notify(); // room for a checkout waiting on a full pool
+            }
+         }
+
+         // The least recently used idle ATMs are at the tail
+         while (idle.size() > minIdle && now - idle.peekLast().since >= idleMillis) {
+            unexport(idle.pollLast().atm);
+            retired++;
+         }
+
+         try {
+            while (idle.size() < minIdle && idle.size() + leased.size() < maxSize)
+               idle.addLast(new Idle(create(), now));
+         }
+         catch (RemoteException e) {
+            LogHelper.warn("ATMPool: cannot create an ATM! " + e);
+         }
+      }
+      LogHelper.finer("ATMPool: reaped, now {}", this);
+   }
+
+   private static void unexport(ATMImpl atm) {
+      try {
+         UnicastRemoteObject.unexportObject(atm, true);
+      }
+      catch (NoSuchObjectException alreadyUnexported) {
+         // Nothing to do
+      }
+   }
+
+} // end class ATMPool
@@ -0,0 +1,29 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ * The <code> ATMPoolMBean </code> interface defines what JMX shows of the
+ * ATMPool of an ATMFactoryImpl: the ATMs idle and leased, and the pool's
+ * counts of ATMs created, leased out, returned, reaped (their lease ran
+ * out), retired (idle too long), refilled and of checkouts that found it
+ * full.
+ */
+public interface ATMPoolMBean {
+
+   public int getIdleCount();
+   public int getLeasedCount();
+   public int getMaxSize();
+
+   public long getCreatedCount();
+   public long getCheckoutCount();
+   public long getReturnedCount();
+   public long getReapedCount();
+   public long getRetiredCount();
+   public long getExhaustedCount();
+
+   // Checkouts that restocked an ATM's cash, and the cents restocked
+   public long getRefillCount();
+   public long getRefilledCents();
+}
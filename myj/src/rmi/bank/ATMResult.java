@@ -0,0 +1,80 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.Serializable;
+
+/**
+ *         The class <code> ATMResult </code> holds the outcome of one
+ *         <code> ATMCommand </code> executed by <code> ATM.executeBatch </code>.
+ *         A failed command carries the ATMException it would have thrown
+ *         had it been called on its own; a BALANCE command carries the
+ *         balance read.
+ */
+public class ATMResult implements Serializable {
+
+   /*** State variables for class ATMResult */
+   private Operation operation;  // The operation this result answers
+   private Long balance;         // The balance in cents, for BALANCE commands only
+   private ATMException error;   // The failure, or null on success
+
+   //// Constructor ////
+   private ATMResult(Operation operationPerformed, Long balanceRead,
+      ATMException failure)
+   {
+      operation = operationPerformed;
+      balance = balanceRead;
+      error = failure;
+   }
+
+   /*** Factory methods ***/
+
+   public static ATMResult success(Operation operation, Long balanceCents) {
+      return new ATMResult(operation, balanceCents, null);
+   }
+
+   public static ATMResult failure(Operation operation, ATMException error) {
+      return new ATMResult(operation, null, error);
+   }
+
+   /*** Accessors ***/
+
+   public Operation getOperation() {
+      return operation;
+   }
+
+   /**
+    * @return
+    *    true iff the command completed without an exception
+    */
+   public boolean isOk() {
+      return error == null;
+   }
+
+   /**
+    * @return
+    *    the balance read by a BALANCE command, in cents, null otherwise
+    */
+   public Long getBalanceCents() {
+      return balance;
+   }
+
+   /**
+    * @return
+    *    the balance read by a BALANCE command, in dollars, null otherwise.
+    *    Kept for compatibility; large balances lose cents.
+    */
+   public Float getBalance() {
+      return balance == null ? null : Money.toDollars(balance);
+   }
+
+   /**
+    * @return
+    *    the exception the command failed with, null on success
+    */
+   public ATMException getError() {
+      return error;
+   }
+
+} // end class ATMResult
@@ -69,6 +69,11 @@ public class ATMServer extends UnicastRemoteObject
           System.exit(1);
        }
       LogHelper.info("ATMServer: Successfully registered " + fullRmiName);
+
+      // Show the ATMs' operation stats, notification queues and pool over JMX
+      OperationStats.registerMBeans("ATM");
+      OperationStats.registerMBean(ATMImpl.getDispatcher(), "NotificationDispatcher");
+      OperationStats.registerMBean(factoryImpl.getPool(), "ATMPool");
    } catch (Exception e) {
        System.err.println ("ATMServer error: " + e.getMessage());
        e.printStackTrace();
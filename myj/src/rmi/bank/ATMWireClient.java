@@ -0,0 +1,226 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *         The class <code> ATMWireClient </code> talks to an ATMWireServer
+ *         over one connection. <code> submit </code> sends a command and
+ *         returns at once with a future of its result, so a caller can keep
+ *         many commands in flight; a reader thread completes the futures as
+ *         the responses arrive, in whatever order. The depositCents,
+ *         withdrawCents, getBalanceCents and transferCents methods wait
+ *         for their result, and throw its ATMException as an ATM would.
+ *
+ *         Commands submitted without waiting may run in any order, also on
+ *         the same account; wait for a result before sending a command
+ *         that depends on it.
+ */
+public class ATMWireClient implements Closeable {
+
+   private static final int BUFFER_BYTES = 64 * 1024;
+
+   /*** State variables for class ATMWireClient */
+   private final SocketChannel channel;
+   private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES); // Guarded by itself
+   private final Map<Integer, CompletableFuture<ATMResult>> pending
+      = new ConcurrentHashMap<Integer, CompletableFuture<ATMResult>>();
+   private final AtomicInteger nextId = new AtomicInteger();
+   private final Thread reader;
+   private volatile IOException failure;   // Why the connection ended
+
+   //// Constructor ////
+   public ATMWireClient(String host, int port) throws IOException {
+      channel = SocketChannel.open(new InetSocketAddress(host, port));
+      channel.socket().setTcpNoDelay(true);
+      reader = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            readLoop();
+         }
+      }, "atm-wire-client-reader");
+      reader.setDaemon(true);
+      reader.start();
+   }
+
+   /**
+    * <code> submit </code> sends a command without waiting for it.
+    *
+    * @return
+    *    the future result of the command
+    * @throws IOException
+    *    if the connection is closed or failed
+    */
+   public Future<ATMResult> submit(ATMCommand command) throws IOException {
+      synchronized (out) {
+         CompletableFuture<ATMResult> result = enqueue(command);
+         flush();
+         return result;
+      }
+   }
+
+   /**
+    * <code> submitAll </code> sends commands together, in as few writes
+    * as they fit in, without waiting for them.
+    *
+    * @return
+    *    the future results, in the order of the commands
+    */
+   public List<CompletableFuture<ATMResult>> submitAll(List<ATMCommand> commands)
+      throws IOException {
+      List<CompletableFuture<ATMResult>> results
+         = new ArrayList<CompletableFuture<ATMResult>>(commands.size());
+      synchronized (out) {
+         for (ATMCommand command : commands) {
+            if (out.remaining() < 4 + WireProtocol.MAX_FRAME_BYTES) flush();
+            results.add(enqueue(command));
+         }
+         flush();
+      }
+      return results;
+   }
+
+   /*** Blocking calls, as on an ATM ***/
+
+   public void depositCents(AccountInfo info, long cents)
+      throws ATMException, IOException {
+      await(submit(ATMCommand.depositCents(info, cents)));
+   }
+
+   public void withdrawCents(AccountInfo info, long cents)
+      throws ATMException, IOException {
+      await(submit(ATMCommand.withdrawCents(info, cents)));
+   }
+
+   public long getBalanceCents(AccountInfo info)
+      throws ATMException, IOException {
+      return await(submit(ATMCommand.balance(info))).getBalanceCents();
+   }
+
+   public void transferCents(AccountInfo fromAccount, AccountInfo toAccount,
+      long cents) throws ATMException, IOException {
+      await(submit(ATMCommand.transferCents(fromAccount, toAccount, cents)));
+   }
+
+   /**
+    * @return the number of commands sent and not yet answered
+    */
+   public int getPendingCount() {
+      return pending.size();
+   }
+
+   /**
+    * <code> close </code> closes the connection, failing the commands not
+    * yet answered.
+    */
+   @Override
+   public void close() throws IOException {
+      channel.close();
+      try {
+         reader.join(1000);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /*** private functions ***/
+
+   // Encode a command into out, with out held
+   private CompletableFuture<ATMResult> enqueue(ATMCommand command)
+      throws IOException {
+      if (failure != null) throw new IOException ("Connection closed!", failure);
+      if (command == null || command.getOperation() == null
+          || command.getAccount() == null
+          || (command.getOperation() == Operation.TRANSFER && command.getToAccount() == null))
+         throw new IllegalArgumentException ("Malformed command!");
+      int id = nextId.incrementAndGet();
+      CompletableFuture<ATMResult> result = new CompletableFuture<ATMResult>();
+      pending.put(id, result);
+      WireProtocol.writeRequest(out, id, command);
+      return result;
+   }
+
+   // Write out all of out, with out held
+   private void flush() throws IOException {
+      out.flip();
+      try {
+         while (out.hasRemaining()) channel.write(out);
+      }
+      finally {
+         out.clear();
+      }
+   }
+
+   private static ATMResult await(Future<ATMResult> future)
+      throws ATMException, IOException {
+      ATMResult result;
+      try {
+         result = future.get();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IOException ("Interrupted waiting for the ATM!", e);
+      }
+      catch (ExecutionException e) {
+         throw new IOException ("Connection to the ATM failed!", e.getCause());
+      }
+      if (result.isOk() == false) throw result.getError();
+      return result;
+   }
+
+   // The reader thread: complete the futures of the responses read
+   private void readLoop() {
+      ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);
+      try {
+         while (true) {
+            if (channel.read(in) < 0) throw new EOFException ("ATM closed the connection!");
+            in.flip();
+            int length;
+            while ((length = WireProtocol.frameLength(in)) > 0
+                   && in.remaining() >= length) {
+               int end = in.position() + length;
+               in.position(in.position() + 4);
+               int id = in.getInt();
+               ATMResult result = WireProtocol.readResponse(in);
+               in.position(end);
+               CompletableFuture<ATMResult> future = pending.remove(id);
+               if (future != null) future.complete(result);
+            }
+            in.compact();
+         }
+      }
+      catch (IOException e) {
+         failure = e;
+      }
+      finally {
+         if (failure == null) failure = new IOException ("Connection reader failed!");
+         try {
+            channel.close();
+         }
+         catch (IOException ignored) {
+         }
+         // Fail whatever is left, including what raced with the failure
+         for (Integer id : pending.keySet()) {
+            CompletableFuture<ATMResult> future = pending.remove(id);
+            if (future != null) future.completeExceptionally(failure);
+         }
+      }
+   }
+
+} // end class ATMWireClient
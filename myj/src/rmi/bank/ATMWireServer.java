@@ -0,0 +1,340 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *         The class <code> ATMWireServer </code> is a front end to an
+ *         ATMImpl next to the RMI one of ATMServer: it speaks the binary,
+ *         length-prefixed WireProtocol over plain TCP, so that a terminal
+ *         concentrator can keep many requests in flight on one connection
+ *         rather than one per RMI round trip.
+ *
+ *         A single selector thread accepts connections, reads requests into
+ *         a direct buffer per connection and writes responses from another.
+ *         Each request runs on a worker thread, through the same
+ *         executeCommand an ATM.executeBatch runs, since it calls the bank
+ *         and blocks; its response is queued back to the selector thread.
+ *         Requests on a connection may therefore complete in any order.
+ *         Once a connection has maxInFlight requests running, the server
+ *         stops reading it until some complete.
+ *
+ *         Run with java rmi.bank.ATMWireServer, with the bank's registry
+ *         up. Settings are system properties: rmi.bank.wire.port (default
+ *         6055), rmi.bank.wire.workers (16), rmi.bank.wire.maxInFlight
+ *         (256), and the lookups of StubHolder.
+ */
+public class ATMWireServer implements Runnable {
+
+   private static final int PORT = Integer.getInteger("rmi.bank.wire.port", 6055);
+   private static final int WORKERS = Integer.getInteger("rmi.bank.wire.workers", 16);
+   private static final int MAX_IN_FLIGHT
+      = Integer.getInteger("rmi.bank.wire.maxInFlight", 256);
+   private static final int BUFFER_BYTES = 64 * 1024;
+   // Room enough for any response
+   private static final int MAX_RESPONSE_BYTES = 4 + WireProtocol.MAX_FRAME_BYTES;
+
+   /*** State variables for class ATMWireServer */
+   private final ATMImpl atm;
+   private final ServerSocketChannel server;
+   private final Selector selector;
+   private final ExecutorService workers;
+   private final int maxInFlight;
+   // Connections with responses queued, for the selector thread
+   private final Queue<Connection> ready = new ConcurrentLinkedQueue<Connection>();
+   private final AtomicLong requests = new AtomicLong();
+   private final AtomicInteger connections = new AtomicInteger();
+   private volatile boolean running = true;
+   private Thread selectorThread;
+
+   /**
+    * A <code> Response </code> waiting to be written.
+    */
+   private static class Response {
+      final int correlationId;
+      final ATMResult result;
+
+      Response(int id, ATMResult done) {
+         correlationId = id;
+         result = done;
+      }
+   } // end class Response
+
+   /**
+    * A <code> Connection </code> is the state of one client. Only the
+    * selector thread touches its buffers.
+    */
+   private class Connection {
+      final SocketChannel channel;
+      final SelectionKey key;
+      final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);
+      final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+      final Queue<Response> responses = new ConcurrentLinkedQueue<Response>();
+      final AtomicBoolean queued = new AtomicBoolean(); // In ready
+      int inFlight;           // Requests read, responses not yet encoded
+      boolean paused;         // Not reading, too many in flight
+
+      Connection(SocketChannel client) throws IOException {
+         channel = client;
+         key = client.register(selector, SelectionKey.OP_READ, this);
+         out.flip(); // Nothing to write yet
+      }
+
+      // Worker thread: hand a response over to the selector thread
+      void respond(int correlationId, ATMResult result) {
+         responses.add(new Response(correlationId, result));
+         if (queued.compareAndSet(false, true)) {
+            ready.add(this);
+            selector.wakeup();
+         }
+      }
+   } // end class Connection
+
+   //// Constructor ////
+   public ATMWireServer(ATMImpl serverAtm, InetSocketAddress address,
+      int workerThreads, int maxInFlightPerConnection) throws IOException {
+      atm = serverAtm;
+      maxInFlight = maxInFlightPerConnection;
+      selector = Selector.open();
+      server = ServerSocketChannel.open();
+      server.bind(address);
+      server.configureBlocking(false);
+      server.register(selector, SelectionKey.OP_ACCEPT);
+      final AtomicInteger count = new AtomicInteger();
+      workers = Executors.newFixedThreadPool(workerThreads, new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "atm-wire-worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+
+   /**
+    * <code> start </code> runs the server on its selector thread.
+    */
+   public synchronized void start() {
+      selectorThread = new Thread(this, "atm-wire-selector");
+      selectorThread.start();
+      LogHelper.info("ATMWireServer: listening on " + server.socket().getLocalSocketAddress());
+   }
+
+   /**
+    * @return the port the server listens on
+    */
+   public int getPort() {
+      return server.socket().getLocalPort();
+   }
+
+   public long getRequestCount() {
+      return requests.get();
+   }
+
+   public int getConnectionCount() {
+      return connections.get();
+   }
+
+   /**
+    * <code> close </code> stops accepting and drops every connection.
+    */
+   public void close() throws IOException {
+      running = false;
+      selector.wakeup();
+      try {
+         if (selectorThread != null) selectorThread.join(1000);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      workers.shutdownNow();
+   }
+
+   /**
+    * The selector loop, see <code> start </code>.
+    */
+   @Override
+   public void run() {
+      try {
+         while (running) {
+            selector.select();
+
+            Connection connection;
+            while ((connection = ready.poll()) != null) {
+               connection.queued.set(false);
+               if (connection.key.isValid()) write(connection);
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+               SelectionKey key = keys.next();
+               keys.remove();
+               if (key.isValid() == false) continue;
+               if (key.isAcceptable()) accept();
+               else {
+                  Connection c = (Connection) key.attachment();
+                  if (key.isReadable()) read(c);
+                  if (key.isValid() && key.isWritable()) write(c);
+               }
+            }
+         }
+      }
+      catch (IOException e) {
+         LogHelper.warn("ATMWireServer: selector failed! " + e);
+      }
+      finally {
+         for (SelectionKey key : selector.keys()) closeQuietly(key);
+         try {
+            selector.close();
+         }
+         catch (IOException ignored) {
+         }
+      }
+   }
+
+   /*** private functions, all on the selector thread ***/
+
+   private void accept() throws IOException {
+      SocketChannel client = server.accept();
+      if (client == null) return;
+      client.configureBlocking(false);
+      client.socket().setTcpNoDelay(true);
+      new Connection(client);
+      connections.incrementAndGet();
+      LogHelper.fine("ATMWireServer: accepted {}", client);
+   }
+
+   private void read(Connection c) {
+      try {
+         if (c.channel.read(c.in) < 0) {
+            close(c);
+            return;
+         }
+         dispatch(c);
+      }
+      catch (IOException e) {
+         LogHelper.fine("ATMWireServer: dropping {}, {}", c.channel, e);
+         close(c);
+      }
+   }
+
+   // Start a worker on each whole request read, up to maxInFlight
+   private void dispatch(final Connection c) throws IOException {
+      c.in.flip();
+      int length;
+      while (c.inFlight < maxInFlight
+             && (length = WireProtocol.frameLength(c.in)) > 0
+             && c.in.remaining() >= length) {
+         int end = c.in.position() + length;
+         c.in.position(c.in.position() + 4);
+         final int correlationId = c.in.getInt();
+         ATMCommand parsed;
+         try {
+            parsed = WireProtocol.readRequest(c.in);
+         }
+         catch (IOException | RuntimeException e) {
+            parsed = null; // executeCommand turns it into a failure
+         }
+         c.in.position(end);
+         c.inFlight++;
+         requests.incrementAndGet();
+
+         final ATMCommand command = parsed;
+         workers.execute(new Runnable() {
+            @Override
+            public void run() {
+               c.respond(correlationId, atm.executeCommand(command));
+            }
+         });
+      }
+      c.in.compact();
+
+      boolean pause = c.inFlight >= maxInFlight;
+      if (pause != c.paused) {
+         c.paused = pause;
+         c.key.interestOps(pause ? c.key.interestOps() & ~SelectionKey.OP_READ
+                                 : c.key.interestOps() | SelectionKey.OP_READ);
+      }
+   }
+
+   // Encode the queued responses and write as much as the socket takes
+   private void write(Connection c) {
+      try {
+         while (true) {
+            c.out.compact();
+            Response response;
+            while (c.out.remaining() >= MAX_RESPONSE_BYTES
+                   && (response = c.responses.poll()) != null) {
+               WireProtocol.writeResponse(c.out, response.correlationId, response.result);
+               c.inFlight--;
+            }
+            c.out.flip();
+            if (c.out.hasRemaining() == false) break;
+            c.channel.write(c.out);
+            if (c.out.hasRemaining()) break; // The socket is full
+         }
+
+         boolean pending = c.out.hasRemaining();
+         int ops = c.key.interestOps();
+         c.key.interestOps(pending ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE);
+
+         // Room again: start what was read but held back
+         if (c.paused && c.inFlight < maxInFlight) dispatch(c);
+      }
+      catch (IOException e) {
+         LogHelper.fine("ATMWireServer: dropping {}, {}", c.channel, e);
+         close(c);
+      }
+   }
+
+   private void close(Connection c) {
+      closeQuietly(c.key);
+      connections.decrementAndGet();
+   }
+
+   private static void closeQuietly(SelectionKey key) {
+      key.cancel();
+      try {
+         key.channel().close();
+      }
+      catch (IOException ignored) {
+      }
+   }
+
+   /**
+    * Entry point of the server: an ATM on the bank and security of the
+    * registry, served on the wire port.
+    */
+   public static void main(String args[]) {
+      try {
+         ATMImpl atm = new ATMImpl(
+            StubHolder.of(ATMImpl.BANK_URL, Bank.class).proxy(),
+            StubHolder.of(ATMImpl.SECURITY_URL, Security.class).proxy());
+         new ATMWireServer(atm, new InetSocketAddress(PORT), WORKERS,
+            MAX_IN_FLIGHT).start();
+      }
+      catch (Exception e) {
+         System.err.println ("ATMWireServer error: " + e.getMessage());
+         e.printStackTrace();
+         System.exit(1);
+      }
+   } // End of function main
+
+} // end class ATMWireServer
@@ -11,6 +11,9 @@ package rmi.bank;
  * Client(s). Clients never interact with Account or AccountImpl
  * directly, and the accounts themselves (as AccountImpl) remain in
  * BankImpl.
+ *
+ * Amounts are longs counting cents (see Money); the float methods are
+ * kept for compatibility, and convert to and from cents.
  */
 public interface Account extends java.rmi.Remote {
 
@@ -18,6 +21,14 @@ public interface Account extends java.rmi.Remote {
 
    public int id() throws java.rmi.RemoteException;
 
+   public long depositCents (long cents) throws ATMException, java.rmi.RemoteException;
+
+   public long withdrawCents (long cents) throws ATMException, java.rmi.RemoteException;
+
+   public long getBalanceCents () throws java.rmi.RemoteException;
+
+   /*** Float compatibility methods, in dollars ***/
+
    public float deposit (float amount) throws ATMException, java.rmi.RemoteException;
 
    public float withdraw (float amount) throws ATMException, java.rmi.RemoteException;
@@ -4,39 +4,63 @@
 package rmi.bank;
 
 import java.rmi.*;
-import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The class <code> AccountImpl </code> implements the basic behavior of an
  * account as specified by the <code> Account </code> interface,
  * i.e. storing a balance.
  *
- * This AccountImpl does allow for the storage and running balances with
- * precision beyond $0.01, say, to calculate daily interest. Whether this
- * makes sense or not, depends on the bank's requirements.
+ * This AccountImpl stores its balance as a fixed-point long of cents, which
+ * is exact to the cent at any balance. A bank that needs running balances
+ * with precision beyond $0.01, say, to calculate daily interest, would
+ * need a finer fixed-point unit.
  *
  * AccountImpl instances are remote RMI object, and they resides in the Accounts
  * class (itself not an RMI) object, which resides in turn in BankImpl. BankImpl
- * doles the appropriate Account via the Bank RMI interface.
+ * doles the appropriate Account via the Bank RMI interface, exporting it the
+ * first time it is handed out: accounts only operated upon inside the bank
+ * are never exported.
+ *
+ * RMI runs concurrent calls on separate threads, so each balance update
+ * (including its overdraft check) holds the stripe of AccountLocks that
+ * guards this account's id. When the bank keeps a Journal, each update
+ * journals the new balance under that stripe, then waits for the journal
+ * to be durable once the stripe is released.
  */
-public class AccountImpl extends UnicastRemoteObject implements Account {
+public class AccountImpl implements Account {
 
    //// State variables ////
 
-   private float balance;  // The balance
+   private long balance;   // The balance in cents, guarded by locks
    private int id;         // The ID
+   private final AccountLocks locks;  // Shared with the account's store
+   private final Journal journal;     // The store's journal, or null
 
    //// Constructor ////
 
    /**
     * Constructor for AccountImpl. Use <code> AccountImpl </code> to create a new
-    * instance of an account implementation.
+    * instance of an account implementation, guarded by its own locks.
+    */
+   public AccountImpl() {
+      this(new AccountLocks(1), null, 0, 0);
+   }
+
+   /**
+    * Constructor for AccountImpl, for an account of its store, guarded by
+    * the store's locks and journaled in its journal (if not null). The
+    * store journals the account's opening balance itself.
     */
-   public AccountImpl() throws RemoteException {
+   AccountImpl(AccountLocks storeLocks, Journal storeJournal, int accountId,
+      long openingBalance) {
 
    // In the real world, the balance would be obtained from reading the
    // database
-      balance = 0.0f;
+      balance = openingBalance;
+      id = accountId;
+      locks = storeLocks;
+      journal = storeJournal;
 
    }
 
@@ -57,69 +81,130 @@ public class AccountImpl extends UnicastRemoteObject implements Account {
    }
 
    /**
-    * <code> deposit </code> implements increasing the Account's balance by
+    * <code> depositCents </code> implements increasing the Account's balance by
     * the amount deposited.
     *
-    * @param amount
-    *    The amount to deposit.
+    * @param cents
+    *    The amount to deposit, in cents.
     * @return balance
-    *    The current balance, which assumes that all
+    *    The current balance, in cents, which assumes that all
     *    deposits clear instantly and in full.
     **/
     @Override
-    public float deposit (float amount) throws ATMException
+    public long depositCents (long cents) throws ATMException
     {
-      if (amount < 0) {
+      if (cents < 0) {
          LogHelper.fine (" Avoided the deposit of a negative amount:" + id);
          throw new ATMException ("Cannot deposit negative amounts!");
       }
 
-      if (amount == 0) {
+      if (cents == 0) {
          LogHelper.fine (" Avoided depositing zero:" + id);
          throw new ATMException ("Cannot deposit a zero amount!");
       }
 
-      balance += amount;
-      return balance;
+      long after;
+      long lsn = 0;
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         after = Money.add(balance, cents); // throws on overflow
+         if (journal != null) lsn = journal.record(id, after);
+         balance = after;
+      }
+      finally {
+         lock.unlock();
+      }
+      if (journal != null) journal.awaitDurable(lsn);
+      return after;
     }
 
    /**
-    * <code> withdraw </code> implements decreasing the account's balance by
+    * <code> withdrawCents </code> implements decreasing the account's balance by
     * the amount deposited.
     *
-    * @param amount
-    *    The amount to withdraw
+    * @param cents
+    *    The amount to withdraw, in cents
     * @return
-    *    The current balance. This implementation
+    *    The current balance, in cents. This implementation
     *    assumes that no overdrafts are possible.
     **/
     @Override
-    public float withdraw (float amount) throws ATMException
+    public long withdrawCents (long cents) throws ATMException
     {
-      if (amount < 0) {
+      if (cents < 0) {
          LogHelper.fine (" Avoided the withdrawing of a negative amount:" + id);
          throw new ATMException ("Cannot withdraw negative amounts!");
       }
 
-      if (balance - amount < 0) {
-         LogHelper.fine (" Avoided overdraft for account with id:" + id);
-         throw new ATMException ("Overdrafts not allowed!");
+      long after;
+      long lsn = 0;
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         // Checked and applied under one lock, so two withdrawals cannot
+         // both pass the check on the same balance
+         after = Money.subtract(balance, cents); // throws on overflow
+         if (after < 0) {
+            LogHelper.fine (" Avoided overdraft for account with id:" + id);
+            throw new ATMException ("Overdrafts not allowed!", Outcome.OVERDRAFT);
+         }
+
+         if (journal != null) lsn = journal.record(id, after);
+         balance = after;
       }
-
-      balance -= amount;
-      return balance;
+      finally {
+         lock.unlock();
+      }
+      if (journal != null) journal.awaitDurable(lsn);
+      return after;
     }
 
    /**
-    * <code> getBalance </code> implements returning the account's balance
+    * <code> restoreBalance </code> sets the balance, without journaling it.
+    * Used by the store while it replays the journal, before it is shared.
+    */
+   void restoreBalance(long cents) {
+      balance = cents;
+   }
+
+   /**
+    * <code> getBalanceCents </code> implements returning the account's balance
     *
     * @return
-    *    The current balance
+    *    The current balance, in cents
     **/
+    @Override
+    public long getBalanceCents () throws RemoteException
+    {
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         return balance;
+      }
+      finally {
+         lock.unlock();
+      }
+    }
+
+   /*** Float compatibility methods, in dollars ***/
+
+    @Override
+    public float deposit (float amount) throws ATMException
+    {
+      return Money.toDollars(depositCents(Money.toCents(amount)));
+    }
+
+    @Override
+    public float withdraw (float amount) throws ATMException
+    {
+      return Money.toDollars(withdrawCents(Money.toCents(amount)));
+    }
+
     @Override
     public float getBalance () throws RemoteException
     {
-      return balance;
+      return Money.toDollars(getBalanceCents());
     }
 
    /**
@@ -3,6 +3,8 @@
  */
 package rmi.bank;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /**
@@ -10,6 +12,8 @@ import java.io.Serializable;
  *         the account number and a PIN. It is used in the ATM simulation
  *         to signify an account that can, in turn, be validated (via its PIN)
  *         and authorized to carry ATM interface operations.
+ *
+ *         It travels as a compact WireForm, not by default serialization.
  */
 public class AccountInfo implements Serializable {
 
@@ -56,5 +60,15 @@ public class AccountInfo implements Serializable {
       return pin;
    } // end method getPin
 
+   /*** Serialization, via WireForm ***/
+
+   private Object writeReplace() {
+      return new WireForm(this);
+   }
+
+   private void readObject(ObjectInputStream in) throws InvalidObjectException {
+      throw new InvalidObjectException ("AccountInfo is sent as a WireForm!");
+   }
+
 } // end class Accountinfo
 
@@ -0,0 +1,84 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *         The class <code> AccountLocks </code> guards account balances
+ *         with a fixed array of locks (stripes). An account id always maps
+ *         to the same stripe, so two calls on one account are serialized,
+ *         while calls on accounts of different stripes run in parallel.
+ *         One lock per account would cost an object per account; one lock
+ *         for the whole bank would let a single ATM call run at a time.
+ *
+ *         Each store owns an AccountLocks. Its accounts take the stripe of
+ *         their id around every read-modify-write of their balance, and the
+ *         store takes every stripe (<code> lockAll </code>) while it adds an
+ *         account, which may grow its arrays or its map.
+ *
+ *         The number of stripes can be set with the system property
+ *         rmi.bank.accounts.lockStripes; it is rounded up to a power of two.
+ */
+public class AccountLocks {
+
+   private static final int STRIPES = Integer.getInteger(
+      "rmi.bank.accounts.lockStripes",
+      Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+
+   /*** State variables for class AccountLocks */
+   private final ReentrantLock[] stripes;
+   private final int mask;   // stripes.length - 1, a power of two
+
+   /* Constructor for AccountLocks, with the configured number of stripes */
+   public AccountLocks() {
+      this(STRIPES);
+   }
+
+   /* Constructor for AccountLocks, with at least minStripes stripes */
+   public AccountLocks(int minStripes) {
+      int count = 1;
+      while (count < minStripes) count <<= 1;
+      stripes = new ReentrantLock[count];
+      for (int i = 0; i < count; i++) stripes[i] = new ReentrantLock();
+      mask = count - 1;
+   }
+
+   /**
+    * <code> stripeOf </code> returns the index of the stripe guarding an
+    * account. Callers locking several accounts lock them in increasing
+    * stripe order.
+    */
+   public int stripeOf(int id) {
+      int h = id * 0x9E3779B9;
+      return (h ^ (h >>> 16)) & mask;
+   }
+
+   /**
+    * <code> lockFor </code> returns the lock guarding an account.
+    */
+   public ReentrantLock lockFor(int id) {
+      return stripes[stripeOf(id)];
+   }
+
+   /**
+    * <code> lockAll </code> takes every stripe, in order, shutting out
+    * every account operation until <code> unlockAll </code>.
+    */
+   public void lockAll() {
+      for (ReentrantLock stripe : stripes) stripe.lock();
+   }
+
+   public void unlockAll() {
+      for (int i = stripes.length - 1; i >= 0; i--) stripes[i].unlock();
+   }
+
+   /**
+    * @return the number of stripes
+    */
+   public int size() {
+      return stripes.length;
+   }
+
+} // end class AccountLocks
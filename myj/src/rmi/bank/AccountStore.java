@@ -0,0 +1,38 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ * The <code> AccountStore </code> interface defines where
+ * <code> Accounts </code> keeps its accounts. MapAccountStore keeps one
+ * AccountImpl object per account; PackedAccountStore keeps all accounts
+ * in primitive arrays, for banks with millions of accounts.
+ * The interface is not an RMI interface: stores live inside BankImpl.
+ */
+public interface AccountStore {
+
+   // Create an account holding an initial balance, in cents
+   public void add(int id, long balanceCents)
+      throws ATMException, java.rmi.RemoteException;
+
+   // Create an account, or overwrite its balance, without journaling the
+   // change. Used while replaying the journal, before the store is shared:
+   // it takes no lock.
+   public void restore(int id, long balanceCents) throws ATMException;
+
+   // The account for an id, or null if there is none. The account is
+   // not exported: BankImpl exports it if it is handed out.
+   public Account get(int id);
+
+   // The number of accounts held
+   public int size();
+
+   // The ids of the accounts held, e.g. to write a Snapshot
+   public int[] ids();
+
+   // The locks guarding the store's accounts, which its accounts take
+   // around each balance update
+   public AccountLocks locks();
+
+}
@@ -0,0 +1,93 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.Arrays;
+
+/**
+ *         The class <code> AccountTable </code> holds accounts as parallel
+ *         primitive arrays: slot i holds the id ids[i] and the balance
+ *         balances[i], in cents. An IntIndex maps an account id to its
+ *         slot. No object is allocated per account, so a table of ten
+ *         million accounts costs a few hundred megabytes rather than
+ *         gigabytes.
+ *
+ *         AccountTable is not synchronized; its users guard it.
+ */
+public class AccountTable {
+
+   /*** State variables for class AccountTable */
+   private final IntIndex index;
+   private int[] ids;          // The id held in each slot
+   private long[] balances;    // The balance held in each slot, in cents
+   private int size;           // The number of slots in use
+
+   /* Constructor for AccountTable, sized for expectedAccounts */
+   public AccountTable(int expectedAccounts) {
+      int capacity = Math.max(expectedAccounts, 16);
+      index = new IntIndex(capacity);
+      ids = new int[capacity];
+      balances = new long[capacity];
+   }
+
+   /**
+    * <code> add </code> creates an account with a given balance.
+    *
+    * @return
+    *    the slot of the new account
+    * @throws ATMException
+    *    if an account already has this id
+    */
+   public int add(int id, long balance) throws ATMException {
+      if (index.get(id) >= 0)
+         throw new ATMException ("An account with this id already exists!");
+
+      if (size == ids.length) {
+         int capacity = ids.length << 1;
+         ids = Arrays.copyOf(ids, capacity);
+         balances = Arrays.copyOf(balances, capacity);
+      }
+      int slot = size++;
+      ids[slot] = id;
+      balances[slot] = balance;
+      index.put(id, slot);
+      return slot;
+   }
+
+   /**
+    * <code> slotOf </code> returns the slot holding an account.
+    *
+    * @return the slot, or -1 if there is no account for this id
+    */
+   public int slotOf(int id) {
+      return index.get(id);
+   }
+
+   public int getId(int slot) {
+      return ids[slot];
+   }
+
+   public long getBalance(int slot) {
+      return balances[slot];
+   }
+
+   public void setBalance(int slot, long balance) {
+      balances[slot] = balance;
+   }
+
+   /**
+    * @return the ids of the accounts in the table, in slot order
+    */
+   public int[] copyIds() {
+      return Arrays.copyOf(ids, size);
+   }
+
+   /**
+    * @return the number of accounts in the table
+    */
+   public int size() {
+      return size;
+   }
+
+} // end class AccountTable
@@ -3,8 +3,13 @@
  */
 package rmi.bank;
 
-import java.util.Map;
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  *         The class <code> Accounts </code> holds
@@ -15,29 +20,176 @@ import java.util.HashMap;
  *          Accounts is used by Bank to store individual AccountImpl instances,
  *          which are doled (as remote RMI objects) to ATM instances as needed
  *          by BankImpl via the Account interface.
+ *
+ *          Where the accounts are actually kept is up to an AccountStore:
+ *          a Map of AccountImpl objects by default, or primitive arrays
+ *          (PackedAccountStore) when the system property
+ *          rmi.bank.accounts.store is set to "packed".
+ *
+ *          Accounts built by <code> recover </code> are journaled: every
+ *          change to a balance is in the Journal before the operation
+ *          returns, and the next recover rebuilds them from it. They
+ *          are also checkpointed to a Snapshot every few minutes, next to
+ *          the journal, so that recover replays only the journal written
+ *          since the last checkpoint.
  */
 public class Accounts {
 
+   // The store selected by default, and the property that overrides it
+   private static final String STORE_PROP = "rmi.bank.accounts.store";
+   private static final String PACKED = "packed";
+
+   // The journal settings, see Journal
+   private static final boolean GROUP_COMMIT = Boolean.parseBoolean(
+      System.getProperty("rmi.bank.journal.groupCommit", "true"));
+   private static final long MAX_COMMIT_DELAY_MICROS
+      = Long.getLong("rmi.bank.journal.maxCommitDelayMicros", 0);
+
+   // The time between checkpoints of journaled accounts, 0 for none
+   private static final long SNAPSHOT_INTERVAL_SECONDS
+      = Long.getLong("rmi.bank.snapshot.intervalSeconds", 300);
+   private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
    /*** State variables for class Accounts */
-   // The accounts themselves, implemented as a Map at this time.
-   private Map<Integer, Account> accounts = new HashMap<Integer, Account>();
+   // The accounts themselves, kept by an AccountStore.
+   private final AccountStore accounts;
+   // The journal of the store, or null if not journaled
+   private final Journal journal;
+   // The journal offset of the last snapshot, guarded by this
+   private long snapshotLsn = -1;
 
    /* Constructor for Accounts */
    public Accounts() {
-      // In an actual implementation, we would get ready to retrieve
-      // accounts, probably by establishing a link to a database. Here
-      // we create three accounts for the final project, with the initial
-      // balances as specified
+      this(newStore(null), null);
+      seed();
+   }
+
+   /* Constructor for Accounts kept in a given, possibly pre-filled, store */
+   public Accounts(AccountStore store) {
+      this(store, null);
+   }
+
+   /* Constructor for Accounts kept in a store journaled in journal */
+   public Accounts(AccountStore store, Journal storeJournal) {
+      accounts = store;
+      journal = storeJournal;
+      LogHelper.fine("Accounts: using store " + store.getClass().getSimpleName()
+         + (journal != null ? ", journaled in " + journal.getFile() : ""));
+   }
+
+   /**
+    * <code> recover </code> rebuilds the accounts from the latest snapshot
+    * of a journal, if any, and the journal written since, then journals
+    * every later change in it. A new (or empty) journal starts with the
+    * three preloaded accounts.
+    *
+    * @param journalFile
+    *            the journal, created if it does not exist
+    */
+   public static Accounts recover(File journalFile)
+      throws IOException, ATMException {
+      long start = System.nanoTime();
+      Journal journal = new Journal(journalFile, GROUP_COMMIT,
+         MAX_COMMIT_DELAY_MICROS);
+      Snapshot snapshot = Snapshot.read(snapshotFileOf(journalFile));
+      AccountStore store = newStore(journal,
+         snapshot != null ? snapshot.getCount() : 16);
+      long fromLsn = 0;
+      if (snapshot != null) {
+         snapshot.restore(store);
+         fromLsn = snapshot.getLsn();
+      }
+      long records = journal.replay(store, fromLsn);
+      LogHelper.info("Accounts: recovered " + store.size() + " accounts from "
+         + (snapshot != null ? "a snapshot and " : "") + records
+         + " journal records in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+      Accounts recovered = new Accounts(store, journal);
+      recovered.snapshotLsn = fromLsn;
+      if (store.size() == 0) recovered.seed();
+      if (SNAPSHOT_INTERVAL_SECONDS > 0)
+         recovered.scheduleCheckpoints(SNAPSHOT_INTERVAL_SECONDS);
+      return recovered;
+   }
+
+   /**
+    * <code> checkpoint </code> writes a snapshot of every balance next to
+    * the journal, while operations go on, unless nothing was journaled
+    * since the last one.
+    *
+    * @return
+    *    true if a snapshot was written
+    */
+   public synchronized boolean checkpoint() throws IOException {
+      if (journal == null)
+         throw new IllegalStateException("Only journaled accounts are checkpointed!");
+      if (journal.getAppendedLsn() == snapshotLsn) return false;
+      long start = System.nanoTime();
+      snapshotLsn = Snapshot.write(accounts, journal, snapshotFileOf(journal.getFile()));
+      LogHelper.info("Accounts: checkpointed " + accounts.size() + " accounts in "
+         + (System.nanoTime() - start) / 1000000 + " ms");
+      return true;
+   }
+
+   /**
+    * <code> close </code> closes the journal, if any, once the pending
+    * changes are on disk. The accounts must not be changed after.
+    */
+   public void close() throws IOException {
+      if (journal != null) journal.close();
+   }
+
+   // Run checkpoint every intervalSeconds, on a daemon thread
+   private void scheduleCheckpoints(long intervalSeconds) {
+      ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(
+         new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+               Thread thread = new Thread(r, "snapshot-checkpoint");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+      checkpointer.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               checkpoint();
+            }
+            catch (Exception e) {
+               // The journal still holds everything; try again next time
+               LogHelper.warn("Accounts: checkpoint failed! " + e);
+            }
+         }
+      }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+   }
+
+   // The snapshot file kept next to a journal
+   private static File snapshotFileOf(File journalFile) {
+      return new File(journalFile.getPath() + SNAPSHOT_SUFFIX);
+   }
+
+   // The store selected by the rmi.bank.accounts.store property
+   private static AccountStore newStore(Journal journal) {
+      return newStore(journal, 16);
+   }
+
+   private static AccountStore newStore(Journal journal, int expectedAccounts) {
+      return PACKED.equals(System.getProperty(STORE_PROP))
+         ? new PackedAccountStore(expectedAccounts, journal)
+         : new MapAccountStore(journal);
+   }
+
+   // In an actual implementation, we would get ready to retrieve
+   // accounts, probably by establishing a link to a database. Here
+   // we create three accounts for the final project, with the initial
+   // balances as specified
+   private void seed() {
       LogHelper.fine("Accounts: preloading three accounts! ");
-      int i;
       try {
-         for (i = 1; i <= 3; i++) {
-            Account account = new AccountImpl();
-            account.setId(i);
-            if (i == 2) account.deposit(100);
-            if (i == 3) account.deposit(500);
-            accounts.put(i, account);
-         }
+         add(1, 0);
+         add(2, 100 * Money.CENTS_PER_DOLLAR);
+         add(3, 500 * Money.CENTS_PER_DOLLAR);
       }
       catch (Exception e)
       {
@@ -50,6 +202,19 @@ public class Accounts {
       LogHelper.finer("Constructor of Accounts Completed! Accounts seeded.");
    }
 
+   /**
+    * <code> add </code> opens a new account.
+    *
+    * @param id
+    *            the id of the new account
+    * @param balanceCents
+    *            its initial balance, in cents
+    */
+   public void add(int id, long balanceCents)
+      throws ATMException, java.rmi.RemoteException {
+      accounts.add(id, balanceCents);
+   }
+
    /**
     * <code> get </code> returns the account for a given id.
     *
@@ -59,8 +224,11 @@ public class Accounts {
     *			the account matching id, or null in case no account is found
     */
    public Account get(int id) throws ATMException {
-      LogHelper.finer ("Accounts: Request for account received. id = " + id);
+      BankEvents.AccountLookup event = BankEvents.AccountLookup.started();
+      if (LogHelper.isFiner())
+         LogHelper.finer ("Accounts: Request for account received. id = " + id);
       Account account = accounts.get(id);
+      event.finish(id, account != null);
       if (account == null) {
          LogHelper.warn ("Accounts: Request for non-existent id: " + id);
          throw new ATMException ("No account for this id!");
@@ -68,5 +236,75 @@ public class Accounts {
       return account;
    } // end method get
 
-} // end class Accounts
+   /**
+    * <code> transferCents </code> moves an amount from one account to
+    * another, as a single step: no other operation sees the money gone
+    * from the source but not yet in the destination, and if the deposit
+    * fails the withdrawal is rolled back.
+    *
+    * The stripes of both accounts are held for the transfer, taken in
+    * increasing stripe order so that two opposite transfers cannot
+    * deadlock. Both accounts live in this jvm: no remote call is made
+    * while the stripes are held. Both legs are journaled as one unit,
+    * and the transfer returns once the unit is durable.
+    *
+    * @param fromId
+    *            the id of the source account
+    * @param toId
+    *            the id of the destination account
+    * @param cents
+    *            the amount to transfer, in cents
+    */
+   public void transferCents(int fromId, int toId, long cents)
+      throws ATMException, java.rmi.RemoteException {
+
+      if (cents <= 0)
+         throw new ATMException ("Cannot transfer zero or negative amounts!");
+      Account from = get(fromId);
+      Account to = get(toId);
 
+      AccountLocks locks = accounts.locks();
+      int fromStripe = locks.stripeOf(fromId);
+      int toStripe = locks.stripeOf(toId);
+      ReentrantLock first = locks.lockFor(fromStripe <= toStripe ? fromId : toId);
+      ReentrantLock second = locks.lockFor(fromStripe <= toStripe ? toId : fromId);
+      long lsn = 0;
+      first.lock();
+      try {
+         second.lock(); // the same lock again if both share a stripe
+         try {
+            if (journal != null) journal.beginUnit();
+            try {
+               from.withdrawCents(cents); // throws on overdraft, nothing done
+               try {
+                  to.depositCents(cents);
+               }
+               catch (ATMException e) {
+                  from.depositCents(cents); // cannot fail, we just withdrew it
+                  LogHelper.fine("Accounts: transfer rolled back, " + e.getMessage());
+                  throw e;
+               }
+            }
+            finally {
+               // Appended while both stripes are held, rolled back or not
+               if (journal != null) lsn = journal.endUnit();
+            }
+         }
+         finally {
+            second.unlock();
+         }
+      }
+      finally {
+         first.unlock();
+      }
+      if (journal != null) journal.awaitDurable(lsn);
+   } // end method transferCents
+
+   /**
+    * @return the number of accounts held
+    */
+   public int size() {
+      return accounts.size();
+   }
+
+} // end class Accounts
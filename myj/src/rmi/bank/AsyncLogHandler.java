@@ -0,0 +1,125 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ *         The class <code> AsyncLogHandler </code> writes log records to
+ *         System.err from a writer thread, like a ConsoleHandler but off
+ *         the logging thread. Records wait in a bounded queue; the writer
+ *         takes every record queued, formats them into one string and
+ *         writes it with a single call, so a burst of records costs one
+ *         write and flush rather than one each.
+ *
+ *         When the queue is full, logging blocks until the writer catches
+ *         up: no record is lost. close, called when the logging is shut
+ *         down at exit, writes what is left in the queue.
+ *
+ *         The queue holds rmi.bank.log.queueSize records (default 8192).
+ */
+public class AsyncLogHandler extends Handler {
+
+   private static final int QUEUE_SIZE
+      = Integer.getInteger("rmi.bank.log.queueSize", 8192);
+   private static final int MAX_BATCH = 512;
+
+   /*** State variables for class AsyncLogHandler */
+   private final BlockingQueue<LogRecord> queue
+      = new ArrayBlockingQueue<LogRecord>(QUEUE_SIZE);
+   private final PrintStream out = System.err;
+   private final Thread writer;
+   private volatile boolean closed;
+
+   //// Constructor ////
+   public AsyncLogHandler() {
+      writer = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            writeLoop();
+         }
+      }, "log-writer");
+      writer.setDaemon(true);
+      writer.start();
+   }
+
+   @Override
+   public void publish(LogRecord record) {
+      if (closed || isLoggable(record) == false) return;
+
+      // Find the caller now: the writer thread's stack would not tell
+      record.getSourceClassName();
+      try {
+         queue.put(record);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   @Override
+   public void flush() {
+      out.flush();
+   }
+
+   /**
+    * <code> close </code> stops the writer and writes the records still
+    * queued, on the calling thread.
+    */
+   @Override
+   public void close() {
+      if (closed) return;
+      closed = true;
+      writer.interrupt();
+      try {
+         writer.join(1000);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      List<LogRecord> batch = new ArrayList<LogRecord>();
+      queue.drainTo(batch);
+      write(batch);
+   }
+
+   /*** private functions ***/
+
+   private void writeLoop() {
+      List<LogRecord> batch = new ArrayList<LogRecord>(MAX_BATCH);
+      while (closed == false) {
+         try {
+            batch.add(queue.take());
+         }
+         catch (InterruptedException e) {
+            return; // closing; close writes the rest
+         }
+         queue.drainTo(batch, MAX_BATCH - 1);
+         write(batch);
+         batch.clear();
+      }
+   }
+
+   private void write(List<LogRecord> batch) {
+      if (batch.isEmpty()) return;
+      StringBuilder text = new StringBuilder(batch.size() * 128);
+      for (LogRecord record : batch) {
+         try {
+            text.append(getFormatter().format(record));
+         }
+         catch (Exception e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+         }
+      }
+      out.print(text);
+      out.flush();
+   }
+
+} // end class AsyncLogHandler
@@ -8,11 +8,29 @@ package rmi.bank;
  * The Bank interface defines the public interface of 'Bank' functionality.
  * The interface is an RMI interface as well, and is used for remote
  * invocation when ATM accesses Bank objects.
+ *
+ * An ATM may either get a remote Account via getAccount and act on it,
+ * or ask the bank to act on its behalf via depositCents, withdrawCents,
+ * getBalanceCents and transferCents. The latter runs the operation inside
+ * the bank, in one remote call, and needs no exported Account. Amounts
+ * are longs counting cents.
  */
 public interface Bank extends java.rmi.Remote {
 
    public Account getAccount(AccountInfo info)
       throws java.rmi.RemoteException, ATMException;
 
+   public long depositCents(AccountInfo info, long cents)
+      throws java.rmi.RemoteException, ATMException;
+
+   public long withdrawCents(AccountInfo info, long cents)
+      throws java.rmi.RemoteException, ATMException;
+
+   public long getBalanceCents(AccountInfo info)
+      throws java.rmi.RemoteException, ATMException;
+
+   public void transferCents(AccountInfo fromAccount, AccountInfo toAccount,
+      long cents) throws java.rmi.RemoteException, ATMException;
+
 }
 
@@ -0,0 +1,223 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ *         The class <code> BankEvents </code> holds the Flight Recorder
+ *         events of the bank: one per ATM operation, Security check,
+ *         Accounts.get and listener notification, each with its account
+ *         id, operation, amount (where there is one), outcome and duration,
+ *         so that a recording shows them next to the jvm's GC pauses and
+ *         safepoints. RecordingSummary sums them up by operation, and
+ *         myj/jfr/rmibank.jfc turns them on.
+ *
+ *         An event is begun when the work starts and finished when it
+ *         ends. Its fields are only set, and the event only written, if
+ *         Flight Recorder is recording it (shouldCommit); otherwise the
+ *         JIT removes the event entirely, so that it costs nothing.
+ *
+ *         The events skip their stack traces by default: the operations
+ *         are short and many.
+ */
+final class BankEvents {
+
+   //// Constructor, not to be used ////
+   private BankEvents() {
+   }
+
+   /**
+    * An <code> ATMOperation </code> is one deposit, withdrawal, balance
+    * or transfer run by an ATMImpl, as the client asked for it.
+    */
+   @Name("rmi.bank.ATMOperation")
+   @Label("ATM Operation")
+   @Category({"RMI Bank", "ATM"})
+   @Description("A deposit, withdrawal, balance or transfer run by an ATM")
+   @StackTrace(false)
+   static final class ATMOperation extends Event {
+      @Label("Operation")
+      String operation;
+
+      @Label("Account Id")
+      int accountId;
+
+      @Label("To Account Id")
+      @Description("The destination account of a transfer, else -1")
+      int toAccountId;
+
+      @Label("Amount")
+      @Description("In cents, 0 for a balance")
+      long amountCents;
+
+      @Label("Outcome")
+      String outcome;
+
+      static ATMOperation started() {
+         ATMOperation event = new ATMOperation();
+         event.begin();
+         return event;
+      }
+
+      void finish(Operation op, AccountInfo from, AccountInfo to, long cents,
+         Outcome result) {
+         end();
+         if (shouldCommit()) {
+            operation = op.name();
+            accountId = from == null ? -1 : from.getId();
+            toAccountId = to == null ? -1 : to.getId();
+            amountCents = cents;
+            outcome = result.name();
+            commit();
+         }
+      }
+   } // end class ATMOperation
+
+   /**
+    * A <code> SecurityCheck </code> is one check of SecurityImpl, granted
+    * (SUCCESS) or not (DENIED).
+    */
+   @Name("rmi.bank.SecurityCheck")
+   @Label("Security Check")
+   @Category({"RMI Bank", "Security"})
+   @Description("An authentication or permission check of Security")
+   @StackTrace(false)
+   static final class SecurityCheck extends Event {
+      @Label("Check")
+      @Description("AUTHORIZE, AUTHENTICATE, or the operation checked for")
+      String operation;
+
+      @Label("Account Id")
+      int accountId;
+
+      @Label("Outcome")
+      String outcome;
+
+      static SecurityCheck started() {
+         SecurityCheck event = new SecurityCheck();
+         event.begin();
+         return event;
+      }
+
+      void finish(String check, AccountInfo info, Outcome result) {
+         end();
+         if (shouldCommit()) {
+            operation = check;
+            accountId = info.getId();
+            outcome = result.name();
+            commit();
+         }
+      }
+   } // end class SecurityCheck
+
+   /**
+    * An <code> AccountLookup </code> is one Accounts.get, which finds the
+    * account (SUCCESS) or not (FAILED).
+    */
+   @Name("rmi.bank.AccountLookup")
+   @Label("Account Lookup")
+   @Category({"RMI Bank", "Bank"})
+   @Description("A lookup of an account by id, in the bank's account store")
+   @StackTrace(false)
+   static final class AccountLookup extends Event {
+      @Label("Operation")
+      String operation;
+
+      @Label("Account Id")
+      int accountId;
+
+      @Label("Outcome")
+      String outcome;
+
+      static AccountLookup started() {
+         AccountLookup event = new AccountLookup();
+         event.begin();
+         return event;
+      }
+
+      void finish(int id, boolean found) {
+         end();
+         if (shouldCommit()) {
+            operation = "GET";
+            accountId = id;
+            outcome = found ? Outcome.SUCCESS.name() : Outcome.FAILED.name();
+            commit();
+         }
+      }
+   } // end class AccountLookup
+
+   /**
+    * A <code> Notification </code> is one remote call delivering to a
+    * listener a notification, or a batch of them to a BatchATMListener.
+    * A batch carries the operation BATCH, the account id -1 and the sum of
+    * its amounts.
+    */
+   @Name("rmi.bank.Notification")
+   @Label("Listener Notification")
+   @Category({"RMI Bank", "ATM"})
+   @Description("A delivery of transaction notifications to a listener")
+   @StackTrace(false)
+   static final class Notification extends Event {
+      @Label("Operation")
+      String operation;
+
+      @Label("Account Id")
+      int accountId;
+
+      @Label("Amount")
+      @Description("In cents, of the notification or the sum of the batch")
+      long amountCents;
+
+      @Label("Notifications")
+      int notifications;
+
+      @Label("Listener")
+      String listener;
+
+      @Label("Outcome")
+      String outcome;
+
+      static Notification started() {
+         Notification event = new Notification();
+         event.begin();
+         return event;
+      }
+
+      void finish(ATMListener to, TransactionNotification msg, Outcome result) {
+         end();
+         if (shouldCommit()) {
+            operation = msg.getOperation() == null ? null : msg.getOperation().name();
+            accountId = msg.getAccountId();
+            amountCents = msg.getAmountCents();
+            notifications = 1;
+            listener = String.valueOf(to);
+            outcome = result.name();
+            commit();
+         }
+      }
+
+      void finish(ATMListener to, java.util.List<TransactionNotification> batch,
+         Outcome result) {
+         end();
+         if (shouldCommit()) {
+            operation = "BATCH";
+            accountId = -1;
+            long cents = 0;
+            for (TransactionNotification msg : batch) cents += msg.getAmountCents();
+            amountCents = cents;
+            notifications = batch.size();
+            listener = String.valueOf(to);
+            outcome = result.name();
+            commit();
+         }
+      }
+   } // end class Notification
+
+} // end class BankEvents
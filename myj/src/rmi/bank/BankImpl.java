@@ -4,6 +4,7 @@
 package rmi.bank;
 
 import java.rmi.*;
+import java.rmi.server.ExportException;
 import java.rmi.server.UnicastRemoteObject;
 
 /**
@@ -17,14 +18,35 @@ import java.rmi.server.UnicastRemoteObject;
  */
 public class BankImpl extends UnicastRemoteObject implements Bank {
 
-   private static final Accounts accounts = new Accounts();
+   private static Accounts accounts;
    private static Security security;
 
+   // The calls of each operation, by outcome, and their latencies,
+   // registered as MBeans by BankServer (see OperationStats)
+   private static final OperationStats depositStats
+      = OperationStats.of("Bank", Operation.DEPOSIT);
+   private static final OperationStats withdrawStats
+      = OperationStats.of("Bank", Operation.WITHDRAW);
+   private static final OperationStats balanceStats
+      = OperationStats.of("Bank", Operation.BALANCE);
+   private static final OperationStats transferStats
+      = OperationStats.of("Bank", Operation.TRANSFER);
+
    //// Constructor ////
    public BankImpl(Security sec) throws java.rmi.RemoteException
    {
-      super(); // Call any RMI work to do
+      this(sec, new Accounts());
+   }
+
+   // Constructor for a bank holding given (e.g. recovered) accounts
+   public BankImpl(Security sec, Accounts bankAccounts)
+      throws java.rmi.RemoteException
+   {
+      // Call any RMI work to do, on sockets tuned for the ATM hop
+      super(0, TunedSocketFactory.forHop("bank", "Bank"),
+         TunedSocketFactory.forHop("bank", "Bank"));
       security = sec; // Security set and passed in by BankServer
+      accounts = bankAccounts;
       LogHelper.fine("Bank: constructor completed!");
    }
 
@@ -40,16 +62,168 @@ public class BankImpl extends UnicastRemoteObject implements Bank {
    public Account getAccount(AccountInfo info)
       throws java.rmi.RemoteException, ATMException
    {
-      // We verify that the AccountInfo can be sent to an ATM (not all
-      // accounts in a bank are necessarily
-      // accessible in ATMs -- hence I have added an additional ad-hoc
-      // security method called isAccountAtmAccessOk).
-      if (security.isAuthenticationOk(info) == true &&
-         security.isAccountAtmAccessOk(info) == true)
-            return accounts.get(info.getId());
-      else {
-         LogHelper.fine("BankImpl, getAccount: access to account prohibited!");
-         throw new ATMException ("BankImpl, getAccount: Account not ATM Accessible!!");
+      checkAtmAccess(info, Permissions.NONE);
+      return export(accounts.get(info.getId()));
+   }
+
+   /**
+    * ATMImpl objects deposit into an account, without a remote Account,
+    * via <code> depositCents </code>
+    *
+    * @param
+    *    info   the account id and its pin
+    *    cents  the amount to deposit, in cents
+    *
+    * @return
+    *    the balance after the deposit, in cents
+    */
+   @Override
+   public long depositCents(AccountInfo info, long cents)
+      throws java.rmi.RemoteException, ATMException
+   {
+      long start = System.nanoTime();
+      long balance;
+      try {
+         checkAtmAccess(info, Permissions.DEPOSIT);
+         balance = accounts.get(info.getId()).depositCents(cents);
+      }
+      catch (Exception e) {
+         depositStats.failed(e, start);
+         throw e;
+      }
+      depositStats.succeeded(start);
+      return balance;
+   }
+
+   /**
+    * ATMImpl objects withdraw from an account, without a remote Account,
+    * via <code> withdrawCents </code>
+    *
+    * @param
+    *    info   the account id and its pin
+    *    cents  the amount to withdraw, in cents
+    *
+    * @return
+    *    the balance after the withdrawal, in cents
+    */
+   @Override
+   public long withdrawCents(AccountInfo info, long cents)
+      throws java.rmi.RemoteException, ATMException
+   {
+      long start = System.nanoTime();
+      long balance;
+      try {
+         checkAtmAccess(info, Permissions.WITHDRAW);
+         balance = accounts.get(info.getId()).withdrawCents(cents);
+      }
+      catch (Exception e) {
+         withdrawStats.failed(e, start);
+         throw e;
+      }
+      withdrawStats.succeeded(start);
+      return balance;
+   }
+
+   /**
+    * ATMImpl objects read an account's balance, without a remote Account,
+    * via <code> getBalanceCents </code>
+    *
+    * @param
+    *    info   the account id and its pin
+    *
+    * @return
+    *    the current balance, in cents
+    */
+   @Override
+   public long getBalanceCents(AccountInfo info)
+      throws java.rmi.RemoteException, ATMException
+   {
+      long start = System.nanoTime();
+      long balance;
+      try {
+         checkAtmAccess(info, Permissions.BALANCE);
+         balance = accounts.get(info.getId()).getBalanceCents();
+      }
+      catch (Exception e) {
+         balanceStats.failed(e, start);
+         throw e;
+      }
+      balanceStats.succeeded(start);
+      return balance;
+   }
+
+   /**
+    * ATMImpl objects move money between two accounts, without remote
+    * Accounts, via <code> transferCents </code>
+    *
+    * @param
+    *    fromAccount the source account id and its pin
+    *    toAccount   the destination account id and its pin
+    *    cents       the amount to transfer, in cents
+    */
+   @Override
+   public void transferCents(AccountInfo fromAccount, AccountInfo toAccount,
+      long cents) throws java.rmi.RemoteException, ATMException
+   {
+      long start = System.nanoTime();
+      try {
+         checkAtmAccess(fromAccount, Permissions.WITHDRAW);
+         checkAtmAccess(toAccount, Permissions.DEPOSIT);
+         // Both legs are applied atomically, or neither is
+         accounts.transferCents(fromAccount.getId(), toAccount.getId(), cents);
+      }
+      catch (Exception e) {
+         transferStats.failed(e, start);
+         throw e;
+      }
+      transferStats.succeeded(start);
+   }
+
+   /*** private functions ***/
+
+   // We verify that the AccountInfo can be used from an ATM (not all
+   // accounts in a bank are necessarily
+   // accessible in ATMs -- hence I have added an additional ad-hoc
+   // security method called isAccountAtmAccessOk), and that it holds the
+   // permission the operation needs. All questions are answered by a
+   // single authorize call. The ATM has asked the same already, but Bank
+   // is reachable by any client of the registry, so the bank never takes
+   // a caller's word for it; the CredentialCache answers the second call
+   // without hashing the pin again.
+   private void checkAtmAccess(AccountInfo info, int permission)
+      throws java.rmi.RemoteException, ATMException
+   {
+      int permissions = security.authorize(info);
+      if (Permissions.has(permissions,
+            Permissions.AUTHENTICATED | Permissions.ATM_ACCESS) == false) {
+         LogHelper.fine("BankImpl: access to account prohibited!");
+         throw new ATMException ("BankImpl: Account not ATM Accessible!!",
+            Outcome.DENIED);
+      }
+      if (Permissions.has(permissions, permission) == false) {
+         LogHelper.fine("BankImpl: operation not permitted for account "
+            + info.getId());
+         throw new ATMException ("BankImpl: Operation not permitted!", Outcome.DENIED);
+      }
+   }
+
+   // Accounts are not exported when created, only once one is handed to
+   // a remote caller; operations run inside the bank need no export.
+   private static Account export(Account account)
+      throws java.rmi.RemoteException
+   {
+      try {
+         return (Account) UnicastRemoteObject.toStub(account);
+      }
+      catch (NoSuchObjectException notExportedYet) {
+         try {
+            return (Account) UnicastRemoteObject.exportObject(account, 0,
+               TunedSocketFactory.forHop("bank", "Account"),
+               TunedSocketFactory.forHop("bank", "Account"));
+         }
+         catch (ExportException exportedMeanwhile) {
+            return (Account) UnicastRemoteObject.toStub(account);
+         }
       }
    }
 
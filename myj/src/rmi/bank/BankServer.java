@@ -3,6 +3,7 @@
  */
 package rmi.bank;
 
+import java.io.File;
 import java.rmi.*;
 import java.rmi.server.UnicastRemoteObject;
 
@@ -11,6 +12,13 @@ import java.rmi.server.UnicastRemoteObject;
  * classes in the RMI registry.
  * As these objects are unique and service all ATMs (and by extension all clients)
  * no factories are needed.
+ *
+ * When started with -Drmi.bank.journal=<file>, the bank's accounts are
+ * rebuilt from that journal, and every change to them is journaled, so
+ * balances survive a restart. Otherwise the accounts start afresh. The
+ * accounts are checkpointed to <file>.snapshot every
+ * rmi.bank.snapshot.intervalSeconds (300 by default), and a restart loads
+ * the snapshot, then replays only the journal written since.
  */
 public class BankServer extends UnicastRemoteObject
 {
@@ -19,6 +27,7 @@ public class BankServer extends UnicastRemoteObject
    private static final String BANK = "bank";
    private static final String SECURITY = "security";
    private static final String HOSTNAME_PROP = "java.rmi.server.hostname";
+   private static final String JOURNAL_PROP = "rmi.bank.journal";
    private static String fullRmiName;
 
    /*** The security object co-local to BankServer and BankImpl ***/
@@ -66,6 +75,10 @@ public class BankServer extends UnicastRemoteObject
          registerSecurity();
          registerBank();
 
+         // Show the bank's and security's operation stats over JMX
+         OperationStats.registerMBeans("Bank");
+         OperationStats.registerMBeans("Security");
+
       } catch (Exception e) {
          System.err.println ("BankServer error: " + e.getMessage());
          e.printStackTrace();
@@ -73,14 +86,21 @@ public class BankServer extends UnicastRemoteObject
       }
    }
 
-   private static void buildObjects()
+   // Also used by CoLocatedServer
+   static void buildObjects()
    {
       // Now create the single instances servicing the Security and Bank
       // interfaces, check for any exceptions:
       try {
          securityImpl = new SecurityImpl();
-         if (securityImpl != null)
-            bankImpl = new BankImpl(securityImpl);
+         if (securityImpl != null) {
+            // Replay the journal, if any, before the bank takes calls
+            String journal = System.getProperty(JOURNAL_PROP);
+            Accounts accounts = journal != null
+               ? Accounts.recover(new File(journal)) : new Accounts();
+            openLoadAccounts(accounts);
+            bankImpl = new BankImpl(securityImpl, accounts);
+         }
       } catch (Exception e) {
          System.err.println ("Cannot build implementations of Security or Bank!");
          System.err.println ("BankServer Constructor error: " + e.getMessage());
@@ -98,8 +118,27 @@ public class BankServer extends UnicastRemoteObject
       LogHelper.fine("BankServer buildObjects successfully built implementors!");
    }
 
+   // Opens the accounts of load runs (see LoadAccounts), if asked to with
+   // -Drmi.bank.load.accounts, unless recovered from the journal
+   private static void openLoadAccounts(Accounts accounts) throws Exception
+   {
+      int count = LoadAccounts.count();
+      int opened = 0;
+      for (int id = LoadAccounts.FIRST_ACCOUNT;
+           id < LoadAccounts.FIRST_ACCOUNT + count; id++) {
+         try {
+            accounts.add(id, LoadAccounts.OPENING_CENTS);
+            opened++;
+         } catch (ATMException alreadyOpen) {
+            // Recovered from the journal, with its balance
+         }
+      }
+      if (count > 0)
+         LogHelper.info("BankServer: " + count + " load accounts, " + opened
+            + " opened, from id " + LoadAccounts.FIRST_ACCOUNT);
+   }
 
-   private static void registerBank ()
+   static void registerBank ()
    {
       // Build the names to register in RMI
       fullRmiName = "//" + HOSTNAME + "/" + BANK;
@@ -131,7 +170,7 @@ public class BankServer extends UnicastRemoteObject
    }
 
 
-   private static void registerSecurity ()
+   static void registerSecurity ()
    {
       // Build the names to register in RMI
       fullRmiName = "//" + HOSTNAME + "/" + SECURITY;
@@ -162,4 +201,14 @@ public class BankServer extends UnicastRemoteObject
          + fullRmiName);
    }
 
+   /*** The implementors built, for CoLocatedServer ***/
+
+   static BankImpl getBankImpl() {
+      return bankImpl;
+   }
+
+   static SecurityImpl getSecurityImpl() {
+      return securityImpl;
+   }
+
 } // end class BankServer
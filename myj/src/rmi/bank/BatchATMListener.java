@@ -0,0 +1,23 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.List;
+
+/**
+ * The BatchATMListener interface extends ATMListener for listeners that
+ * prefer to receive many notifications in one remote call. A listener
+ * opts in by registering via <code> ATM.registerForBatchNotifications </code>,
+ * choosing its own batch size and linger time. Listeners registered via
+ * registerForNotifications keep receiving one handleNotification call
+ * per notification.
+ */
+public interface BatchATMListener extends ATMListener {
+
+   // The caller will receive notifications, oldest first, in batches
+   // of at most the size it registered with:
+   public void handleNotifications(List<TransactionNotification> msgs)
+      throws java.rmi.RemoteException;
+
+}
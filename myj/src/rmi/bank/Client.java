@@ -7,6 +7,8 @@
   import java.rmi.NotBoundException;
   import java.rmi.RemoteException;
   import java.rmi.UnknownHostException;
+  import java.util.List;
+  import java.util.ArrayList;
 
  /**
   * <code> Client </code> is the test class for the Final Project.
@@ -36,7 +38,7 @@
       // and print them out --our output will be slightly different than
       // the one specified in the specs when printBalances() is called as
       // the balances will be interleaved with the notifications themselves.
-      LogHelper.fine("Received notification " + msg.toString());
+      LogHelper.fine("Received notification {}", msg);
          System.out.println();
          System.out.println(msg.toString());
    }
@@ -95,9 +97,18 @@
 
    public static void printBalances(ATM atm) {
       try {
-         System.out.println("Balance(0000001): "+atm.getBalance(getAccountInfo(0000001, 1234)));
-         System.out.println("Balance(0000002): "+atm.getBalance(getAccountInfo(0000002, 2345)));
-         System.out.println("Balance(0000003): "+atm.getBalance(getAccountInfo(0000003, 3456)));
+         // The three balances travel in one batch, i.e. one round trip
+         List<ATMCommand> commands = new ArrayList<ATMCommand>();
+         commands.add(ATMCommand.balance(getAccountInfo(0000001, 1234)));
+         commands.add(ATMCommand.balance(getAccountInfo(0000002, 2345)));
+         commands.add(ATMCommand.balance(getAccountInfo(0000003, 3456)));
+         List<ATMResult> results = atm.executeBatch(commands);
+         for (int i = 0; i < results.size(); i++) {
+            ATMResult result = results.get(i);
+            if (result.isOk() == false) throw result.getError();
+            System.out.println(String.format("Balance(%07d): %s",
+               commands.get(i).getAccount().getId(), result.getBalance()));
+         }
       } catch (Exception e) {
          e.printStackTrace();
       }
@@ -190,11 +201,12 @@
     */
      public static void main(String[] args) {
         ATM atm = null;
+        ATMFactory factory = null;
         try {
 
            // Get an ATM object and self-register as a listener.
            LogHelper.finer ("Client is looking up " + AMT_FACTORY);
-           ATMFactory factory = (ATMFactory)Naming.lookup(AMT_FACTORY);
+           factory = (ATMFactory)Naming.lookup(AMT_FACTORY);
            assert factory != null : "Client failed to obtain an ATMFactory!";
            LogHelper.finer ("Client is requesting at ATM from ATMFactory");
            atm = factory.getATM();
@@ -230,6 +242,7 @@
         try
         {
             atm.unregisterForNotifications(notificationHandler);
+            factory.returnATM(atm); // for the next client
         }
         catch (RemoteException re)
         {
@@ -0,0 +1,85 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.rmi.*;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+
+/**
+ * The CoLocatedServer class runs a whole site in one jvm: it starts the
+ * RMI registry, then builds and registers Security and Bank as BankServer
+ * does, then registers an ATMFactoryImpl as ATMServer does. The ATMs it
+ * hands out hold the BankImpl and SecurityImpl themselves, rather than
+ * stubs, so that their calls to the bank and security are plain method
+ * calls, with no loopback connection or serialization. Clients still
+ * reach the ATMs through RMI, and other ATMServers may still use the
+ * registered bank.
+ *
+ * Run it instead of rmiregistry, BankServer and ATMServer:
+ *    java -cp classes rmi.bank.CoLocatedServer
+ * It takes BankServer's journal and ATMServer's pool properties.
+ */
+public class CoLocatedServer
+{
+   private static final String HOSTNAME = "localhost";
+   private static final String FACTORY = "atmfactory";
+   private static final String HOSTNAME_PROP = "java.rmi.server.hostname";
+
+   /**
+    * Entry point of the server
+    *
+    * @param
+    *    args  the entry point array vector.
+    */
+   public static void main(String args[])
+   {
+      String fullRmiName = "//" + HOSTNAME + "/" + FACTORY;
+      try {
+         // As BankServer and ATMServer, set up the jvm's hostname
+         if (System.getProperty(HOSTNAME_PROP) == null) {
+            LogHelper.fine("CoLocatedServer: " + HOSTNAME_PROP +
+            " is null and will be reset.");
+            System.setProperty(HOSTNAME_PROP, HOSTNAME);
+         }
+
+         // The registry lives and dies with this jvm
+         LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+         LogHelper.fine("CoLocatedServer: registry started on port "
+            + Registry.REGISTRY_PORT);
+
+         /*** The Bank and Security implementors, as in BankServer ***/
+         BankServer.buildObjects();
+         BankServer.registerSecurity();
+         BankServer.registerBank();
+
+         /*** The ATM factory, on the implementors themselves ***/
+         ATMFactoryImpl factoryImpl = new ATMFactoryImpl(
+            BankServer.getBankImpl(), BankServer.getSecurityImpl());
+         Naming.rebind(fullRmiName, factoryImpl);
+
+         // Check that the object was actually registered
+         Remote rem = Naming.lookup(fullRmiName);
+         if (rem == null) {
+            System.err.println(fullRmiName + " was not registered!");
+            System.exit(1);
+         }
+         LogHelper.info("CoLocatedServer: Successfully registered " + fullRmiName
+            + ", its ATMs call the bank in this jvm");
+
+         // Show the operation stats of all three, the notification
+         // queues and the ATM pool over JMX
+         OperationStats.registerMBeans("ATM");
+         OperationStats.registerMBeans("Bank");
+         OperationStats.registerMBeans("Security");
+         OperationStats.registerMBean(ATMImpl.getDispatcher(), "NotificationDispatcher");
+         OperationStats.registerMBean(factoryImpl.getPool(), "ATMPool");
+      } catch (Exception e) {
+         System.err.println ("CoLocatedServer error: " + e.getMessage());
+         e.printStackTrace();
+         System.exit(1);
+      }
+   } // End of function main
+
+} // End of class CoLocatedServer
@@ -0,0 +1,61 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *         The class <code> ConcurrentLatencyHistogram </code> counts
+ *         latencies in the buckets of a LatencyHistogram, from any number
+ *         of threads, without locks: each bucket is an atomic counter.
+ *         Recording does not allocate. Readers take a snapshot, a
+ *         LatencyHistogram, to get percentiles from; a snapshot taken
+ *         while threads record may be off by the latencies in flight.
+ */
+public class ConcurrentLatencyHistogram {
+
+   /*** State variables for class ConcurrentLatencyHistogram */
+   private final AtomicLongArray counts
+      = new AtomicLongArray(LatencyHistogram.BUCKETS);
+   private final LongAdder sum = new LongAdder();
+   private final AtomicLong max = new AtomicLong();
+
+   /**
+    * <code> record </code> counts one latency.
+    *
+    * @param
+    *    nanos - the latency, negative ones count as 0
+    */
+   public void record(long nanos) {
+      if (nanos < 0) nanos = 0;
+      counts.incrementAndGet(LatencyHistogram.indexOf(nanos));
+      sum.add(nanos);
+      long highest;
+      while (nanos > (highest = max.get())
+             && max.compareAndSet(highest, nanos) == false) {
+         // Lost a race with a longer latency, try again
+      }
+   }
+
+   /**
+    * @return the latencies counted so far
+    */
+   public LatencyHistogram snapshot() {
+      long[] copy = new long[LatencyHistogram.BUCKETS];
+      for (int i = 0; i < copy.length; i++) copy[i] = counts.get(i);
+      return new LatencyHistogram(copy, sum.sum(), max.get());
+   }
+
+   /**
+    * <code> reset </code> clears the counts, e.g. between two runs.
+    */
+   public void reset() {
+      for (int i = 0; i < LatencyHistogram.BUCKETS; i++) counts.set(i, 0);
+      sum.reset();
+      max.set(0);
+   }
+
+} // end class ConcurrentLatencyHistogram
@@ -0,0 +1,211 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ *         The class <code> CredentialCache </code> remembers the pins
+ *         SecurityImpl verified recently, so that an account pays for the
+ *         slow hash of its PinCredential once per session rather than on
+ *         every call (each ATM operation authenticates again). An entry
+ *         holds an account id, a digest of the pin presented (an HMAC
+ *         under a key drawn when the cache is created, never the pin), the
+ *         stamp of the credential it matched and its expiry. A pin is only
+ *         found if all of them agree: a wrong pin, or a pin verified
+ *         against a credential since replaced, is hashed again. Only pins
+ *         that matched are cached.
+ *
+ *         The cache is a fixed array of two-way sets, in primitive arrays,
+ *         so it never holds more than its capacity, and its entries cost
+ *         no object (a lookup allocates only the HMAC's result, 48 bytes
+ *         for an array of 32): an account maps to one set, and a new entry
+ *         replaces the empty, expired or soonest to expire of the two.
+ *         Each set is guarded by a stripe of an AccountLocks.
+ *
+ *         The capacity (in entries, 0 turns the cache off) and the time an
+ *         entry lives can be set with the system properties
+ *         rmi.bank.security.credentialCache.size and
+ *         rmi.bank.security.credentialCache.ttlMillis.
+ */
+public class CredentialCache {
+
+   private static final int SIZE
+      = Integer.getInteger("rmi.bank.security.credentialCache.size", 65536);
+   private static final long TTL_MILLIS
+      = Long.getLong("rmi.bank.security.credentialCache.ttlMillis", 5 * 60 * 1000L);
+
+   private static final String MAC = "HmacSHA256";
+
+   // Each thread's buffer for the id and pin to digest
+   private static final ThreadLocal<byte[]> DIGESTS = new ThreadLocal<byte[]>() {
+      @Override
+      protected byte[] initialValue() {
+         return new byte[8];
+      }
+   };
+
+   /*** State variables for class CredentialCache */
+   private final int[] ids;
+   private final int[] stamps;
+   private final long[] digests;
+   private final long[] expires;   // System.nanoTime deadlines, 0 if empty
+   private final int setMask;      // The number of sets - 1, a power of two
+   private final long ttlNanos;
+   private final AccountLocks locks = new AccountLocks();
+   private final ThreadLocal<Mac> macs;
+
+   /* Constructor for CredentialCache, as configured */
+   public CredentialCache() {
+      this(SIZE, TTL_MILLIS);
+   }
+
+   /* Constructor for CredentialCache, of at least capacity entries */
+   public CredentialCache(int capacity, long ttlMillis) {
+      int entries = 0;
+      if (capacity > 0) {
+         entries = 2;
+         while (entries < capacity) entries <<= 1;
+      }
+      ids = new int[entries];
+      stamps = new int[entries];
+      digests = new long[entries];
+      expires = new long[entries];
+      setMask = entries / 2 - 1;
+      ttlNanos = ttlMillis * 1000000L;
+
+      byte[] key = new byte[32];
+      new SecureRandom().nextBytes(key);
+      final SecretKeySpec macKey = new SecretKeySpec(key, MAC);
+      macs = new ThreadLocal<Mac>() {
+         @Override
+         protected Mac initialValue() {
+            try {
+               Mac mac = Mac.getInstance(MAC);
+               mac.init(macKey);
+               return mac;
+            }
+            catch (GeneralSecurityException e) {
+               throw new IllegalStateException ("Cannot digest pins: " + e.getMessage(), e);
+            }
+         }
+      };
+      LogHelper.fine("CredentialCache: created with room for " + entries
+         + " pins of " + ttlMillis + " ms");
+   }
+
+   /**
+    * <code> isVerified </code> returns true if the pin was verified
+    * against the credential of this stamp, and has not expired since.
+    */
+   public boolean isVerified(int id, int pin, int stamp) {
+      if (expires.length == 0) return false;
+      long digest = digestOf(id, pin);
+      int set = setOf(id);
+      long now = System.nanoTime();
+      ReentrantLock lock = locks.lockFor(set);
+      lock.lock();
+      try {
+         for (int i = 2 * set; i < 2 * set + 2; i++) {
+            if (expires[i] != 0 && ids[i] == id && digests[i] == digest
+                && stamps[i] == stamp)
+               return now - expires[i] < 0;
+         }
+         return false;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * <code> verified </code> remembers that the pin matched the
+    * credential of this stamp.
+    */
+   public void verified(int id, int pin, int stamp) {
+      if (expires.length == 0) return;
+      long digest = digestOf(id, pin);
+      int set = setOf(id);
+      long now = System.nanoTime();
+      long expiry = now + ttlNanos == 0 ? 1 : now + ttlNanos;
+      ReentrantLock lock = locks.lockFor(set);
+      lock.lock();
+      try {
+         int i = entryFor(set, id, now);
+         ids[i] = id;
+         stamps[i] = stamp;
+         digests[i] = digest;
+         expires[i] = expiry;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * <code> forget </code> drops every pin verified for an account.
+    */
+   public void forget(int id) {
+      if (expires.length == 0) return;
+      int set = setOf(id);
+      ReentrantLock lock = locks.lockFor(set);
+      lock.lock();
+      try {
+         for (int i = 2 * set; i < 2 * set + 2; i++)
+            if (ids[i] == id) expires[i] = 0;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * @return the number of entries the cache holds at most, 0 if off
+    */
+   public int capacity() {
+      return expires.length;
+   }
+
+   /*** Helper functions ***/
+
+   // The account's entry in its set if it has one, else an empty or
+   // expired one, else the one expiring first
+   private int entryFor(int set, int id, long now) {
+      int first = 2 * set, second = first + 1;
+      if (expires[first] != 0 && ids[first] == id) return first;
+      if (expires[second] != 0 && ids[second] == id) return second;
+      if (isFree(first, now)) return first;
+      if (isFree(second, now)) return second;
+      return expires[second] - expires[first] < 0 ? second : first;
+   }
+
+   private boolean isFree(int entry, long now) {
+      return expires[entry] == 0 || now - expires[entry] >= 0;
+   }
+
+   private int setOf(int id) {
+      int h = id * 0x9E3779B9;
+      return (h ^ (h >>> 16)) & setMask;
+   }
+
+   // The first 64 bits of the HMAC of the id and pin
+   private long digestOf(int id, int pin) {
+      byte[] buffer = DIGESTS.get();
+      for (int i = 0; i < 4; i++) {
+         buffer[i] = (byte) (id >>> (24 - 8 * i));
+         buffer[4 + i] = (byte) (pin >>> (24 - 8 * i));
+      }
+      Mac mac = macs.get();
+      mac.update(buffer, 0, 8);
+      byte[] hmac = mac.doFinal();
+      long digest = 0;
+      for (int i = 0; i < 8; i++) digest = digest << 8 | (hmac[i] & 0xFF);
+      return digest;
+   }
+
+} // end class CredentialCache
@@ -0,0 +1,111 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ *         The class <code> IntIndex </code> maps int keys (account ids) to
+ *         int slots, without boxing either. It is an open-addressing hash
+ *         table with linear probing, held in two int arrays, which is what
+ *         lets a store index millions of accounts in a few bytes each.
+ *
+ *         IntIndex is not synchronized; its users (PackedAccountStore,
+ *         through its AccountTable, and PermissionTable) guard it with the
+ *         stripes of an AccountLocks:
+ *            put    with every stripe held (lockAll), since it may rehash
+ *                   the arrays, and may run after the index is shared
+ *            get    with at least one stripe held, any of them: it is
+ *                   enough to keep every put out, and lets gets of ids on
+ *                   different stripes run in parallel
+ *         Until the index is shared, e.g. while a store replays its
+ *         journal, no lock is needed.
+ */
+public class IntIndex {
+
+   private static final float LOAD_FACTOR = 0.75f;
+
+   /*** State variables for class IntIndex */
+   private int[] keys;     // The keys, meaningful where slots[i] != 0
+   private int[] slots;    // The slot + 1 mapped to keys[i], 0 when empty
+   private int mask;       // keys.length - 1, keys.length a power of two
+   private int size;       // The number of keys
+   private int threshold;  // The size at which the arrays are doubled
+
+   /* Constructor for IntIndex, sized for expectedKeys without growing */
+   public IntIndex(int expectedKeys) {
+      int capacity = 16;
+      while (capacity * LOAD_FACTOR < expectedKeys) capacity <<= 1;
+      allocate(capacity);
+   }
+
+   /**
+    * <code> get </code> returns the slot mapped to a key.
+    *
+    * @return the slot, or -1 if the key is not in the index
+    */
+   public int get(int key) {
+      int i = hash(key) & mask;
+      while (slots[i] != 0) {
+         if (keys[i] == key) return slots[i] - 1;
+         i = (i + 1) & mask;
+      }
+      return -1;
+   }
+
+   /**
+    * <code> put </code> maps a key to a slot, replacing any previous slot.
+    *
+    * @param
+    *    key - the key, any int
+    *    slot - the slot, zero or positive
+    */
+   public void put(int key, int slot) {
+      assert slot >= 0 : "IntIndex slots cannot be negative!";
+      if (size >= threshold) rehash(keys.length << 1);
+      int i = hash(key) & mask;
+      while (slots[i] != 0) {
+         if (keys[i] == key) {
+            slots[i] = slot + 1;
+            return;
+         }
+         i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      slots[i] = slot + 1;
+      size++;
+   }
+
+   /**
+    * @return the number of keys in the index
+    */
+   public int size() {
+      return size;
+   }
+
+   // Spread the key bits, so that sequential ids do not cluster
+   private static int hash(int key) {
+      int h = key * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+
+   private void allocate(int capacity) {
+      keys = new int[capacity];
+      slots = new int[capacity];
+      mask = capacity - 1;
+      threshold = (int) (capacity * LOAD_FACTOR);
+   }
+
+   private void rehash(int capacity) {
+      int[] oldKeys = keys;
+      int[] oldSlots = slots;
+      allocate(capacity);
+      for (int i = 0; i < oldKeys.length; i++) {
+         if (oldSlots[i] == 0) continue;
+         int j = hash(oldKeys[i]) & mask;
+         while (slots[j] != 0) j = (j + 1) & mask;
+         keys[j] = oldKeys[i];
+         slots[j] = oldSlots[i];
+      }
+   }
+
+} // end class IntIndex
@@ -0,0 +1,458 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ *         The class <code> Journal </code> is the bank's write-ahead
+ *         journal. Every change to a balance appends a binary record, of
+ *         RECORD_BYTES bytes, holding the account id and its balance after
+ *         the change. Replaying the journal in order sets each account to
+ *         its last journaled balance, which rebuilds the accounts when
+ *         BankServer restarts. Since a record holds a balance and not an
+ *         amount, replaying it twice does no harm.
+ *
+ *         A record is appended while its account's stripe is held, so the
+ *         journal holds the changes of one account in the order they were
+ *         made. The caller then waits for the record to be durable via
+ *         <code> awaitDurable </code>, after letting go of the stripe.
+ *
+ *         With group commit (the default), appends only copy the record
+ *         into a buffer; a commit thread writes the buffer through the
+ *         FileChannel and forces it to disk, so all the operations that
+ *         appended in the meantime share one fsync. Once the first record
+ *         of a group is pending, the thread waits at most the configured
+ *         commit delay for more, or until GROUP_BYTES are pending. Without
+ *         group commit, every append is written and forced on its own.
+ *
+ *         A transfer changes two balances, which must be replayed both or
+ *         not at all: its records are appended as one unit, between
+ *         <code> beginUnit </code> and <code> endUnit </code>. The last
+ *         record of each unit is flagged, and replay drops a unit that is
+ *         cut short, i.e. whose writing was interrupted by a crash.
+ */
+public class Journal {
+
+   // A record: type (1 byte), flags (1), unused (2), account id (4),
+   // balance in cents (8), CRC32 of the previous 16 bytes (4)
+   static final int RECORD_BYTES = 20;
+   private static final byte BALANCE = 1;
+   private static final byte END_OF_UNIT = 1;
+
+   // Pending bytes at which a group is committed without waiting longer
+   private static final int GROUP_BYTES = 64 * 1024;
+
+   /**
+    * A <code> Unit </code> holds the records of a unit in progress on
+    * one thread, until endUnit appends them together.
+    */
+   private static class Unit {
+      int[] ids = new int[4];
+      long[] balances = new long[4];
+      int size;
+      int depth;
+
+      void add(int id, long balance) {
+         if (size == ids.length) {
+            ids = java.util.Arrays.copyOf(ids, size << 1);
+            balances = java.util.Arrays.copyOf(balances, size << 1);
+         }
+         ids[size] = id;
+         balances[size] = balance;
+         size++;
+      }
+   } // end class Unit
+
+   /*** State variables for class Journal */
+   private final File file;
+   private final FileChannel channel;
+   private final boolean groupCommit;       // Else one fsync per append
+   private final long maxCommitDelayNanos;  // Longest a group waits to fill
+   private final CRC32 crc = new CRC32();   // Guarded by lock
+   private final ThreadLocal<Unit> units = new ThreadLocal<Unit>() {
+      @Override
+      protected Unit initialValue() {
+         return new Unit();
+      }
+   };
+
+   private final ReentrantLock lock = new ReentrantLock();
+   private final Condition pending = lock.newCondition();   // Records to commit
+   private final Condition durable = lock.newCondition();   // A group committed
+   private ByteBuffer buffer;       // Records not yet written, guarded by lock
+   private ByteBuffer spare;        // Written by the commit thread, swapped in
+   private long appendedLsn;       // Journal offset after the last record
+   private long durableLsn;        // Journal offset forced to disk
+   private long syncs;             // The number of fsyncs made
+   private IOException failure;    // Set once a write or fsync failed
+   private boolean replayed;       // Set once replay positioned the journal
+   private boolean closed;
+   private Thread committer;
+
+   /* Constructor for Journal, appending to a given file */
+   public Journal(File journalFile, boolean useGroupCommit,
+      long maxCommitDelayMicros) throws IOException {
+
+      file = journalFile;
+      groupCommit = useGroupCommit;
+      maxCommitDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxCommitDelayMicros);
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+         StandardOpenOption.READ, StandardOpenOption.WRITE);
+      buffer = ByteBuffer.allocate(2 * GROUP_BYTES);
+      spare = ByteBuffer.allocate(2 * GROUP_BYTES);
+      LogHelper.fine("Journal: opened " + file + (groupCommit
+         ? ", group commit within " + maxCommitDelayMicros + " us"
+         : ", one fsync per operation"));
+   }
+
+   /**
+    * <code> replay </code> applies every complete unit of the journal to
+    * a store, in order, and truncates the journal after the last one, so
+    * that new records follow it. It must be called once, before the
+    * first append.
+    *
+    * @return
+    *    the number of records applied
+    */
+   public long replay(AccountStore store) throws IOException, ATMException {
+      return replay(store, 0);
+   }
+
+   /**
+    * <code> replay </code> applies the complete units found from a given
+    * journal offset on (e.g. the offset a snapshot was taken at).
+    */
+   public long replay(AccountStore store, long fromLsn)
+      throws IOException, ATMException {
+
+      lock.lock();
+      try {
+         assert replayed == false : "Journal replayed twice!";
+         long size = channel.size();
+         long position = Math.min(fromLsn, size);
+         long validEnd = position;  // The end of the last complete unit
+         long applied = 0;
+
+         ByteBuffer in = ByteBuffer.allocate(RECORD_BYTES * 4096);
+         Unit unit = new Unit();
+         byte[] record = new byte[RECORD_BYTES];
+         channel.position(position);
+         reading:
+         while (channel.read(in) > 0 || in.position() > 0) {
+            in.flip();
+            while (in.remaining() >= RECORD_BYTES) {
+               in.get(record);
+               ByteBuffer r = ByteBuffer.wrap(record);
+               crc.reset();
+               crc.update(record, 0, 16);
+               if (r.get(0) != BALANCE || r.getInt(16) != (int) crc.getValue()) {
+                  LogHelper.warn("Journal: bad record at " + position
+                     + ", dropping the rest of " + file);
+                  break reading;
+               }
+               unit.add(r.getInt(4), r.getLong(8));
+               position += RECORD_BYTES;
+               if ((r.get(1) & END_OF_UNIT) != 0) {
+                  for (int i = 0; i < unit.size; i++)
+                     store.restore(unit.ids[i], unit.balances[i]);
+                  applied += unit.size;
+                  unit.size = 0;
+                  validEnd = position;
+               }
+            }
+            if (in.hasRemaining() && channel.position() >= size) break;
+            in.compact();
+         }
+
+         if (validEnd < size) {
+            LogHelper.warn("Journal: dropping " + (size - validEnd)
+               + " bytes of incomplete records at the end of " + file);
+            channel.truncate(validEnd);
+         }
+         channel.position(validEnd);
+         appendedLsn = validEnd;
+         durableLsn = validEnd;
+         replayed = true;
+         if (groupCommit) startCommitter();
+         LogHelper.info("Journal: replayed " + applied + " records from " + file);
+         return applied;
+      }
+      finally {
+         lock.unlock();
+      }
+   } // end replay
+
+   /**
+    * <code> record </code> appends a balance change. Within a unit, the
+    * record is only kept until endUnit.
+    *
+    * @return
+    *    the journal offset to pass to awaitDurable, 0 within a unit
+    * @throws ATMException
+    *    if the journal can no longer be written
+    */
+   public long record(int id, long balance) throws ATMException {
+      Unit unit = units.get();
+      if (unit.depth > 0) {
+         unit.add(id, balance);
+         return 0;
+      }
+      lock.lock();
+      try {
+         append(id, balance, true);
+         return appendedLsn;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * <code> beginUnit </code> starts a unit on the calling thread: the
+    * records it makes until endUnit are replayed all or none.
+    */
+   public void beginUnit() {
+      units.get().depth++;
+   }
+
+   /**
+    * <code> endUnit </code> appends the records of the calling thread's
+    * unit, together.
+    *
+    * @return
+    *    the journal offset to pass to awaitDurable
+    */
+   public long endUnit() throws ATMException {
+      Unit unit = units.get();
+      assert unit.depth > 0 : "Journal.endUnit without beginUnit!";
+      if (--unit.depth > 0 || unit.size == 0) return 0;
+      lock.lock();
+      try {
+         for (int i = 0; i < unit.size; i++)
+            append(unit.ids[i], unit.balances[i], i == unit.size - 1);
+         return appendedLsn;
+      }
+      finally {
+         unit.size = 0;
+         lock.unlock();
+      }
+   }
+
+   /**
+    * <code> awaitDurable </code> waits until the journal is on disk up to
+    * a given offset, as returned by record or endUnit.
+    *
+    * @throws ATMException
+    *    if the journal could not be written, in which case the change is
+    *    applied in memory but may be lost on restart
+    */
+   public void awaitDurable(long lsn) throws ATMException {
+      if (lsn == 0) return;
+      lock.lock();
+      try {
+         boolean interrupted = false;
+         while (durableLsn < lsn && failure == null) {
+            pending.signal();
+            try {
+               durable.await();
+            }
+            catch (InterruptedException e) {
+               interrupted = true; // we still owe our caller the wait
+            }
+         }
+         if (interrupted) Thread.currentThread().interrupt();
+         if (durableLsn < lsn) {
+            throw new ATMException ("Journal write failed: " + failure.getMessage());
+         }
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * <code> close </code> commits what is pending and closes the file.
+    */
+   public void close() throws IOException {
+      lock.lock();
+      try {
+         closed = true;
+         pending.signal();
+      }
+      finally {
+         lock.unlock();
+      }
+      if (committer != null) {
+         try {
+            committer.join();
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+      channel.close();
+   }
+
+   /**
+    * @return the journal offset after the last appended record
+    */
+   public long getAppendedLsn() {
+      lock.lock();
+      try {
+         return appendedLsn;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * @return the number of fsyncs made, to compare with the operations
+    */
+   public long getSyncCount() {
+      lock.lock();
+      try {
+         return syncs;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   public File getFile() {
+      return file;
+   }
+
+   /*** private functions ***/
+
+   // Encode a record, then buffer it for the commit thread, or write and
+   // force it now. Called with the lock held.
+   private void append(int id, long balance, boolean endOfUnit)
+      throws ATMException {
+
+      assert replayed : "Journal appended to before replay!";
+      if (failure != null)
+         throw new ATMException ("Journal write failed: " + failure.getMessage());
+
+      while (groupCommit && buffer.remaining() < RECORD_BYTES) {
+         // The commit thread is behind: wait for it to take the buffer
+         pending.signal();
+         durable.awaitUninterruptibly();
+         if (failure != null)
+            throw new ATMException ("Journal write failed: " + failure.getMessage());
+      }
+
+      ByteBuffer out = groupCommit ? buffer : ByteBuffer.allocate(RECORD_BYTES);
+      int start = out.position();
+      out.put(BALANCE).put(endOfUnit ? END_OF_UNIT : 0).putShort((short) 0)
+         .putInt(id).putLong(balance);
+      crc.reset();
+      crc.update(out.array(), start, 16);
+      out.putInt((int) crc.getValue());
+      appendedLsn += RECORD_BYTES;
+
+      if (groupCommit) {
+         if (buffer.position() >= GROUP_BYTES) pending.signal();
+         return;
+      }
+
+      try {
+         out.flip();
+         while (out.hasRemaining()) channel.write(out);
+         if (endOfUnit) {
+            channel.force(false);
+            syncs++;
+            durableLsn = appendedLsn;
+         }
+      }
+      catch (IOException e) {
+         failure = e;
+         LogHelper.warn("Journal: write to " + file + " failed! " + e);
+         throw new ATMException ("Journal write failed: " + e.getMessage());
+      }
+   }
+
+   private void startCommitter() {
+      committer = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            commitLoop();
+         }
+      }, "journal-group-commit");
+      committer.setDaemon(true);
+      committer.start();
+   }
+
+   // The commit thread: wait for records, let the group fill for at
+   // most the commit delay, then write and force it
+   private void commitLoop() {
+      while (true) {
+         ByteBuffer group;
+         long groupLsn;
+         lock.lock();
+         try {
+            while (buffer.position() == 0 && closed == false)
+               pending.awaitUninterruptibly();
+            if (buffer.position() == 0) return; // closed, nothing pending
+
+            long deadline = System.nanoTime() + maxCommitDelayNanos;
+            long wait;
+            while (buffer.position() < GROUP_BYTES && closed == false
+                   && (wait = deadline - System.nanoTime()) > 0) {
+               try {
+                  pending.awaitNanos(wait);
+               }
+               catch (InterruptedException e) {
+                  break;
+               }
+            }
+
+            group = buffer;
+            buffer = spare;
+            spare = group;
+            groupLsn = appendedLsn;
+         }
+         finally {
+            lock.unlock();
+         }
+
+         // Write and force outside the lock, so appends go on meanwhile
+         IOException error = null;
+         try {
+            group.flip();
+            while (group.hasRemaining()) channel.write(group);
+            channel.force(false);
+         }
+         catch (IOException e) {
+            error = e;
+            LogHelper.warn("Journal: group commit to " + file + " failed! " + e);
+         }
+         group.clear();
+
+         lock.lock();
+         try {
+            if (error != null) failure = error;
+            else {
+               durableLsn = groupLsn;
+               syncs++;
+            }
+            durable.signalAll();
+            if (error != null) return;
+         }
+         finally {
+            lock.unlock();
+         }
+      }
+   } // end commitLoop
+
+} // end class Journal
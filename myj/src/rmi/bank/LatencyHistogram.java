@@ -0,0 +1,123 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ *         The class <code> LatencyHistogram </code> counts latencies, in
+ *         nanoseconds, in log-linear buckets: exact below 128 ns, then 64
+ *         buckets per power of 2, i.e. within 1.6% of the value recorded,
+ *         from 128 ns to Long.MAX_VALUE, in 3712 buckets of a fixed array.
+ *         Recording is a few shifts and an increment, and never allocates.
+ *
+ *         A histogram is not thread safe: each recording thread keeps its
+ *         own, and the histograms are added up when the threads are done.
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BUCKET_BITS = 6;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;   // 64
+   private static final int EXACT = 2 * SUB_BUCKETS;               // 128
+   static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+   /*** State variables for class LatencyHistogram */
+   private final long[] counts = new long[BUCKETS];
+   private long count;
+   private long sum;
+   private long max;
+
+   //// Constructors ////
+   public LatencyHistogram() {
+   }
+
+   // A histogram of given counts, e.g. a ConcurrentLatencyHistogram's
+   LatencyHistogram(long[] bucketCounts, long sumNanos, long maxNanos) {
+      for (int i = 0; i < BUCKETS; i++) {
+         counts[i] = bucketCounts[i];
+         count += bucketCounts[i];
+      }
+      sum = sumNanos;
+      max = maxNanos;
+   }
+
+   /**
+    * <code> record </code> counts one latency.
+    *
+    * @param
+    *    nanos - the latency, negative ones count as 0
+    */
+   public void record(long nanos) {
+      if (nanos < 0) nanos = 0;
+      counts[indexOf(nanos)]++;
+      count++;
+      sum += nanos;
+      if (nanos > max) max = nanos;
+   }
+
+   /**
+    * <code> add </code> adds the counts of another histogram to this one.
+    */
+   public void add(LatencyHistogram other) {
+      for (int i = 0; i < BUCKETS; i++) counts[i] += other.counts[i];
+      count += other.count;
+      sum += other.sum;
+      if (other.max > max) max = other.max;
+   }
+
+   public long getCount() {
+      return count;
+   }
+
+   public long getMaxNanos() {
+      return max;
+   }
+
+   /**
+    * @return the mean latency, in nanoseconds, 0 if none
+    */
+   public double getMeanNanos() {
+      return count == 0 ? 0 : (double) sum / count;
+   }
+
+   /**
+    * <code> getNanosAtPercentile </code> returns the latency that
+    * percentile of the latencies recorded are at or below, as the highest
+    * value of its bucket (but never above the maximum recorded).
+    *
+    * @param
+    *    percentile - e.g. 99.9
+    * @return
+    *    the latency, in nanoseconds, 0 if none was recorded
+    */
+   public long getNanosAtPercentile(double percentile) {
+      if (count == 0) return 0;
+      long rank = (long) Math.ceil(percentile / 100.0 * count);
+      if (rank < 1) rank = 1;
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += counts[i];
+         if (seen >= rank) return Math.min(highestValueOf(i), max);
+      }
+      return max;
+   }
+
+   /*** Bucket functions ***/
+
+   // Values below EXACT have a bucket each; above, a value v whose highest
+   // bit is bit b goes to the bucket of v's 7 leading bits, in the block
+   // of bit b.
+   static int indexOf(long v) {
+      if (v < EXACT) return (int) v;
+      int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+      return (shift + 1) * SUB_BUCKETS + (int) ((v >>> shift) - SUB_BUCKETS);
+   }
+
+   private static long highestValueOf(int index) {
+      if (index < EXACT) return index;
+      int shift = index / SUB_BUCKETS - 1;
+      long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+      long highest = ((sub + 1) << shift) - 1;
+      return highest < 0 ? Long.MAX_VALUE : highest;
+   }
+
+} // end class LatencyHistogram
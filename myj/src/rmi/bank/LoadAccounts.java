@@ -0,0 +1,43 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ *         The class <code> LoadAccounts </code> defines the test accounts
+ *         of load runs, on the server side: BankServer (and
+ *         CoLocatedServer) opens them and SecurityImpl grants them every
+ *         permission when started with -Drmi.bank.load.accounts=N, and
+ *         LoadClient drives them. The accounts are ids FIRST_ACCOUNT and
+ *         up, each with a million dollars and a pin of pinOf(id), hashed
+ *         with rmi.bank.load.pinIterations PBKDF2 iterations (1000 by
+ *         default, far fewer than real accounts', so that the bank starts
+ *         and warms its CredentialCache quickly).
+ */
+public final class LoadAccounts {
+
+   public static final String ACCOUNTS_PROP = "rmi.bank.load.accounts";
+   public static final int FIRST_ACCOUNT = 1000;
+   public static final long OPENING_CENTS = 1000000 * Money.CENTS_PER_DOLLAR;
+   public static final int PIN_ITERATIONS
+      = Integer.getInteger("rmi.bank.load.pinIterations", 1000);
+
+   //// Constructor, not to be used ////
+   private LoadAccounts() {
+   }
+
+   /**
+    * @return the number of load accounts to open, 0 if none
+    */
+   public static int count() {
+      return Integer.getInteger(ACCOUNTS_PROP, 0);
+   }
+
+   /**
+    * @return the pin of load account id
+    */
+   public static int pinOf(int id) {
+      return 1000 + id % 9000;
+   }
+
+} // end class LoadAccounts
@@ -0,0 +1,380 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.rmi.Naming;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <code> LoadClient </code> drives a workload against the ATMs of an
+ * ATMFactory, where Client runs the spec's tests once: a number of
+ * threads, each on its own ATM, run a mix of deposits, withdrawals,
+ * balances and transfers on the load accounts, for a while, and the
+ * latency of every operation is counted in a LatencyHistogram. It then
+ * prints the throughput and the p50, p99 and p99.9 latencies of each
+ * operation, and writes them as JSON if asked to.
+ *
+ * The load accounts (see LoadAccounts), ids 1000 and up, are opened by
+ * BankServer (and CoLocatedServer) when started with
+ * -Drmi.bank.load.accounts=N. The driver is set with system properties:
+ *
+ *    rmi.bank.load.accounts     accounts used, as the bank's, default 1000
+ *    rmi.bank.load.threads      threads, an ATM each, default 8
+ *    rmi.bank.load.mix          default deposit=30,withdraw=30,balance=30,transfer=10
+ *    rmi.bank.load.distribution uniform or zipf (hot accounts), default uniform
+ *    rmi.bank.load.zipfExponent default 1.0
+ *    rmi.bank.load.rate         operations per second, all threads, 0 unpaced
+ *    rmi.bank.load.mode         closed or open, default closed
+ *    rmi.bank.load.seconds      measured, default 30
+ *    rmi.bank.load.warmupSeconds not measured, before, default 5
+ *    rmi.bank.load.amountCents  of each deposit, withdrawal and transfer, default 100
+ *    rmi.bank.load.json         file to write the results to, default none
+ *
+ * In closed loop mode a thread sends its next operation when the last one
+ * is done (at the earliest, when paced by a rate), and an operation is
+ * timed from when it is sent. In open loop mode, operations are due at
+ * the rate whether or not the earlier ones are done, and an operation is
+ * timed from when it was due, so that the latencies include the wait of
+ * the operations a slow server holds back. Open loop needs a rate.
+ *
+ * The ATMs' cash runs out after rmi.bank.atm.cashCents of withdrawals (500
+ * dollars by default); start ATMServer with more for long runs.
+ */
+public class LoadClient {
+
+   private static final String ATM_FACTORY = "//localhost/atmfactory";
+
+   private static final String[] OPERATIONS = {"deposit", "withdraw", "balance", "transfer"};
+   private static final int DEPOSIT = 0;
+   private static final int WITHDRAW = 1;
+   private static final int BALANCE = 2;
+   private static final int TRANSFER = 3;
+
+   // An ATM's lease is renewed this often (the factory's is 10 minutes)
+   private static final long RENEW_NANOS = 60 * 1000000000L;
+
+   /*** Settings ***/
+   private static final int accounts
+      = Integer.getInteger(LoadAccounts.ACCOUNTS_PROP, 1000);
+   private static final int threads = Integer.getInteger("rmi.bank.load.threads", 8);
+   private static final String mix = System.getProperty("rmi.bank.load.mix",
+      "deposit=30,withdraw=30,balance=30,transfer=10");
+   private static final String distribution
+      = System.getProperty("rmi.bank.load.distribution", "uniform");
+   private static final double zipfExponent = Double.parseDouble(
+      System.getProperty("rmi.bank.load.zipfExponent", "1.0"));
+   private static final int rate = Integer.getInteger("rmi.bank.load.rate", 0);
+   private static final boolean open
+      = "open".equals(System.getProperty("rmi.bank.load.mode", "closed"));
+   private static final int seconds = Integer.getInteger("rmi.bank.load.seconds", 30);
+   private static final int warmupSeconds
+      = Integer.getInteger("rmi.bank.load.warmupSeconds", 5);
+   private static final long amountCents = Long.getLong("rmi.bank.load.amountCents", 100);
+   private static final String json = System.getProperty("rmi.bank.load.json");
+
+   /**
+    * Main entry point of the load driver
+    *
+    * @param
+    *    args   the entry point array vector.
+    */
+   public static void main(String[] args) {
+      try {
+         if (open && rate <= 0)
+            throw new IllegalArgumentException("open loop mode needs rmi.bank.load.rate!");
+         int[] weights = parseMix(mix);
+         AccountPicker picker = distribution.equals("zipf")
+            ? new ZipfPicker(accounts, zipfExponent) : new AccountPicker(accounts);
+
+         ATMFactory factory = (ATMFactory) Naming.lookup(ATM_FACTORY);
+         long start = System.nanoTime() + 100 * 1000000L; // Once all are ready
+         long measureFrom = start + warmupSeconds * 1000000000L;
+         long end = measureFrom + seconds * 1000000000L;
+         long interval = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+
+         List<Worker> workers = new ArrayList<Worker>();
+         for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(factory, factory.getATM(), weights, picker,
+               start + i * interval / threads, interval, measureFrom, end);
+            worker.setName("load-" + i);
+            workers.add(worker);
+         }
+         LogHelper.info("LoadClient: " + threads + " threads, " + settings());
+         for (Worker worker : workers) worker.start();
+         for (Worker worker : workers) worker.join();
+
+         // Add up the threads' counts
+         LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+         long[] failed = new long[OPERATIONS.length];
+         String[] errors = new String[OPERATIONS.length];
+         for (int op = 0; op < OPERATIONS.length; op++) {
+            latencies[op] = new LatencyHistogram();
+            for (Worker worker : workers) {
+               latencies[op].add(worker.latencies[op]);
+               failed[op] += worker.failed[op];
+               if (errors[op] == null) errors[op] = worker.errors[op];
+            }
+         }
+         for (Worker worker : workers) factory.returnATM(worker.atm);
+
+         print(latencies, failed, errors);
+         if (json != null) writeJson(json, latencies, failed);
+      } catch (Exception e) {
+         System.err.println("LoadClient error: " + e);
+         e.printStackTrace();
+         System.exit(1);
+      }
+      System.exit(0);
+   }
+
+   /**
+    * A <code> Worker </code> runs operations on its ATM until the end of
+    * the run, and counts those of the measured part.
+    */
+   private static class Worker extends Thread {
+      private final ATMFactory factory;
+      private final ATM atm;
+      private final int[] weights;
+      private final AccountPicker picker;
+      private final long interval;
+      private final long measureFrom;
+      private final long end;
+      private long next;
+      private long renewAt;
+      final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+      final long[] failed = new long[OPERATIONS.length];
+      final String[] errors = new String[OPERATIONS.length];
+
+      Worker(ATMFactory atmFactory, ATM workerAtm, int[] opWeights,
+         AccountPicker accountPicker, long firstDue, long dueInterval,
+         long measureStart, long runEnd) {
+         factory = atmFactory;
+         atm = workerAtm;
+         weights = opWeights;
+         picker = accountPicker;
+         next = firstDue;
+         interval = dueInterval;
+         measureFrom = measureStart;
+         end = runEnd;
+         renewAt = firstDue + RENEW_NANOS;
+         for (int op = 0; op < OPERATIONS.length; op++)
+            latencies[op] = new LatencyHistogram();
+      }
+
+      @Override
+      public void run() {
+         ThreadLocalRandom random = ThreadLocalRandom.current();
+         while (true) {
+            long now = System.nanoTime();
+            if (now >= end) break;
+            if (next > now) {
+               LockSupport.parkNanos(next - now);
+               continue;
+            }
+
+            // Open loop: timed from when due; closed: from when sent
+            long timedFrom = open ? next : now;
+            if (interval > 0) next = open ? next + interval : Math.max(next + interval, now);
+            else next = now;
+
+            int op = pick(weights, random.nextInt(weights[weights.length - 1]));
+            String error = perform(op, random);
+            long done = System.nanoTime();
+            if (timedFrom >= measureFrom && timedFrom < end) {
+               if (error == null) latencies[op].record(done - timedFrom);
+               else {
+                  failed[op]++;
+                  if (errors[op] == null) errors[op] = error;
+               }
+            }
+            if (done >= renewAt) {
+               renewAt = done + RENEW_NANOS;
+               try {
+                  factory.renewATM(atm);
+               } catch (Exception e) {
+                  LogHelper.warn("LoadClient: could not renew the ATM's lease: " + e);
+               }
+            }
+         }
+      }
+
+      // Returns null if done, else what went wrong
+      private String perform(int op, ThreadLocalRandom random) {
+         int id = picker.next(random);
+         AccountInfo info = new AccountInfo(id, LoadAccounts.pinOf(id));
+         try {
+            switch (op) {
+            case DEPOSIT:
+               atm.depositCents(info, amountCents);
+               break;
+            case WITHDRAW:
+               atm.withdrawCents(info, amountCents);
+               break;
+            case BALANCE:
+               atm.getBalanceCents(info);
+               break;
+            case TRANSFER:
+               int to = picker.next(random);
+               if (to == id && accounts > 1) // Not to itself, to the next one
+                  to = id + 1 < LoadAccounts.FIRST_ACCOUNT + accounts
+                     ? id + 1 : LoadAccounts.FIRST_ACCOUNT;
+               atm.transferCents(info, new AccountInfo(to, LoadAccounts.pinOf(to)),
+                  amountCents);
+            }
+            return null;
+         } catch (Exception e) {
+            return e.toString();
+         }
+      }
+   } // end class Worker
+
+   /**
+    * An <code> AccountPicker </code> picks the load accounts at random,
+    * all alike.
+    */
+   private static class AccountPicker {
+      final int size;
+
+      AccountPicker(int accountCount) {
+         size = accountCount;
+      }
+
+      int next(ThreadLocalRandom random) {
+         return LoadAccounts.FIRST_ACCOUNT + random.nextInt(size);
+      }
+   } // end class AccountPicker
+
+   /**
+    * A <code> ZipfPicker </code> picks the load accounts by Zipf's law:
+    * the k-th account by 1 / k^exponent, so that the first few are hot.
+    */
+   private static class ZipfPicker extends AccountPicker {
+      private final double[] cumulative;
+
+      ZipfPicker(int accountCount, double exponent) {
+         super(accountCount);
+         cumulative = new double[accountCount];
+         double total = 0;
+         for (int k = 0; k < accountCount; k++) {
+            total += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = total;
+         }
+         for (int k = 0; k < accountCount; k++) cumulative[k] /= total;
+      }
+
+      @Override
+      int next(ThreadLocalRandom random) {
+         double u = random.nextDouble();
+         int low = 0, high = size - 1;
+         while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < u) low = mid + 1;
+            else high = mid;
+         }
+         return LoadAccounts.FIRST_ACCOUNT + low;
+      }
+   } // end class ZipfPicker
+
+   /*** Helper functions ***/
+
+   // The mix as cumulative weights, in the order of OPERATIONS
+   private static int[] parseMix(String spec) {
+      int[] weights = new int[OPERATIONS.length];
+      for (String part : spec.split(",")) {
+         String[] pair = part.trim().split("=");
+         int op = indexOf(pair[0].trim());
+         if (op < 0 || pair.length != 2)
+            throw new IllegalArgumentException("bad rmi.bank.load.mix entry: " + part);
+         weights[op] = Integer.parseInt(pair[1].trim());
+      }
+      for (int op = 1; op < weights.length; op++) weights[op] += weights[op - 1];
+      if (weights[weights.length - 1] <= 0)
+         throw new IllegalArgumentException("rmi.bank.load.mix has no operations!");
+      return weights;
+   }
+
+   private static int indexOf(String operation) {
+      for (int op = 0; op < OPERATIONS.length; op++)
+         if (OPERATIONS[op].equals(operation)) return op;
+      return -1;
+   }
+
+   private static int pick(int[] cumulativeWeights, int draw) {
+      int op = 0;
+      while (draw >= cumulativeWeights[op]) op++;
+      return op;
+   }
+
+   private static String settings() {
+      return "mix " + mix + ", " + accounts + " accounts " + distribution
+         + (distribution.equals("zipf") ? " " + zipfExponent : "")
+         + ", " + (open ? "open" : "closed") + " loop"
+         + (rate > 0 ? " at " + rate + " ops/s" : "")
+         + ", " + warmupSeconds + " s warm up, " + seconds + " s measured";
+   }
+
+   private static void print(LatencyHistogram[] latencies, long[] failed,
+      String[] errors) {
+      System.out.println("LoadClient: " + threads + " threads, " + settings());
+      System.out.println(String.format(Locale.ROOT,
+         "%-10s %10s %8s %10s %9s %9s %9s %9s %9s", "operation", "count", "failed",
+         "ops/s", "mean us", "p50 us", "p99 us", "p999 us", "max us"));
+      LatencyHistogram all = new LatencyHistogram();
+      long allFailed = 0;
+      for (int op = 0; op < OPERATIONS.length; op++) {
+         printRow(OPERATIONS[op], latencies[op], failed[op]);
+         all.add(latencies[op]);
+         allFailed += failed[op];
+      }
+      printRow("all", all, allFailed);
+      for (int op = 0; op < OPERATIONS.length; op++)
+         if (errors[op] != null)
+            System.out.println("   first " + OPERATIONS[op] + " failure: " + errors[op]);
+   }
+
+   private static void printRow(String name, LatencyHistogram h, long failed) {
+      System.out.println(String.format(Locale.ROOT,
+         "%-10s %10d %8d %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f", name, h.getCount(),
+         failed, (double) h.getCount() / seconds, h.getMeanNanos() / 1e3,
+         h.getNanosAtPercentile(50) / 1e3, h.getNanosAtPercentile(99) / 1e3,
+         h.getNanosAtPercentile(99.9) / 1e3, h.getMaxNanos() / 1e3));
+   }
+
+   private static void writeJson(String file, LatencyHistogram[] latencies,
+      long[] failed) throws IOException {
+      Writer out = new FileWriter(file);
+      try {
+         out.write(String.format(Locale.ROOT, "{\n  \"threads\": %d,\n  \"accounts\": %d,\n"
+            + "  \"distribution\": \"%s\",\n  \"zipfExponent\": %s,\n  \"mix\": \"%s\",\n"
+            + "  \"mode\": \"%s\",\n  \"rate\": %d,\n  \"seconds\": %d,\n"
+            + "  \"amountCents\": %d,\n  \"operations\": {", threads, accounts,
+            distribution, zipfExponent, mix, open ? "open" : "closed", rate, seconds,
+            amountCents));
+         for (int op = 0; op < OPERATIONS.length; op++) {
+            LatencyHistogram h = latencies[op];
+            out.write(String.format(Locale.ROOT, "%s\n    \"%s\": {\"count\": %d, "
+               + "\"failed\": %d, \"opsPerSecond\": %.1f, \"meanMicros\": %.1f, "
+               + "\"p50Micros\": %.1f, \"p99Micros\": %.1f, \"p999Micros\": %.1f, "
+               + "\"maxMicros\": %.1f}", op == 0 ? "" : ",", OPERATIONS[op],
+               h.getCount(), failed[op], (double) h.getCount() / seconds,
+               h.getMeanNanos() / 1e3, h.getNanosAtPercentile(50) / 1e3,
+               h.getNanosAtPercentile(99) / 1e3, h.getNanosAtPercentile(99.9) / 1e3,
+               h.getMaxNanos() / 1e3));
+         }
+         out.write("\n  }\n}\n");
+      }
+      finally {
+         out.close();
+      }
+      LogHelper.info("LoadClient: results written to " + file);
+   }
+
+} // end class LoadClient
@@ -1,6 +1,7 @@
-// MWM, a logger for debugging! 
+// MWM, a logger for debugging!
 
 package rmi.bank;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.SimpleFormatter;
@@ -9,6 +10,19 @@ import java.util.logging.Level;
 
 /**
  * A very, very simple logger class for debugging
+ *
+ * Logging below the current level must cost nothing on hot paths, so every
+ * method checks the level before building its message. A message that needs
+ * building takes one of three forms:
+ *    LogHelper.finer("Sent {} to {}", msg, listener);     // formatted if logged
+ *    LogHelper.finer(() -> "Report " + expensive());       // supplied if logged
+ *    if (LogHelper.isFiner()) LogHelper.finer("id " + id); // ints: no boxing
+ * Plain concatenation at the call site, LogHelper.finer("id " + id), builds
+ * the string even when nothing is logged, and is for cold paths only.
+ *
+ * The level is set with -Drmi.bank.log.level=FINE (default INFO). Records
+ * are written by an AsyncLogHandler, unless -Drmi.bank.log.sync=true asks
+ * for the synchronous ConsoleHandler.
  */
 public class LogHelper {
 
@@ -16,7 +30,10 @@ public class LogHelper {
 
    // A Log to be used in this package...
    private static final Logger LOG = Logger.getLogger("cscie55.project");
-   private static boolean initialized;
+
+   static {
+      init();
+   }
 
    protected static void init() {
 
@@ -26,8 +43,9 @@ public class LogHelper {
       // a config file, using standard Java logger functions
       // or this entire class could be replaced by Log4J
 
-      // For now, log to the console
-      ConsoleHandler handler = new ConsoleHandler();
+      // Log to the console, off the caller's thread unless asked not to
+      Handler handler = Boolean.getBoolean("rmi.bank.log.sync")
+         ? new ConsoleHandler() : new AsyncLogHandler();
       SimpleFormatter format = new SimpleFormatter();
       handler.setFormatter(format);
       // We set the handler's set level to be FINEST, but the controlling
@@ -37,15 +55,29 @@ public class LogHelper {
       LOG.setUseParentHandlers(false); // No need to propagate up logged items.
 
       // By default, the LOG is set to log INFO and above;
-      // Uncomment to activate logging to the console
-      //LOG.setLevel(Level.FINER);
-      initialized = true;
+      // e.g. -Drmi.bank.log.level=FINER activates logging to the console
+      String level = System.getProperty("rmi.bank.log.level");
+      if (level != null) LOG.setLevel(Level.parse(level));
       finer ("LogHelper: Logging turned on!");
    }
 
    ////// Member functions //////
 
-   // Note: More functions to log other levels to be added if needed.
+   /**
+   * <code>isFine</code>
+   * @return true iff messages of Level.FINE are logged
+   */
+   protected static boolean isFine() {
+      return LOG.isLoggable(Level.FINE);
+   }
+
+   /**
+   * <code>isFiner</code>
+   * @return true iff messages of Level.FINER are logged
+   */
+   protected static boolean isFiner() {
+      return LOG.isLoggable(Level.FINER);
+   }
 
    /**
    * <code>logInfo</code>
@@ -55,8 +87,7 @@ public class LogHelper {
    *     msg the string to log
    */
    protected static void info(String msg) {
-      if (initialized == false) init();
-      LOG.log(Level.INFO, msg + "\n");
+      log(Level.INFO, msg);
    }
 
    /**
@@ -66,8 +97,7 @@ public class LogHelper {
    *     msg the string to log
    */
    protected static void warn(String msg) {
-      if (initialized == false) init();
-      LOG.log(Level.WARNING, msg + "\n");
+      log(Level.WARNING, msg);
    }
 
 
@@ -79,8 +109,29 @@ public class LogHelper {
    *     msg the string to log
    */
    protected static void fine(String msg) {
-      if (initialized == false) init();
-      LOG.log(Level.FINE, msg + "\n");
+      log(Level.FINE, msg);
+   }
+
+   /**
+   * <code>logFine</code>
+   * Log a message of Level.FINE, each {} in the pattern replaced by the
+   * next argument, only if the level is logged.
+   */
+   protected static void fine(String pattern, Object arg) {
+      if (LOG.isLoggable(Level.FINE)) LOG.log(Level.FINE, format(pattern, arg, null));
+   }
+
+   protected static void fine(String pattern, Object arg1, Object arg2) {
+      if (LOG.isLoggable(Level.FINE)) LOG.log(Level.FINE, format(pattern, arg1, arg2));
+   }
+
+   /**
+   * <code>logFine</code>
+   * Log the supplied message of Level.FINE, calling the supplier only if
+   * the level is logged.
+   */
+   protected static void fine(Supplier<String> msg) {
+      if (LOG.isLoggable(Level.FINE)) LOG.log(Level.FINE, msg.get() + "\n");
    }
 
    /**
@@ -91,8 +142,48 @@ public class LogHelper {
    *     msg the string to log
    */
    protected static void finer(String msg) {
-      if (initialized == false) init();
-      LOG.log(Level.FINER, msg + "\n");
+      log(Level.FINER, msg);
+   }
+
+   /**
+   * <code>logFiner</code>
+   * Log a message of Level.FINER, each {} in the pattern replaced by the
+   * next argument, only if the level is logged.
+   */
+   protected static void finer(String pattern, Object arg) {
+      if (LOG.isLoggable(Level.FINER)) LOG.log(Level.FINER, format(pattern, arg, null));
    }
-}
 
+   protected static void finer(String pattern, Object arg1, Object arg2) {
+      if (LOG.isLoggable(Level.FINER)) LOG.log(Level.FINER, format(pattern, arg1, arg2));
+   }
+
+   /**
+   * <code>logFiner</code>
+   * Log the supplied message of Level.FINER, calling the supplier only if
+   * the level is logged.
+   */
+   protected static void finer(Supplier<String> msg) {
+      if (LOG.isLoggable(Level.FINER)) LOG.log(Level.FINER, msg.get() + "\n");
+   }
+
+   ////// Private functions //////
+
+   private static void log(Level level, String msg) {
+      if (LOG.isLoggable(level)) LOG.log(level, msg + "\n");
+   }
+
+   // Replace the first two {} of the pattern by the arguments
+   private static String format(String pattern, Object arg1, Object arg2) {
+      StringBuilder msg = new StringBuilder(pattern.length() + 32);
+      int from = 0;
+      int used = 0;
+      int at;
+      while (used < 2 && (at = pattern.indexOf("{}", from)) >= 0) {
+         msg.append(pattern, from, at).append(used == 0 ? arg1 : arg2);
+         from = at + 2;
+         used++;
+      }
+      return msg.append(pattern, from, pattern.length()).append('\n').toString();
+   }
+}
@@ -0,0 +1,107 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *         The class <code> MapAccountStore </code> keeps each account as
+ *         its own AccountImpl remote object, in a Map keyed by account id.
+ *         This is the default store, and fits banks of up to a few hundred
+ *         thousand accounts per jvm.
+ *
+ *         The map is guarded by the store's AccountLocks: a lookup holds
+ *         the stripe of its id, and an add holds every stripe.
+ *
+ *         With a Journal, an add journals the account's opening balance,
+ *         and the accounts journal every change.
+ */
+public class MapAccountStore implements AccountStore {
+
+   /*** State variables for class MapAccountStore */
+   private final Map<Integer, Account> accounts = new HashMap<Integer, Account>();
+   private final AccountLocks locks = new AccountLocks();
+   private final Journal journal;
+
+   /* Constructor for MapAccountStore, not journaled */
+   public MapAccountStore() {
+      this(null);
+   }
+
+   /* Constructor for MapAccountStore, journaled in journal if not null */
+   public MapAccountStore(Journal storeJournal) {
+      journal = storeJournal;
+   }
+
+   @Override
+   public void add(int id, long balanceCents)
+      throws ATMException, java.rmi.RemoteException {
+      if (balanceCents < 0)
+         throw new ATMException ("Cannot open an account with a negative balance!");
+      long lsn = 0;
+      locks.lockAll();
+      try {
+         if (accounts.containsKey(id))
+            throw new ATMException ("An account with this id already exists!");
+         if (journal != null) lsn = journal.record(id, balanceCents);
+         accounts.put(id, new AccountImpl(locks, journal, id, balanceCents));
+      }
+      finally {
+         locks.unlockAll();
+      }
+      if (journal != null) journal.awaitDurable(lsn);
+   }
+
+   @Override
+   public void restore(int id, long balanceCents) {
+      AccountImpl account = (AccountImpl) accounts.get(id);
+      if (account != null) account.restoreBalance(balanceCents);
+      else accounts.put(id, new AccountImpl(locks, journal, id, balanceCents));
+   }
+
+   @Override
+   public Account get(int id) {
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         return accounts.get(id);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   @Override
+   public int size() {
+      locks.lockAll();
+      try {
+         return accounts.size();
+      }
+      finally {
+         locks.unlockAll();
+      }
+   }
+
+   @Override
+   public int[] ids() {
+      locks.lockAll();
+      try {
+         int[] ids = new int[accounts.size()];
+         int i = 0;
+         for (Integer id : accounts.keySet()) ids[i++] = id;
+         return ids;
+      }
+      finally {
+         locks.unlockAll();
+      }
+   }
+
+   @Override
+   public AccountLocks locks() {
+      return locks;
+   }
+
+} // end class MapAccountStore
@@ -0,0 +1,92 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ *         The class <code> Money </code> holds the helpers for amounts
+ *         kept as fixed-point longs counting cents, which is how accounts,
+ *         ATMs and notifications carry money. A long of cents is exact to
+ *         the cent at any balance a bank holds, where a float is not
+ *         (a float cannot tell $500,000.00 from $500,000.01).
+ *
+ *         Arithmetic is checked: an amount that does not fit a long is
+ *         refused with an ATMException, and nothing is allocated unless
+ *         it is.
+ */
+public final class Money {
+
+   public static final long CENTS_PER_DOLLAR = 100;
+
+   //// Constructor, not to be used ////
+   private Money() {
+   }
+
+   /**
+    * <code> toCents </code> converts a dollar amount to cents, rounding to
+    * the nearest cent. Used to adapt the float signatures of ATM, Account
+    * and TransactionNotification.
+    *
+    * @throws ATMException
+    *    if the amount is not a number, or too large for a long of cents
+    */
+   public static long toCents(float dollars) throws ATMException {
+      double cents = Math.rint(dollars * (double) CENTS_PER_DOLLAR);
+      if (Double.isNaN(cents) || cents >= Long.MAX_VALUE || cents <= Long.MIN_VALUE)
+         throw new ATMException ("Amount out of range!");
+      return (long) cents;
+   }
+
+   /**
+    * <code> toDollars </code> converts cents to dollars, for the float
+    * signatures. Large amounts lose cents in the conversion.
+    */
+   public static float toDollars(long cents) {
+      return (float) (cents / (double) CENTS_PER_DOLLAR);
+   }
+
+   /**
+    * <code> add </code> returns a + b.
+    *
+    * @throws ATMException
+    *    if the sum overflows a long
+    */
+   public static long add(long a, long b) throws ATMException {
+      long sum = a + b;
+      // Overflow iff both operands have the same sign, and sum another
+      if (((a ^ sum) & (b ^ sum)) < 0)
+         throw new ATMException ("Amount overflow!");
+      return sum;
+   }
+
+   /**
+    * <code> subtract </code> returns a - b.
+    *
+    * @throws ATMException
+    *    if the difference overflows a long
+    */
+   public static long subtract(long a, long b) throws ATMException {
+      long difference = a - b;
+      // Overflow iff the operands have different signs, and a and the
+      // difference too
+      if (((a ^ b) & (a ^ difference)) < 0)
+         throw new ATMException ("Amount overflow!");
+      return difference;
+   }
+
+   /**
+    * <code> format </code> renders cents as dollars with two decimals,
+    * e.g. 12345 as "123.45", without going through a float.
+    */
+   public static String format(long cents) {
+      StringBuilder sb = new StringBuilder(24);
+      long dollars = cents / CENTS_PER_DOLLAR;
+      long remainder = Math.abs(cents % CENTS_PER_DOLLAR);
+      if (cents < 0 && dollars == 0) sb.append('-');
+      sb.append(dollars).append('.');
+      if (remainder < 10) sb.append('0');
+      sb.append(remainder);
+      return sb.toString();
+   }
+
+} // end class Money
@@ -0,0 +1,384 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *         The class <code> NotificationDispatcher </code> delivers
+ *         TransactionNotification messages to registered ATMListener(s)
+ *         off the transaction path. A transaction only enqueues its
+ *         notification and returns; a small pool of worker threads then
+ *         makes the remote handleNotification calls.
+ *
+ *         Each listener has its own bounded queue, so a slow or dead
+ *         listener only delays (or loses) its own notifications. Each
+ *         listener receives its notifications in the order they were
+ *         dispatched. What happens when a queue is full is set by an
+ *         OverflowPolicy. A listener that fails MAX_FAILURES deliveries
+ *         in a row is unregistered.
+ *
+ *         A BatchATMListener registered with registerBatch receives its
+ *         notifications via handleNotifications, up to its batch size per
+ *         call. A worker waits up to the listener's linger time for a
+ *         batch to fill, and delivers a full batch right away.
+ *
+ *         ATMServer and CoLocatedServer register the dispatcher as the
+ *         platform MBean rmi.bank:type=NotificationDispatcher, which shows
+ *         its counters and each listener's queue depth and drops.
+ */
+public class NotificationDispatcher implements NotificationDispatcherMBean {
+
+   // Consecutive failed deliveries after which a listener is dropped
+   private static final int MAX_FAILURES = 3;
+
+   // Remote calls a worker makes to one listener before giving the
+   // other listeners a turn
+   private static final int DRAIN_LIMIT = 64;
+
+   /**
+    * A <code> ListenerQueue </code> holds the notifications pending for
+    * one listener. At most one worker drains it at any time.
+    */
+   private class ListenerQueue implements Runnable {
+      private final ATMListener listener;
+      private final int maxBatchSize;   // 1 unless a BatchATMListener
+      private final long lingerMillis;  // 0 unless a BatchATMListener
+      private final BlockingQueue<TransactionNotification> queue;
+      private final AtomicBoolean scheduled = new AtomicBoolean(false);
+      private final AtomicLong droppedHere = new AtomicLong();
+      private volatile ScheduledFuture<?> lingering; // A drain waiting to run
+      private int failures;   // Only touched by the draining worker
+
+      ListenerQueue(ATMListener target, int batchSize, long linger) {
+         listener = target;
+         maxBatchSize = batchSize;
+         lingerMillis = linger;
+         queue = new ArrayBlockingQueue<TransactionNotification>(queueCapacity);
+      }
+
+      boolean isBatch() {
+         return maxBatchSize > 1 || lingerMillis > 0;
+      }
+
+      // Queue a notification, applying the overflow policy if full
+      void enqueue(TransactionNotification msg) {
+         boolean queued = queue.offer(msg);
+         while (queued == false) {
+            switch (overflowPolicy) {
+               case DROP_NEWEST:
+                  drop();
+                  return;
+               case DROP_OLDEST:
+                  if (queue.poll() != null) drop();
+                  queued = queue.offer(msg);
+                  break;
+               case BLOCK:
+               default:
+                  try {
+                     queue.put(msg);
+                     queued = true;
+                  }
+                  catch (InterruptedException e) {
+                     Thread.currentThread().interrupt();
+                     drop();
+                     return;
+                  }
+            }
+         }
+         schedule();
+      }
+
+      // Make sure a worker will drain this queue: right away if a batch
+      // is full (or if not batching), else once the linger time is over.
+      void schedule() {
+         if (scheduled.compareAndSet(false, true)) {
+            if (lingerMillis > 0 && queue.size() < maxBatchSize)
+               lingering = workers.schedule(this, lingerMillis,
+                  TimeUnit.MILLISECONDS);
+            else
+               workers.execute(this);
+         }
+         else if (queue.size() >= maxBatchSize) {
+            // A batch filled up while its drain lingers; run it now.
+            // cancel fails if the drain has already started.
+            ScheduledFuture<?> pending = lingering;
+            if (pending != null && pending.cancel(false))
+               workers.execute(this);
+         }
+      }
+
+      // Count a notification dropped by the overflow policy
+      private void drop() {
+         droppedHere.incrementAndGet();
+         dropped.incrementAndGet();
+      }
+
+      int depth() {
+         return queue.size();
+      }
+
+      @Override
+      public String toString() {
+         return listener + ": depth " + queue.size() + ", dropped "
+            + droppedHere.get();
+      }
+
+      // Deliver pending notifications, one remote call per notification,
+      // or per batch for a BatchATMListener
+      @Override
+      public void run() {
+         lingering = null;
+         try {
+            for (int i = 0; i < DRAIN_LIMIT; i++) {
+               if (isBatch()) {
+                  List<TransactionNotification> batch
+                     = new ArrayList<TransactionNotification>(maxBatchSize);
+                  queue.drainTo(batch, maxBatchSize);
+                  if (batch.isEmpty()) break;
+                  deliver(batch);
+                  // A partial batch means the queue is drained; what
+                  // arrives next lingers again.
+                  if (batch.size() < maxBatchSize) break;
+               }
+               else {
+                  TransactionNotification msg = queue.poll();
+                  if (msg == null) break;
+                  deliver(msg);
+               }
+            }
+         }
+         finally {
+            scheduled.set(false);
+         }
+         // Pick up what arrived while we were draining, or what is left
+         if (queue.isEmpty() == false && listeners.get(listener) == this)
+            schedule();
+      }
+
+      private void deliver(TransactionNotification msg) {
+         BankEvents.Notification event = BankEvents.Notification.started();
+         try {
+            LogHelper.finer ("Sending notification to listener {}", listener);
+            listener.handleNotification(msg);
+            event.finish(listener, msg, Outcome.SUCCESS);
+            delivered.incrementAndGet();
+            failures = 0;
+         }
+         catch (Exception e) {
+            event.finish(listener, msg, OperationStats.outcomeOf(e));
+            deliveryFailed(e);
+         }
+      }
+
+      private void deliver(List<TransactionNotification> batch) {
+         BankEvents.Notification event = BankEvents.Notification.started();
+         try {
+            if (LogHelper.isFiner())
+               LogHelper.finer ("Sending " + batch.size()
+                  + " notifications to listener " + listener);
+            ((BatchATMListener) listener).handleNotifications(batch);
+            event.finish(listener, batch, Outcome.SUCCESS);
+            delivered.addAndGet(batch.size());
+            failures = 0;
+         }
+         catch (Exception e) {
+            event.finish(listener, batch, OperationStats.outcomeOf(e));
+            deliveryFailed(e);
+         }
+      }
+
+      private void deliveryFailed(Exception e) {
+         // We log and print to stderr, cannot do much more...
+         failed.incrementAndGet();
+         System.err.println("NotificationDispatcher, Failed to call a handler!");
+         LogHelper.fine("NotificationDispatcher, Failed to call a handler: " + e);
+         if (++failures >= MAX_FAILURES) {
+            LogHelper.warn("NotificationDispatcher dropping a listener after "
+               + failures + " failed deliveries: " + listener);
+            dropped.addAndGet(queue.size());
+            listeners.remove(listener, this);
+            queue.clear();
+         }
+      }
+   } // end class ListenerQueue
+
+   /*** State variables for class NotificationDispatcher */
+   private final ConcurrentMap<ATMListener, ListenerQueue> listeners
+      = new ConcurrentHashMap<ATMListener, ListenerQueue>();
+   private final ScheduledExecutorService workers;
+   private final int queueCapacity;
+   private final OverflowPolicy overflowPolicy;
+
+   // Counters, for all listeners since the dispatcher started
+   private final AtomicLong dispatched = new AtomicLong();
+   private final AtomicLong delivered = new AtomicLong();
+   private final AtomicLong failed = new AtomicLong();
+   private final AtomicLong dropped = new AtomicLong();
+
+   //// Constructor ////
+   /**
+    * @param
+    *    threads - the number of worker threads delivering notifications
+    *    capacity - the queue capacity of each listener
+    *    policy - what to do when a listener's queue is full
+    */
+   public NotificationDispatcher(int threads, int capacity, OverflowPolicy policy)
+   {
+      assert threads > 0 && capacity > 0 : "Dispatcher needs threads and room!";
+      queueCapacity = capacity;
+      overflowPolicy = policy;
+      final AtomicInteger count = new AtomicInteger();
+      workers = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "notification-dispatcher-"
+               + count.incrementAndGet());
+            t.setDaemon(true); // Never keep a server alive for notifications
+            return t;
+         }
+      });
+      LogHelper.fine("NotificationDispatcher: " + threads + " threads, queues of "
+         + capacity + ", overflow policy " + policy);
+   }
+
+   /**
+    * <code> register </code> starts delivering notifications to a listener.
+    *
+    * @return
+    *    true, whether the listener is new or already registered
+    */
+   public boolean register(ATMListener listener) {
+      if (listeners.containsKey(listener)) return true; // No need to add
+      LogHelper.fine("NotificationDispatcher adding listener: " + listener);
+      listeners.putIfAbsent(listener, new ListenerQueue(listener, 1, 0));
+      return true;
+   }
+
+   /**
+    * <code> registerBatch </code> starts delivering notifications to a
+    * listener in batches. A listener already registered keeps its
+    * current settings.
+    *
+    * @param
+    *    listener - the listener, receiving handleNotifications calls
+    *    maxBatchSize - the most notifications delivered per call
+    *    lingerMillis - how long a notification may wait for its batch
+    *       to fill before being delivered
+    *
+    * @return
+    *    true, whether the listener is new or already registered
+    */
+   public boolean registerBatch(BatchATMListener listener, int maxBatchSize,
+      long lingerMillis) {
+      if (listeners.containsKey(listener)) return true; // No need to add
+      LogHelper.fine("NotificationDispatcher adding batch listener: " + listener
+         + " batches of " + maxBatchSize + ", linger " + lingerMillis + " ms");
+      listeners.putIfAbsent(listener,
+         new ListenerQueue(listener, maxBatchSize, lingerMillis));
+      return true;
+   }
+
+   /**
+    * <code> unregister </code> stops delivering notifications to a
+    * listener. Notifications still queued for it are discarded.
+    *
+    * @return
+    *    true iff the listener was registered
+    */
+   public boolean unregister(ATMListener listener) {
+      ListenerQueue removed = listeners.remove(listener);
+      if (removed == null) return false;
+      dropped.addAndGet(removed.queue.size());
+      removed.queue.clear();
+      return true;
+   }
+
+   /**
+    * <code> dispatch </code> queues a notification for every registered
+    * listener and returns without waiting for any delivery (unless the
+    * BLOCK policy applies to a full queue).
+    */
+   public void dispatch(TransactionNotification msg) {
+      dispatched.incrementAndGet();
+      for (ListenerQueue listenerQueue : listeners.values()) {
+         listenerQueue.enqueue(msg);
+      }
+   }
+
+   /*** Counters, shown over JMX (see NotificationDispatcherMBean) ***/
+
+   @Override
+   public int getQueueCapacity() {
+      return queueCapacity;
+   }
+
+   @Override
+   public String getOverflowPolicy() {
+      return overflowPolicy.name();
+   }
+
+   // The notifications currently queued, for all listeners
+   @Override
+   public int getQueueDepth() {
+      int depth = 0;
+      for (ListenerQueue listenerQueue : listeners.values()) {
+         depth += listenerQueue.depth();
+      }
+      return depth;
+   }
+
+   // The notifications currently queued for one listener, 0 if unknown
+   public int getQueueDepth(ATMListener listener) {
+      ListenerQueue listenerQueue = listeners.get(listener);
+      return listenerQueue == null ? 0 : listenerQueue.depth();
+   }
+
+   @Override
+   public String[] getListenerQueues() {
+      List<String> queues = new ArrayList<String>();
+      for (ListenerQueue listenerQueue : listeners.values())
+         queues.add(listenerQueue.toString());
+      return queues.toArray(new String[queues.size()]);
+   }
+
+   @Override
+   public int getListenerCount() {
+      return listeners.size();
+   }
+
+   @Override
+   public long getDispatchedCount() {
+      return dispatched.get();
+   }
+
+   @Override
+   public long getDeliveredCount() {
+      return delivered.get();
+   }
+
+   @Override
+   public long getFailedCount() {
+      return failed.get();
+   }
+
+   @Override
+   public long getDroppedCount() {
+      return dropped.get();
+   }
+
+} // end class NotificationDispatcher
@@ -0,0 +1,27 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ * The <code> NotificationDispatcherMBean </code> interface defines what JMX
+ * shows of the NotificationDispatcher of ATMImpl: its settings, the
+ * notifications queued, delivered, failed and dropped over all listeners,
+ * and the queue depth and drops of each listener.
+ */
+public interface NotificationDispatcherMBean {
+
+   public int getListenerCount();
+   public int getQueueCapacity();
+   public String getOverflowPolicy();
+
+   public int getQueueDepth();
+   public long getDispatchedCount();
+   public long getDeliveredCount();
+   public long getFailedCount();
+   public long getDroppedCount();
+
+   // One line per listener: the listener, its queue depth and the
+   // notifications dropped from its queue
+   public String[] getListenerQueues();
+}
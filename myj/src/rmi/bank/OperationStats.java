@@ -0,0 +1,296 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ *         The class <code> OperationStats </code> counts the calls of one
+ *         operation of a component (ATMImpl, BankImpl or SecurityImpl), by
+ *         outcome, and their latencies in a ConcurrentLatencyHistogram.
+ *         Counting is lock free and does not allocate; the components
+ *         keep their stats in static fields and record every call:
+ *
+ *            long start = System.nanoTime();
+ *            ... the operation, on failure: stats.failed(e, start)
+ *            stats.succeeded(start);
+ *
+ *         ATMServer and BankServer register the stats of their components
+ *         as platform MBeans, named
+ *            rmi.bank:type=OperationStats,component=ATM,operation=WITHDRAW
+ *         so that jconsole or any JMX client can read them. The servers'
+ *         other metrics, e.g. the NotificationDispatcher's, are registered
+ *         beside them with <code> registerMBean </code>.
+ *
+ *         -Drmi.bank.metrics=false stops the recording, e.g. to measure
+ *         what it costs.
+ */
+public class OperationStats implements OperationStatsMBean {
+
+   static final boolean ENABLED
+      = Boolean.parseBoolean(System.getProperty("rmi.bank.metrics", "true"));
+
+   // The stats of this jvm, by component and operation
+   private static final ConcurrentMap<String, OperationStats> all
+      = new ConcurrentHashMap<String, OperationStats>();
+   // The components whose stats are registered as MBeans
+   private static final Set<String> registered = new HashSet<String>();
+
+   private static final Outcome[] OUTCOMES = Outcome.values();
+
+   /*** State variables for class OperationStats */
+   private final String component;
+   private final String operation;
+   private final LongAdder[] outcomes = new LongAdder[OUTCOMES.length];
+   private final ConcurrentLatencyHistogram latencies
+      = new ConcurrentLatencyHistogram();
+
+   private OperationStats(String componentName, String operationName) {
+      component = componentName;
+      operation = operationName;
+      for (int i = 0; i < outcomes.length; i++) outcomes[i] = new LongAdder();
+   }
+
+   /**
+    * <code> of </code> returns the stats of an operation of a component,
+    * created on first use, and registered as an MBean if the component's
+    * are.
+    *
+    * @param
+    *    component - e.g. ATM
+    *    operation - e.g. WITHDRAW
+    */
+   public static OperationStats of(String component, String operation) {
+      String key = component + "." + operation;
+      OperationStats stats = all.get(key);
+      if (stats == null) {
+         OperationStats created = new OperationStats(component, operation);
+         stats = all.putIfAbsent(key, created);
+         if (stats == null) {
+            stats = created;
+            synchronized (registered) {
+               if (registered.contains(component)) register(created);
+            }
+         }
+      }
+      return stats;
+   }
+
+   /**
+    * <code> of </code> returns the stats of an ATM operation of a component.
+    */
+   public static OperationStats of(String component, Operation operation) {
+      return of(component, operation.name());
+   }
+
+   /**
+    * @return the stats of every operation counted in this jvm
+    */
+   public static List<OperationStats> all() {
+      List<OperationStats> list = new ArrayList<OperationStats>(all.values());
+      Collections.sort(list, new java.util.Comparator<OperationStats>() {
+         @Override
+         public int compare(OperationStats a, OperationStats b) {
+            return a.toKey().compareTo(b.toKey());
+         }
+      });
+      return list;
+   }
+
+   /**
+    * <code> registerMBeans </code> registers the stats of a component as
+    * platform MBeans, those counted so far and those to come.
+    *
+    * @param
+    *    component - e.g. Bank
+    */
+   public static void registerMBeans(String component) {
+      synchronized (registered) {
+         if (registered.add(component) == false) return;
+         for (OperationStats stats : all.values())
+            if (stats.component.equals(component)) register(stats);
+      }
+      LogHelper.fine("OperationStats: registered the MBeans of {}", component);
+   }
+
+   /**
+    * <code> registerMBean </code> registers another of the servers'
+    * metrics as a platform MBean, named rmi.bank:type=<i>type</i>.
+    *
+    * @param
+    *    mbean - a standard MBean, e.g. a NotificationDispatcher
+    *    type - e.g. NotificationDispatcher
+    */
+   static void registerMBean(Object mbean, String type) {
+      register(mbean, "rmi.bank:type=" + type);
+      LogHelper.fine("OperationStats: registered the MBean of {}", type);
+   }
+
+   /**
+    * <code> succeeded </code> counts a call that succeeded.
+    *
+    * @param
+    *    startNanos - System.nanoTime() when the call began
+    * @return
+    *    SUCCESS
+    */
+   public Outcome succeeded(long startNanos) {
+      return record(Outcome.SUCCESS, startNanos);
+   }
+
+   /**
+    * <code> failed </code> counts a call that threw: an ATMException by
+    * its outcome, a RemoteException as REMOTE_FAILURE, anything else as
+    * FAILED.
+    *
+    * @param
+    *    failure - what the call threw
+    *    startNanos - System.nanoTime() when the call began
+    * @return
+    *    the outcome counted
+    */
+   public Outcome failed(Exception failure, long startNanos) {
+      return record(outcomeOf(failure), startNanos);
+   }
+
+   /**
+    * @return the outcome of a call that threw failure: an ATMException's
+    *    own, REMOTE_FAILURE for a RemoteException, else FAILED
+    */
+   public static Outcome outcomeOf(Exception failure) {
+      return failure instanceof ATMException ? ((ATMException) failure).getOutcome()
+         : failure instanceof java.rmi.RemoteException ? Outcome.REMOTE_FAILURE
+         : Outcome.FAILED;
+   }
+
+   /**
+    * <code> record </code> counts a call that ended with outcome.
+    *
+    * @param
+    *    outcome - how the call ended
+    *    startNanos - System.nanoTime() when the call began
+    * @return
+    *    outcome, e.g. for a Flight Recorder event of the call
+    */
+   public Outcome record(Outcome outcome, long startNanos) {
+      if (ENABLED) {
+         outcomes[outcome.ordinal()].increment();
+         latencies.record(System.nanoTime() - startNanos);
+      }
+      return outcome;
+   }
+
+   public long getCount(Outcome outcome) {
+      return outcomes[outcome.ordinal()].sum();
+   }
+
+   /*** OperationStatsMBean ***/
+
+   @Override
+   public String getComponent() { return component; }
+   @Override
+   public String getOperation() { return operation; }
+
+   @Override
+   public long getCalls() {
+      long calls = 0;
+      for (LongAdder count : outcomes) calls += count.sum();
+      return calls;
+   }
+
+   @Override
+   public long getSuccesses() { return getCount(Outcome.SUCCESS); }
+   @Override
+   public long getDenied() { return getCount(Outcome.DENIED); }
+   @Override
+   public long getOverdrafts() { return getCount(Outcome.OVERDRAFT); }
+   @Override
+   public long getRemoteFailures() { return getCount(Outcome.REMOTE_FAILURE); }
+   @Override
+   public long getFailures() { return getCount(Outcome.FAILED); }
+
+   @Override
+   public double getMeanMicros() {
+      return latencies.snapshot().getMeanNanos() / 1e3;
+   }
+
+   @Override
+   public double getP50Micros() {
+      return latencies.snapshot().getNanosAtPercentile(50) / 1e3;
+   }
+
+   @Override
+   public double getP99Micros() {
+      return latencies.snapshot().getNanosAtPercentile(99) / 1e3;
+   }
+
+   @Override
+   public double getP999Micros() {
+      return latencies.snapshot().getNanosAtPercentile(99.9) / 1e3;
+   }
+
+   @Override
+   public double getMaxMicros() {
+      return latencies.snapshot().getMaxNanos() / 1e3;
+   }
+
+   @Override
+   public void reset() {
+      for (LongAdder count : outcomes) count.reset();
+      latencies.reset();
+   }
+
+   /**
+    * @return the latencies counted so far
+    */
+   public LatencyHistogram getLatencies() {
+      return latencies.snapshot();
+   }
+
+   @Override
+   public String toString() {
+      LatencyHistogram h = latencies.snapshot();
+      return String.format("%s %s: %d calls, %d ok, %d denied, %d overdrafts, "
+         + "%d remote failures, %d failed, mean %.1f us, p50 %.1f us, "
+         + "p99 %.1f us, p999 %.1f us, max %.1f us", component, operation,
+         getCalls(), getSuccesses(), getDenied(), getOverdrafts(),
+         getRemoteFailures(), getFailures(), h.getMeanNanos() / 1e3,
+         h.getNanosAtPercentile(50) / 1e3, h.getNanosAtPercentile(99) / 1e3,
+         h.getNanosAtPercentile(99.9) / 1e3, h.getMaxNanos() / 1e3);
+   }
+
+   /*** private functions ***/
+
+   private String toKey() {
+      return component + "." + operation;
+   }
+
+   private static void register(OperationStats stats) {
+      register(stats, "rmi.bank:type=OperationStats,component="
+         + stats.component + ",operation=" + stats.operation);
+   }
+
+   private static void register(Object mbean, String objectName) {
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = new ObjectName(objectName);
+         if (server.isRegistered(name) == false) server.registerMBean(mbean, name);
+      }
+      catch (Exception e) {
+         LogHelper.warn("OperationStats: could not register " + objectName
+            + " as an MBean: " + e);
+      }
+   }
+
+} // end class OperationStats
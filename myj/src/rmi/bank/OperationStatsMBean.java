@@ -0,0 +1,32 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ * The <code> OperationStatsMBean </code> interface defines what JMX shows
+ * of the OperationStats of one operation of ATMImpl, BankImpl or
+ * SecurityImpl: its calls by outcome, and their latencies, in
+ * microseconds, over all outcomes.
+ */
+public interface OperationStatsMBean {
+
+   public String getComponent();
+   public String getOperation();
+
+   public long getCalls();
+   public long getSuccesses();
+   public long getDenied();
+   public long getOverdrafts();
+   public long getRemoteFailures();
+   public long getFailures();
+
+   public double getMeanMicros();
+   public double getP50Micros();
+   public double getP99Micros();
+   public double getP999Micros();
+   public double getMaxMicros();
+
+   // Clears the counts, e.g. before a load run
+   public void reset();
+}
@@ -0,0 +1,14 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ * This enum defines how an operation ended, as counted by OperationStats:
+ *    SUCCESS        - done
+ *    DENIED         - the account failed to authenticate or lacks the permission
+ *    OVERDRAFT      - the account's balance did not cover it
+ *    REMOTE_FAILURE - a remote call it made failed (RemoteException)
+ *    FAILED         - any other error, e.g. a bad amount or no cash left
+ */
+public enum Outcome {SUCCESS, DENIED, OVERDRAFT, REMOTE_FAILURE, FAILED};
@@ -0,0 +1,13 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ * This enum defines what the NotificationDispatcher does with a new
+ * notification when a listener's queue is full:
+ *    DROP_OLDEST - discard the oldest queued notification to make room
+ *    DROP_NEWEST - discard the new notification
+ *    BLOCK       - make the transaction wait until there is room
+ */
+public enum OverflowPolicy {DROP_OLDEST, DROP_NEWEST, BLOCK};
@@ -0,0 +1,159 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.rmi.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class <code> PackedAccount </code> implements <code> Account </code>
+ * as a view onto one slot of an AccountTable. It holds no balance of its
+ * own: every call reads or writes the table, so any number of views of
+ * the same account agree. Views are created on demand by
+ * PackedAccountStore, and are dropped once no client references them;
+ * a view is only exported if BankImpl hands it to a remote caller.
+ *
+ * Views of one account share the stripe of AccountLocks guarding its id,
+ * which every read and update of the table slot holds. Updates are
+ * journaled as by AccountImpl.
+ */
+public class PackedAccount implements Account {
+
+   //// State variables ////
+
+   private final AccountTable table;  // The table holding the account
+   private final int slot;            // The account's slot in the table
+   private final int id;              // The account's id, fixed
+   private final AccountLocks locks;  // Shared with the account's store
+   private final Journal journal;     // The store's journal, or null
+
+   //// Constructor ////
+
+   PackedAccount(AccountTable accountTable, int accountSlot, int accountId,
+      AccountLocks storeLocks, Journal storeJournal) {
+      table = accountTable;
+      slot = accountSlot;
+      id = accountId;
+      locks = storeLocks;
+      journal = storeJournal;
+   }
+
+   //// Member functions ////
+
+   /**
+    * The ids of packed accounts are fixed when the account is added to
+    * its table, so <code> setId </code> only logs the attempt.
+    */
+   @Override
+   public void setId(int newId) throws RemoteException
+   {
+      LogHelper.warn("PackedAccount: cannot change id " + id + " to " + newId);
+   }
+
+   @Override
+   public int id() throws RemoteException
+   {
+      return id;
+   }
+
+   /**
+    * <code> depositCents </code> increases the account's balance, with the
+    * same rules as AccountImpl.depositCents.
+    */
+   @Override
+   public long depositCents (long cents) throws ATMException
+   {
+      if (cents < 0) {
+         LogHelper.fine (" Avoided the deposit of a negative amount:" + id);
+         throw new ATMException ("Cannot deposit negative amounts!");
+      }
+
+      if (cents == 0) {
+         LogHelper.fine (" Avoided depositing zero:" + id);
+         throw new ATMException ("Cannot deposit a zero amount!");
+      }
+
+      long balance;
+      long lsn = 0;
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         balance = Money.add(table.getBalance(slot), cents); // throws on overflow
+         if (journal != null) lsn = journal.record(id, balance);
+         table.setBalance(slot, balance);
+      }
+      finally {
+         lock.unlock();
+      }
+      if (journal != null) journal.awaitDurable(lsn);
+      return balance;
+   }
+
+   /**
+    * <code> withdrawCents </code> decreases the account's balance, with the
+    * same rules as AccountImpl.withdrawCents.
+    */
+   @Override
+   public long withdrawCents (long cents) throws ATMException
+   {
+      if (cents < 0) {
+         LogHelper.fine (" Avoided the withdrawing of a negative amount:" + id);
+         throw new ATMException ("Cannot withdraw negative amounts!");
+      }
+
+      long balance;
+      long lsn = 0;
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         balance = Money.subtract(table.getBalance(slot), cents); // throws on overflow
+         if (balance < 0) {
+            LogHelper.fine (" Avoided overdraft for account with id:" + id);
+            throw new ATMException ("Overdrafts not allowed!", Outcome.OVERDRAFT);
+         }
+
+         if (journal != null) lsn = journal.record(id, balance);
+         table.setBalance(slot, balance);
+      }
+      finally {
+         lock.unlock();
+      }
+      if (journal != null) journal.awaitDurable(lsn);
+      return balance;
+   }
+
+   @Override
+   public long getBalanceCents () throws RemoteException
+   {
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         return table.getBalance(slot);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /*** Float compatibility methods, in dollars ***/
+
+   @Override
+   public float deposit (float amount) throws ATMException
+   {
+      return Money.toDollars(depositCents(Money.toCents(amount)));
+   }
+
+   @Override
+   public float withdraw (float amount) throws ATMException
+   {
+      return Money.toDollars(withdrawCents(Money.toCents(amount)));
+   }
+
+   @Override
+   public float getBalance () throws RemoteException
+   {
+      return Money.toDollars(getBalanceCents());
+   }
+
+} // end class PackedAccount
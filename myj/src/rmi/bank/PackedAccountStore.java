@@ -0,0 +1,110 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *         The class <code> PackedAccountStore </code> keeps all accounts
+ *         in one AccountTable, i.e. in primitive arrays indexed by an
+ *         int-keyed open-addressing index. No object exists per account
+ *         until an account is requested: <code> get </code> then returns a
+ *         short-lived PackedAccount view onto the account's slot, which is
+ *         only exported if handed to a remote caller.
+ *
+ *         The table is guarded by the store's AccountLocks: a lookup
+ *         holds the stripe of its id, and an add (which may grow the
+ *         table's arrays) holds every stripe.
+ *
+ *         With a Journal, an add journals the account's opening balance,
+ *         and the accounts journal every change.
+ *
+ *         Select it by starting BankServer with
+ *         -Drmi.bank.accounts.store=packed
+ */
+public class PackedAccountStore implements AccountStore {
+
+   /*** State variables for class PackedAccountStore */
+   private final AccountTable table;
+   private final AccountLocks locks = new AccountLocks();
+   private final Journal journal;
+
+   /* Constructor for PackedAccountStore, sized for expectedAccounts */
+   public PackedAccountStore(int expectedAccounts) {
+      this(expectedAccounts, null);
+   }
+
+   /* Constructor for PackedAccountStore, journaled in journal if not null */
+   public PackedAccountStore(int expectedAccounts, Journal storeJournal) {
+      table = new AccountTable(expectedAccounts);
+      journal = storeJournal;
+   }
+
+   @Override
+   public void add(int id, long balanceCents) throws ATMException {
+      if (balanceCents < 0)
+         throw new ATMException ("Cannot open an account with a negative balance!");
+      long lsn = 0;
+      locks.lockAll();
+      try {
+         if (table.slotOf(id) >= 0)
+            throw new ATMException ("An account with this id already exists!");
+         if (journal != null) lsn = journal.record(id, balanceCents);
+         table.add(id, balanceCents);
+      }
+      finally {
+         locks.unlockAll();
+      }
+      if (journal != null) journal.awaitDurable(lsn);
+   }
+
+   @Override
+   public void restore(int id, long balanceCents) throws ATMException {
+      int slot = table.slotOf(id);
+      if (slot >= 0) table.setBalance(slot, balanceCents);
+      else table.add(id, balanceCents);
+   }
+
+   @Override
+   public Account get(int id) {
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         int slot = table.slotOf(id);
+         if (slot < 0) return null;
+         return new PackedAccount(table, slot, id, locks, journal);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   @Override
+   public int size() {
+      locks.lockAll();
+      try {
+         return table.size();
+      }
+      finally {
+         locks.unlockAll();
+      }
+   }
+
+   @Override
+   public int[] ids() {
+      locks.lockAll();
+      try {
+         return table.copyIds();
+      }
+      finally {
+         locks.unlockAll();
+      }
+   }
+
+   @Override
+   public AccountLocks locks() {
+      return locks;
+   }
+
+} // end class PackedAccountStore
@@ -0,0 +1,290 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *         The class <code> PermissionTable </code> holds the credentials
+ *         of SecurityImpl: for each account id, its PinCredential and its
+ *         mask of Permissions bits, in primitive arrays. The mask and the
+ *         credential's stamp are packed together into one long (the stamp
+ *         in the high int, the mask in the low int), and the credential's
+ *         salt and hash into a slice of one byte array. An IntIndex maps
+ *         an account id to its slot. One lookup thus answers every
+ *         permission question Security is asked about an account, and
+ *         whether a pin it verified earlier still holds, without boxing;
+ *         an account costs about 60 bytes, rather than the hundreds of a
+ *         HashSet entry per permission and a HashMap entry per pin.
+ *
+ *         The table is guarded by an AccountLocks, as PackedAccountStore
+ *         guards its AccountTable: a lookup, or a change of an account
+ *         already in the table, holds the stripe of its id; adding an
+ *         account (which may grow the arrays) holds every stripe. The
+ *         credential and mask of an account always change together.
+ *
+ *         <code> load </code> reads a table from a file of lines
+ *         <pre>
+ *            # id    pin                        permissions
+ *            1       pbkdf2:100000:salt:hash    deposit,withdraw,balance
+ *            2       2345                       deposit,balance
+ *         </pre>
+ *         where the pin is a credential as PinCredential writes it, or a
+ *         plain pin, hashed as the file is read; the permissions are any of
+ *         deposit, withdraw and balance, or none, separated by commas; #
+ *         starts a comment.
+ */
+public class PermissionTable {
+
+   // The bits an account may be granted; the others are set by authorize
+   private static final int GRANTABLE
+      = Permissions.DEPOSIT | Permissions.WITHDRAW | Permissions.BALANCE;
+
+   private static final int SECRET_BYTES
+      = PinCredential.SALT_BYTES + PinCredential.HASH_BYTES;
+
+   /*** State variables for class PermissionTable */
+   private final IntIndex index;
+   private final AccountLocks locks = new AccountLocks();
+   private long[] records;    // The stamp and mask held in each slot
+   private int[] iterations;  // The credential's iterations in each slot
+   private byte[] secrets;    // The credential's salt and hash, per slot
+   private int size;          // The number of slots in use
+
+   /* Constructor for PermissionTable, sized for expectedAccounts */
+   public PermissionTable(int expectedAccounts) {
+      int capacity = Math.max(expectedAccounts, 16);
+      index = new IntIndex(capacity);
+      records = new long[capacity];
+      iterations = new int[capacity];
+      secrets = new byte[capacity * SECRET_BYTES];
+   }
+
+   /**
+    * <code> grant </code> sets the pin and permissions of an account,
+    * adding the account if the table does not hold it yet. The pin is
+    * hashed here, which is slow: see PinCredential.
+    *
+    * @param
+    *    id - the account id
+    *    pin - the account's pin
+    *    mask - the account's Permissions bits (DEPOSIT, WITHDRAW, BALANCE)
+    */
+   public void grant(int id, int pin, int mask) {
+      grant(id, PinCredential.of(pin, PinCredential.ITERATIONS), mask);
+   }
+
+   /**
+    * <code> grant </code> sets the credential and permissions of an
+    * account, adding the account if the table does not hold it yet.
+    *
+    * @param
+    *    id - the account id
+    *    credential - the account's hashed pin
+    *    mask - the account's Permissions bits (DEPOSIT, WITHDRAW, BALANCE)
+    */
+   public void grant(int id, PinCredential credential, int mask) {
+      long record = recordOf(credential.stamp(), mask & GRANTABLE);
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         int slot = index.get(id);
+         if (slot >= 0) {
+            set(slot, record, credential);
+            return;
+         }
+      }
+      finally {
+         lock.unlock();
+      }
+
+      locks.lockAll();
+      try {
+         int slot = index.get(id);
+         if (slot < 0) {
+            if (size == records.length) {
+               int capacity = records.length << 1;
+               records = Arrays.copyOf(records, capacity);
+               iterations = Arrays.copyOf(iterations, capacity);
+               secrets = Arrays.copyOf(secrets, capacity * SECRET_BYTES);
+            }
+            slot = size++;
+            index.put(id, slot);
+         }
+         set(slot, record, credential);
+      }
+      finally {
+         locks.unlockAll();
+      }
+   }
+
+   // Under the slot's lock
+   private void set(int slot, long record, PinCredential credential) {
+      records[slot] = record;
+      iterations[slot] = credential.getIterations();
+      int offset = slot * SECRET_BYTES;
+      System.arraycopy(credential.getSalt(), 0, secrets, offset,
+         PinCredential.SALT_BYTES);
+      System.arraycopy(credential.getHash(), 0, secrets,
+         offset + PinCredential.SALT_BYTES, PinCredential.HASH_BYTES);
+   }
+
+   /**
+    * <code> revoke </code> clears every permission of an account, keeping
+    * its credential.
+    *
+    * @return
+    *    true iff the table holds the account
+    */
+   public boolean revoke(int id) {
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         int slot = index.get(id);
+         if (slot < 0) return false;
+         records[slot] = recordOf(stampOf(records[slot]), Permissions.NONE);
+         return true;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * <code> lookup </code> returns the record of an account, to be read
+    * with <code> stampOf </code> and <code> maskOf </code>.
+    *
+    * @return
+    *    the account's record, or MISSING if the table does not hold it
+    */
+   public long lookup(int id) {
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         int slot = index.get(id);
+         return slot < 0 ? MISSING : records[slot];
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * <code> credentialOf </code> returns the credential of an account.
+    *
+    * @return
+    *    a copy of the account's credential, or null if the table does
+    *    not hold the account
+    */
+   public PinCredential credentialOf(int id) {
+      ReentrantLock lock = locks.lockFor(id);
+      lock.lock();
+      try {
+         int slot = index.get(id);
+         if (slot < 0) return null;
+         int offset = slot * SECRET_BYTES;
+         return new PinCredential(iterations[slot],
+            Arrays.copyOfRange(secrets, offset, offset + PinCredential.SALT_BYTES),
+            Arrays.copyOfRange(secrets, offset + PinCredential.SALT_BYTES,
+               offset + SECRET_BYTES));
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * @return the number of accounts in the table
+    */
+   public int size() {
+      locks.lockAll();
+      try {
+         return size;
+      }
+      finally {
+         locks.unlockAll();
+      }
+   }
+
+   /*** Records ***/
+
+   // The record of an account the table does not hold: only GRANTABLE
+   // bits are ever set in a mask, so no account's record is -1
+   public static final long MISSING = -1L;
+
+   public static long recordOf(int stamp, int mask) {
+      return ((long) stamp << 32) | (mask & 0xFFFFFFFFL);
+   }
+
+   // The stamp of the account's credential, see PinCredential.stamp
+   public static int stampOf(long record) {
+      return (int) (record >>> 32);
+   }
+
+   public static int maskOf(long record) {
+      return (int) record;
+   }
+
+   /*** Loading ***/
+
+   /**
+    * <code> load </code> grants the accounts of a file, in the format
+    * above, to this table.
+    *
+    * @return
+    *    the number of accounts read
+    * @throws IOException
+    *    if the file cannot be read, or a line is not well formed
+    */
+   public int load(File file) throws IOException {
+      int count = 0;
+      int lineNumber = 0;
+      try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+         String line;
+         while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            String[] fields = line.split("\\s+");
+            if (fields.length != 3)
+               throw new IOException (file + ":" + lineNumber
+                  + ": expected an id, a pin or credential and permissions!");
+            try {
+               PinCredential credential = fields[1].indexOf(':') >= 0
+                  ? PinCredential.parse(fields[1])
+                  : PinCredential.of(Integer.parseInt(fields[1]), PinCredential.ITERATIONS);
+               grant(Integer.parseInt(fields[0]), credential, parseMask(fields[2]));
+            }
+            catch (IllegalArgumentException e) {
+               throw new IOException (file + ":" + lineNumber + ": "
+                  + e.getMessage());
+            }
+            count++;
+         }
+      }
+      return count;
+   }
+
+   // Permissions named in a file, e.g. deposit,balance
+   private static int parseMask(String names) {
+      int mask = Permissions.NONE;
+      for (String name : names.split(",")) {
+         if (name.equalsIgnoreCase("deposit")) mask |= Permissions.DEPOSIT;
+         else if (name.equalsIgnoreCase("withdraw")) mask |= Permissions.WITHDRAW;
+         else if (name.equalsIgnoreCase("balance")) mask |= Permissions.BALANCE;
+         else if (name.equalsIgnoreCase("none") == false)
+            throw new IllegalArgumentException ("Unknown permission " + name + "!");
+      }
+      return mask;
+   }
+
+} // end class PermissionTable
@@ -0,0 +1,43 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+/**
+ *         The class <code> Permissions </code> defines the bits of the
+ *         permission mask returned by <code> Security.authorize </code>.
+ *         One mask answers every security question about an account, so
+ *         an operation costs a single trip to Security.
+ */
+public final class Permissions {
+
+   /*** The permission bits ***/
+   public static final int AUTHENTICATED = 1;       // The pin matched
+   public static final int ATM_ACCESS    = 1 << 1;  // Reachable from ATMs
+   public static final int DEPOSIT       = 1 << 2;
+   public static final int WITHDRAW      = 1 << 3;
+   public static final int BALANCE       = 1 << 4;
+
+   // A mask with no bit set: the account failed to authenticate
+   public static final int NONE = 0;
+
+   //// Constructor, not to be used ////
+   private Permissions() {
+   }
+
+   /**
+    * <code> has </code> returns true if all the bits of permission
+    * are set in mask.
+    *
+    * @param
+    *    mask - a mask returned by Security.authorize
+    *    permission - one or more permission bits
+    *
+    * @return
+    *    true iff every requested bit is set
+    */
+   public static boolean has(int mask, int permission) {
+      return (mask & permission) == permission;
+   }
+
+} // end class Permissions
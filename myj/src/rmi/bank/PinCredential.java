@@ -0,0 +1,157 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ *         The class <code> PinCredential </code> is the stored form of an
+ *         account's pin: a PBKDF2 (HMAC-SHA256) hash of the pin, with a
+ *         random salt and an iteration count. The pin itself is never
+ *         kept. Checking a pin hashes it again, which is meant to be slow
+ *         (around 40 ms at the default 100000 iterations), so that a copy
+ *         of the credentials cannot be turned back into pins cheaply;
+ *         SecurityImpl keeps a CredentialCache so that an account pays for
+ *         it once per session rather than once per call.
+ *
+ *         A credential is written, e.g. in a permissions file, as
+ *         <pre>
+ *            pbkdf2:iterations:salt:hash
+ *         </pre>
+ *         with the salt and hash in Base64; <code> main </code> prints the
+ *         credential of a pin in this form.
+ *
+ *         The default iteration count can be set with the system property
+ *         rmi.bank.security.pinIterations.
+ */
+public final class PinCredential {
+
+   public static final int ITERATIONS
+      = Integer.getInteger("rmi.bank.security.pinIterations", 100000);
+   static final int SALT_BYTES = 16;
+   static final int HASH_BYTES = 16;
+
+   private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+   private static final String PREFIX = "pbkdf2";
+   private static final SecureRandom random = new SecureRandom();
+
+   /*** State variables for class PinCredential */
+   private final int iterations;
+   private final byte[] salt;
+   private final byte[] hash;
+
+   //// Constructor ////
+   PinCredential(int credentialIterations, byte[] credentialSalt,
+      byte[] credentialHash) {
+      if (credentialIterations < 1 || credentialSalt.length != SALT_BYTES
+          || credentialHash.length != HASH_BYTES)
+         throw new IllegalArgumentException ("Malformed pin credential!");
+      iterations = credentialIterations;
+      salt = credentialSalt;
+      hash = credentialHash;
+   }
+
+   /**
+    * <code> of </code> hashes a pin, with a new random salt.
+    *
+    * @param
+    *    pin - the pin
+    *    iterations - the PBKDF2 iteration count, e.g. ITERATIONS
+    */
+   public static PinCredential of(int pin, int iterations) {
+      byte[] salt = new byte[SALT_BYTES];
+      random.nextBytes(salt);
+      return new PinCredential(iterations, salt, hash(pin, salt, iterations));
+   }
+
+   /**
+    * <code> matches </code> returns true if a pin hashes to this
+    * credential. This is the slow part of authentication.
+    */
+   public boolean matches(int pin) {
+      return MessageDigest.isEqual(hash, hash(pin, salt, iterations));
+   }
+
+   /**
+    * <code> stamp </code> returns 32 bits of the hash, which tell this
+    * credential from the account's earlier and later ones: the
+    * CredentialCache keeps it with each verified pin, so that a pin
+    * verified against a credential since replaced is verified again.
+    */
+   public int stamp() {
+      return (hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16
+         | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF);
+   }
+
+   public int getIterations() {
+      return iterations;
+   }
+
+   byte[] getSalt() {
+      return salt;
+   }
+
+   byte[] getHash() {
+      return hash;
+   }
+
+   /**
+    * <code> parse </code> reads a credential written by toString.
+    *
+    * @throws IllegalArgumentException
+    *    if the text is not a credential
+    */
+   public static PinCredential parse(String text) {
+      String[] fields = text.split(":");
+      if (fields.length != 4 || fields[0].equals(PREFIX) == false)
+         throw new IllegalArgumentException ("Malformed pin credential!");
+      Base64.Decoder decoder = Base64.getDecoder();
+      return new PinCredential(Integer.parseInt(fields[1]),
+         decoder.decode(fields[2]), decoder.decode(fields[3]));
+   }
+
+   @Override
+   public String toString() {
+      Base64.Encoder encoder = Base64.getEncoder();
+      return PREFIX + ":" + iterations + ":" + encoder.encodeToString(salt)
+         + ":" + encoder.encodeToString(hash);
+   }
+
+   private static byte[] hash(int pin, byte[] salt, int iterations) {
+      char[] chars = Integer.toString(pin).toCharArray();
+      PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, HASH_BYTES * 8);
+      try {
+         return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+      }
+      catch (GeneralSecurityException e) {
+         throw new IllegalStateException ("Cannot hash pins: " + e.getMessage(), e);
+      }
+      finally {
+         spec.clearPassword();
+         Arrays.fill(chars, '\0');
+      }
+   }
+
+   /**
+    * Prints the credential of a pin, for a permissions file
+    *
+    * @param
+    *    args   the pin, and optionally the iteration count
+    */
+   public static void main(String[] args) {
+      if (args.length < 1) {
+         System.err.println("Usage: java rmi.bank.PinCredential <pin> [iterations]");
+         System.exit(1);
+      }
+      int iterations = args.length > 1 ? Integer.parseInt(args[1]) : ITERATIONS;
+      System.out.println(of(Integer.parseInt(args[0]), iterations));
+   }
+
+} // end class PinCredential
@@ -0,0 +1,187 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * <code> RecordingSummary </code> sums up a Flight Recorder recording of
+ * the bank's events (see BankEvents) by event and operation: their count,
+ * those that did not succeed, and their latencies (mean, p50, p99, p99.9,
+ * max). To tell latency spikes the jvm caused from the bank's own, it
+ * also counts how many of each operation's slowest (those at or over its
+ * p99) overlapped a GC pause or a safepoint, and sums those up.
+ *
+ * Run with:
+ *    java -cp classes rmi.bank.RecordingSummary bank.jfr
+ */
+public class RecordingSummary {
+
+   private static final String PREFIX = "rmi.bank.";
+
+   /**
+    * The events of one operation: its latencies and outcomes, and its
+    * slowest events that overlapped a pause.
+    */
+   private static class Summary {
+      final LatencyHistogram latencies = new LatencyHistogram();
+      final Map<String, Long> outcomes = new TreeMap<String, Long>();
+      long p99Nanos;
+      long slow;
+      long slowInPause;
+   }
+
+   /**
+    * Entry point of the analyzer
+    *
+    * @param
+    *    args   the recording file
+    */
+   public static void main(String[] args) throws IOException {
+      if (args.length != 1) {
+         System.err.println("Usage: java rmi.bank.RecordingSummary <recording.jfr>");
+         System.exit(1);
+      }
+      Path file = Paths.get(args[0]);
+
+      // First pass: the latencies of each operation, and the pauses
+      Map<String, Summary> summaries = new TreeMap<String, Summary>();
+      List<long[]> gcPauses = new ArrayList<long[]>();
+      List<long[]> safepoints = new ArrayList<long[]>();
+      try (RecordingFile recording = new RecordingFile(file)) {
+         while (recording.hasMoreEvents()) {
+            RecordedEvent event = recording.readEvent();
+            String type = event.getEventType().getName();
+            if (type.startsWith(PREFIX)) {
+               Summary summary = summaries.get(keyOf(event));
+               if (summary == null) {
+                  summary = new Summary();
+                  summaries.put(keyOf(event), summary);
+               }
+               summary.latencies.record(event.getDuration().toNanos());
+               String outcome = event.getString("outcome");
+               Long count = summary.outcomes.get(outcome);
+               summary.outcomes.put(outcome, count == null ? 1 : count + 1);
+            }
+            else if (type.equals("jdk.GCPhasePause")) {
+               gcPauses.add(intervalOf(event));
+            }
+            else if (type.equals("jdk.SafepointBegin")) {
+               safepoints.add(intervalOf(event));
+            }
+         }
+      }
+      for (Summary summary : summaries.values())
+         summary.p99Nanos = summary.latencies.getNanosAtPercentile(99);
+
+      // Second pass: which of the slowest overlapped a pause
+      long[][] pauses = merged(gcPauses, safepoints);
+      try (RecordingFile recording = new RecordingFile(file)) {
+         while (recording.hasMoreEvents()) {
+            RecordedEvent event = recording.readEvent();
+            if (event.getEventType().getName().startsWith(PREFIX) == false) continue;
+            Summary summary = summaries.get(keyOf(event));
+            if (event.getDuration().toNanos() < summary.p99Nanos) continue;
+            summary.slow++;
+            if (overlaps(pauses, nanosOf(event.getStartTime()), nanosOf(event.getEndTime())))
+               summary.slowInPause++;
+         }
+      }
+
+      print(file, summaries, gcPauses, safepoints);
+   }
+
+   /*** Helper functions ***/
+
+   // The event and operation, e.g. ATMOperation WITHDRAW
+   private static String keyOf(RecordedEvent event) {
+      String operation = event.hasField("operation") ? event.getString("operation") : null;
+      return event.getEventType().getName().substring(PREFIX.length())
+         + " " + (operation == null ? "-" : operation);
+   }
+
+   private static long nanosOf(Instant instant) {
+      return instant.getEpochSecond() * 1000000000L + instant.getNano();
+   }
+
+   private static long[] intervalOf(RecordedEvent event) {
+      return new long[] {nanosOf(event.getStartTime()), nanosOf(event.getEndTime())};
+   }
+
+   // All pauses, by start, those overlapping made one
+   private static long[][] merged(List<long[]> gcPauses, List<long[]> safepoints) {
+      List<long[]> all = new ArrayList<long[]>(gcPauses);
+      all.addAll(safepoints);
+      Collections.sort(all, new java.util.Comparator<long[]>() {
+         @Override
+         public int compare(long[] a, long[] b) {
+            return Long.compare(a[0], b[0]);
+         }
+      });
+      List<long[]> merged = new ArrayList<long[]>();
+      for (long[] pause : all) {
+         long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+         if (last != null && pause[0] <= last[1]) last[1] = Math.max(last[1], pause[1]);
+         else merged.add(new long[] {pause[0], pause[1]});
+      }
+      return merged.toArray(new long[merged.size()][]);
+   }
+
+   // True if [start, end] overlaps one of the pauses, sorted and disjoint
+   private static boolean overlaps(long[][] pauses, long start, long end) {
+      int low = 0, high = pauses.length; // The first pause ending at or after start
+      while (low < high) {
+         int mid = (low + high) >>> 1;
+         if (pauses[mid][1] < start) low = mid + 1;
+         else high = mid;
+      }
+      return low < pauses.length && pauses[low][0] <= end;
+   }
+
+   private static void print(Path file, Map<String, Summary> summaries,
+      List<long[]> gcPauses, List<long[]> safepoints) {
+      System.out.println("Recording " + file + ":");
+      System.out.println("   " + describe("GC pauses", gcPauses));
+      System.out.println("   " + describe("safepoints", safepoints));
+      System.out.println(String.format("%-34s %9s %8s %9s %9s %9s %9s %9s %14s",
+         "event operation", "count", "not ok", "mean us", "p50 us", "p99 us",
+         "p999 us", "max us", ">=p99 in pause"));
+      for (Map.Entry<String, Summary> entry : summaries.entrySet()) {
+         Summary summary = entry.getValue();
+         LatencyHistogram h = summary.latencies;
+         Long ok = summary.outcomes.get(Outcome.SUCCESS.name());
+         System.out.println(String.format("%-34s %9d %8d %9.1f %9.1f %9.1f %9.1f %9.1f %8d of %3d",
+            entry.getKey(), h.getCount(), h.getCount() - (ok == null ? 0 : ok),
+            h.getMeanNanos() / 1e3, h.getNanosAtPercentile(50) / 1e3,
+            h.getNanosAtPercentile(99) / 1e3, h.getNanosAtPercentile(99.9) / 1e3,
+            h.getMaxNanos() / 1e3, summary.slowInPause, summary.slow));
+         if (summary.outcomes.size() > 1 || ok == null)
+            System.out.println("      outcomes " + summary.outcomes);
+      }
+      if (summaries.isEmpty())
+         System.out.println("   No rmi.bank events: was the recording made with "
+            + "settings=jfr/rmibank.jfc?");
+   }
+
+   private static String describe(String name, List<long[]> pauses) {
+      long total = 0, longest = 0;
+      for (long[] pause : pauses) {
+         total += pause[1] - pause[0];
+         longest = Math.max(longest, pause[1] - pause[0]);
+      }
+      return String.format("%d %s, %.1f ms in all, longest %.1f ms", pauses.size(),
+         name, total / 1e6, longest / 1e6);
+   }
+
+} // end class RecordingSummary
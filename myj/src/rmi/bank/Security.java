@@ -27,4 +27,9 @@ public interface Security extends java.rmi.Remote {
    public boolean isBalanceOk(AccountInfo info)
       throws java.rmi.RemoteException;
 
+   // Answer all of the above in one call: returns a mask of Permissions
+   // bits, Permissions.NONE if the account fails to authenticate.
+   public int authorize(AccountInfo info)
+      throws java.rmi.RemoteException;
+
 }
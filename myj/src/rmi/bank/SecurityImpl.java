@@ -5,10 +5,10 @@ package rmi.bank;
 
 import java.rmi.*;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  *         <code> SecurityImpl </code> implements the permissions
@@ -22,43 +22,88 @@ public class SecurityImpl extends UnicastRemoteObject implements Security {
 
    /*** State variables for class Security */
 
-   // Permissions, implemented as a Set at this time, of
-   // Account id (but not stored in Accounts, as it might be a bit more
-   // dangerous to store them in the accounts themselves. By having
-   // them separatedly inside SecurityImpl, a compromise of Accounts records
-   // or even of BankImpl would still keep the pins and permissions safe.
+   // Permissions and pins, held in a PermissionTable: one packed record
+   // and hashed pin (PinCredential) per account id (but not stored in
+   // Accounts, as it might be a bit more dangerous to store them in the
+   // accounts themselves. By having them separatedly inside SecurityImpl,
+   // a compromise of Accounts records or even of BankImpl would still keep
+   // the pins and permissions safe.
    //
-   // If an account id is present in these sets, then it has the permission.
+   // If an account id's mask has a Permissions bit set, then it has the
+   // permission.
 
-   static private final Set<Integer> withdrawPermissions
-      = new HashSet<Integer>();
+   static private final PermissionTable permissions
+      = new PermissionTable(3 + LoadAccounts.count());
 
-   static private final Set<Integer> depositPermissions
-      = new HashSet<Integer>();
+   // The pins verified recently, so that the slow hash of an account's
+   // PinCredential is only made once per session (see CredentialCache)
+   static private final CredentialCache verifiedPins = new CredentialCache();
 
-   static private final Set<Integer> balancePermissions
-      = new HashSet<Integer>();
+   // The file the permissions and pins are read from, if set; else the
+   // three demo accounts are preloaded
+   static final String PERMISSIONS_FILE_PROP = "rmi.bank.security.permissionsFile";
 
-   // Pins for authentication certainly not stored in AccountImpl records
-   static private final Map<Integer, Integer> pins
-      = new HashMap<Integer, Integer>();
+   // The calls of each check, granted (SUCCESS) or not (DENIED), and
+   // their latencies, registered as MBeans by BankServer (see
+   // OperationStats). The checks of an operation count under its name.
+   private static final OperationStats authorizeStats
+      = OperationStats.of("Security", "AUTHORIZE");
+   private static final OperationStats authenticateStats
+      = OperationStats.of("Security", "AUTHENTICATE");
+   private static final OperationStats depositStats
+      = OperationStats.of("Security", Operation.DEPOSIT);
+   private static final OperationStats withdrawStats
+      = OperationStats.of("Security", Operation.WITHDRAW);
+   private static final OperationStats balanceStats
+      = OperationStats.of("Security", Operation.BALANCE);
 
    public SecurityImpl() throws java.rmi.RemoteException
    {
-      super(); // Call any RMI work to do
+      // Call any RMI work to do, on sockets tuned for the ATM hop
+      super(0, TunedSocketFactory.forHop("bank", "Security"),
+         TunedSocketFactory.forHop("bank", "Security"));
       LogHelper.fine("Security: constructor called!");
 
-      // Preload security values (from a database in a real implementation)
-      depositPermissions.add(1); withdrawPermissions.add(1); balancePermissions.add(1);
-      depositPermissions.add(2); balancePermissions.add(2);
-      withdrawPermissions.add(3); balancePermissions.add(3);
-      LogHelper.fine("Security: constructor preloaded account permissions!");
+      String file = System.getProperty(PERMISSIONS_FILE_PROP);
+      if (file != null) {
+         // Load the permissions and pins (from a database in a real
+         // implementation)
+         try {
+            int count = permissions.load(new File(file));
+            LogHelper.fine("Security: constructor loaded {} accounts from {}!",
+               count, file);
+         }
+         catch (IOException e) {
+            throw new RemoteException ("Cannot load permissions: " + e.getMessage(), e);
+         }
+      }
+      else {
+         // Preload security values and pins
+         permissions.grant(1, 1234,
+            Permissions.DEPOSIT | Permissions.WITHDRAW | Permissions.BALANCE);
+         permissions.grant(2, 2345, Permissions.DEPOSIT | Permissions.BALANCE);
+         permissions.grant(3, 3456, Permissions.WITHDRAW | Permissions.BALANCE);
+         LogHelper.fine("Security: constructor preloaded account permissions and pins!");
+      }
 
-      // Load pins (from a pin database in a real implementation)
-      pins.put(1,1234);
-      pins.put(2,2345);
-      pins.put(3,3456);
-      LogHelper.fine("Security: constructor preloaded account pins!");
+      // The accounts of load runs, if any (see LoadAccounts), may do it all.
+      // They are test accounts: those with the same pin share a credential,
+      // so that at most 9000 pins are hashed
+      int loadAccounts = LoadAccounts.count();
+      Map<Integer, PinCredential> loadCredentials = new HashMap<Integer, PinCredential>();
+      for (int id = LoadAccounts.FIRST_ACCOUNT;
+           id < LoadAccounts.FIRST_ACCOUNT + loadAccounts; id++) {
+         int pin = LoadAccounts.pinOf(id);
+         PinCredential credential = loadCredentials.get(pin);
+         if (credential == null) {
+            credential = PinCredential.of(pin, LoadAccounts.PIN_ITERATIONS);
+            loadCredentials.put(pin, credential);
+         }
+         permissions.grant(id, credential,
+            Permissions.DEPOSIT | Permissions.WITHDRAW | Permissions.BALANCE);
+      }
+      if (loadAccounts > 0)
+         LogHelper.fine("Security: constructor preloaded {} load accounts!", loadAccounts);
 
    }
 
@@ -72,27 +117,52 @@ public class SecurityImpl extends UnicastRemoteObject implements Security {
     */
    @Override
    public boolean isAuthenticationOk(AccountInfo info)
+   {
+      long start = System.nanoTime();
+      BankEvents.SecurityCheck event = BankEvents.SecurityCheck.started();
+      boolean ok = authenticates(info, permissions.lookup(info.getId()));
+      event.finish("AUTHENTICATE", info,
+         authenticateStats.record(ok ? Outcome.SUCCESS : Outcome.DENIED, start));
+      return ok;
+   }
+
+   // The check of isAuthenticationOk, also made by authorize on the
+   // account's record
+   private boolean authenticates(AccountInfo info, long record)
    {
       // First, the account must be a known account with a pin:
       int accountId = info.getId();
-      boolean ok = pins.containsKey(accountId);
-      if (ok == false) {
+      if (record == PermissionTable.MISSING) {
          LogHelper.fine ("SecurityImpl: No pin for account: " + accountId);
          return false;
       }
 
-      // Second, the pins must match
-      ok = (pins.get(accountId)) == info.getPin();
-      if (ok == false) {
-         LogHelper.fine ("SecurityImpl: Mismached pin for account: " + accountId);
-         return false;
+      // Second, the pins must match: the pin is hashed as the account's
+      // credential was, unless it was verified recently
+      int pin = info.getPin();
+      if (verifiedPins.isVerified(accountId, pin, PermissionTable.stampOf(record)) == false) {
+         PinCredential credential = permissions.credentialOf(accountId);
+         if (credential == null || credential.matches(pin) == false) {
+            LogHelper.fine ("SecurityImpl: Mismached pin for account: " + accountId);
+            return false;
+         }
+         verifiedPins.verified(accountId, pin, credential.stamp());
       }
 
       // Success
-      LogHelper.finer ("SecurityImpl: authorization ok for account: " + accountId);
+      if (LogHelper.isFiner())
+         LogHelper.finer ("SecurityImpl: authorization ok for account: " + accountId);
       return true;
    }
 
+   // True if the account holds the permission; unknown accounts hold none
+   private static boolean isGranted(AccountInfo info, int permission)
+   {
+      long record = permissions.lookup(info.getId());
+      return record != PermissionTable.MISSING
+         && Permissions.has(PermissionTable.maskOf(record), permission);
+   }
+
    /**
     * <code> isAuthenticationOk </code> returns true if the account id provided
     * is ATM-enabled. Currently, this routine is a stub and always returns true.
@@ -104,7 +174,7 @@ public class SecurityImpl extends UnicastRemoteObject implements Security {
    @Override
    public boolean isAccountAtmAccessOk(AccountInfo info)
    {
-      LogHelper.finer("isAccountAtmAccessOk returning true for " + info);
+      LogHelper.finer("isAccountAtmAccessOk returning true for {}", info);
       return true; // Wide open security for future implementation
    }
 
@@ -118,9 +188,14 @@ public class SecurityImpl extends UnicastRemoteObject implements Security {
    @Override
    public boolean isDepositOk(AccountInfo info)
    {
-      boolean ok = depositPermissions.contains(info.getId());
-      LogHelper.finer("isDepositOk returning " + ok +
-         "for account " + info.getId());
+      long start = System.nanoTime();
+      BankEvents.SecurityCheck event = BankEvents.SecurityCheck.started();
+      boolean ok = isGranted(info, Permissions.DEPOSIT);
+      event.finish("DEPOSIT", info,
+         depositStats.record(ok ? Outcome.SUCCESS : Outcome.DENIED, start));
+      if (LogHelper.isFiner())
+         LogHelper.finer("isDepositOk returning " + ok +
+            " for account " + info.getId());
       return ok;
    }
 
@@ -134,9 +209,14 @@ public class SecurityImpl extends UnicastRemoteObject implements Security {
    @Override
    public boolean isWithdrawOk(AccountInfo info)
    {
-      boolean ok = withdrawPermissions.contains(info.getId());
-      LogHelper.finer("isWithdrawOk returning " + ok +
-         " for account " + info.getId());
+      long start = System.nanoTime();
+      BankEvents.SecurityCheck event = BankEvents.SecurityCheck.started();
+      boolean ok = isGranted(info, Permissions.WITHDRAW);
+      event.finish("WITHDRAW", info,
+         withdrawStats.record(ok ? Outcome.SUCCESS : Outcome.DENIED, start));
+      if (LogHelper.isFiner())
+         LogHelper.finer("isWithdrawOk returning " + ok +
+            " for account " + info.getId());
       return ok;
    }
 
@@ -150,10 +230,45 @@ public class SecurityImpl extends UnicastRemoteObject implements Security {
    @Override
    public boolean isBalanceOk(AccountInfo info)
    {
-      boolean ok = balancePermissions.contains(info.getId());
-      LogHelper.finer("isBalanceOk returning " + ok +
-         " for account " + info.getId());
+      long start = System.nanoTime();
+      BankEvents.SecurityCheck event = BankEvents.SecurityCheck.started();
+      boolean ok = isGranted(info, Permissions.BALANCE);
+      event.finish("BALANCE", info,
+         balanceStats.record(ok ? Outcome.SUCCESS : Outcome.DENIED, start));
+      if (LogHelper.isFiner())
+         LogHelper.finer("isBalanceOk returning " + ok +
+            " for account " + info.getId());
       return ok;
    }
 
+   /**
+    * <code> authorize </code> authenticates the AccountInfo and returns
+    * every permission the account holds as one mask, so that callers
+    * need a single call per account instead of one call per check.
+    *
+    * @return
+    *    a mask of Permissions bits, Permissions.NONE iff the account
+    *    fails to authenticate.
+    */
+   @Override
+   public int authorize(AccountInfo info)
+   {
+      long start = System.nanoTime();
+      BankEvents.SecurityCheck event = BankEvents.SecurityCheck.started();
+      long record = permissions.lookup(info.getId());
+      if (authenticates(info, record) == false) {
+         event.finish("AUTHORIZE", info, authorizeStats.record(Outcome.DENIED, start));
+         return Permissions.NONE;
+      }
+
+      int accountId = info.getId();
+      int mask = Permissions.AUTHENTICATED | PermissionTable.maskOf(record);
+      if (isAccountAtmAccessOk(info)) mask |= Permissions.ATM_ACCESS;
+      if (LogHelper.isFiner())
+         LogHelper.finer("authorize returning mask " + mask +
+            " for account " + accountId);
+      event.finish("AUTHORIZE", info, authorizeStats.succeeded(start));
+      return mask;
+   }
+
  } // end Bank
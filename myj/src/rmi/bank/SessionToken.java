@@ -0,0 +1,57 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.Serializable;
+
+/**
+ *         The class <code> SessionToken </code> is handed to a client by
+ *         <code> ATM.openSession </code> once its AccountInfo has
+ *         authenticated. The client then passes the token, instead of the
+ *         account and its pin, to later operations until the session is
+ *         closed or expires. The token never carries the pin.
+ */
+public class SessionToken implements Serializable {
+
+   /*** State variables for class SessionToken */
+   private long session_id;   // A random, hard to guess, session id
+   private int account_id;    // The account the session was opened for
+   private long expires_at;   // When the session expires, in epoch millis
+
+   //// Constructor for SessionToken ////
+   public SessionToken(long creation_session_id, int creation_account_id,
+      long creation_expires_at) {
+      session_id = creation_session_id;
+      account_id = creation_account_id;
+      expires_at = creation_expires_at;
+   }
+
+   /**
+    * <code> getSessionId </code> returns the id the ATM knows this session by.
+    *
+    * @return the session id
+    */
+   public long getSessionId() {
+      return session_id;
+   }
+
+   /**
+    * <code> getAccountId </code> returns the account this session acts upon.
+    *
+    * @return the account id
+    */
+   public int getAccountId() {
+      return account_id;
+   }
+
+   /**
+    * <code> getExpiresAt </code> returns when the session expires.
+    *
+    * @return the expiry time, in milliseconds since the epoch
+    */
+   public long getExpiresAt() {
+      return expires_at;
+   }
+
+} // end class SessionToken
@@ -0,0 +1,219 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *         The class <code> Sessions </code> holds the sessions opened
+ *         on an ATM via <code> ATM.openSession </code>. A session keeps
+ *         what the ATM learned when the account authenticated (its
+ *         permissions and its Account reference), so that later operations
+ *         on the session do not authenticate again.
+ *
+ *         Sessions is not RMI-remote enabled; it is used by ATMImpl only.
+ *         It is safe for concurrent use, holds at most a fixed number of
+ *         sessions, and forgets a session once it is closed or expired.
+ *
+ *         Each session holds a permit of a semaphore of maxSessions
+ *         permits, taken when it opens and given back by whichever of
+ *         close, get (on expiry) or the purger removes it from the map, so
+ *         concurrent opens cannot go past the bound. A purger thread drops
+ *         expired sessions at a fixed interval, off the path of open. An
+ *         open that finds no permit purges too, at most once a second
+ *         across all callers, and tries once more before refusing, so a
+ *         full ATM does not wait for the purger to reuse expired slots.
+ */
+public class Sessions {
+
+   // An open finding no room purges at most this often
+   private static final long INLINE_PURGE_MILLIS = 1000;
+
+   /**
+    * A <code> Session </code> is the ATM-side state of one open session.
+    */
+   public static class Session {
+      private final AccountInfo info;    // Kept for notifications
+      private final int permissions;     // As returned by Security.authorize
+      private final Account account;     // From Bank.getAccount, or null
+      private final long expiresAt;      // Epoch millis
+
+      Session(AccountInfo sessionInfo, int sessionPermissions,
+         Account sessionAccount, long sessionExpiresAt) {
+         info = sessionInfo;
+         permissions = sessionPermissions;
+         account = sessionAccount;
+         expiresAt = sessionExpiresAt;
+      }
+
+      public AccountInfo getAccountInfo() { return info; }
+      public int getPermissions() { return permissions; }
+      public Account getAccount() { return account; }
+
+      boolean isExpired(long now) {
+         return now >= expiresAt;
+      }
+   } // end class Session
+
+   /*** State variables for class Sessions */
+   private final ConcurrentMap<Long, Session> sessions
+      = new ConcurrentHashMap<Long, Session>();
+   private final SecureRandom random = new SecureRandom();
+   private final int maxSessions;   // Bound on concurrently open sessions
+   private final Semaphore slots;   // One permit per session not yet open
+   private final long ttlMillis;    // Lifetime of a session
+
+   private final ScheduledExecutorService purger;
+   private final AtomicLong lastInlinePurge = new AtomicLong();
+
+   /* Constructor for Sessions, purged every purgeIntervalMillis */
+   public Sessions(int maxOpenSessions, long sessionTtlMillis,
+      long purgeIntervalMillis) {
+      assert maxOpenSessions > 0 : "Sessions needs room for one session!";
+      maxSessions = maxOpenSessions;
+      slots = new Semaphore(maxOpenSessions);
+      ttlMillis = sessionTtlMillis;
+
+      purger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "session-purger");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      purger.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            purgeExpired(System.currentTimeMillis());
+         }
+      }, purgeIntervalMillis, purgeIntervalMillis, TimeUnit.MILLISECONDS);
+      LogHelper.fine("Sessions: created with room for " + maxSessions
+         + " sessions of " + ttlMillis + " ms, purged every "
+         + purgeIntervalMillis + " ms");
+   }
+
+   /**
+    * <code> open </code> stores a new session and returns its token.
+    *
+    * @return
+    *    the token the client will present on later operations
+    * @throws ATMException
+    *    if the maximum number of sessions is already open
+    */
+   public SessionToken open(AccountInfo info, int permissions, Account account)
+      throws ATMException {
+      if (slots.tryAcquire() == false) {
+         // Full: drop the expired sessions now, if no caller did lately,
+         // rather than wait for the purger, and try once more
+         purgeIfDue(System.currentTimeMillis());
+         if (slots.tryAcquire() == false) {
+            LogHelper.warn("Sessions: no room for a new session!");
+            throw new ATMException ("Too many open sessions, try again later!");
+         }
+      }
+
+      long now = System.currentTimeMillis();
+      Session session = new Session(info, permissions, account, now + ttlMillis);
+      long id;
+      do {
+         id = random.nextLong();
+      } while (sessions.putIfAbsent(id, session) != null);
+
+      if (LogHelper.isFiner())
+         LogHelper.finer("Sessions: opened a session for account " + info.getId());
+      return new SessionToken(id, info.getId(), now + ttlMillis);
+   }
+
+   /**
+    * <code> get </code> returns the session matching a token.
+    *
+    * @throws ATMException
+    *    if the session is unknown, closed, expired, or was not opened
+    *    for the token's account
+    */
+   public Session get(SessionToken token) throws ATMException {
+      if (token == null)
+         throw new ATMException ("No session provided!");
+
+      Session session = sessions.get(token.getSessionId());
+      if (session == null
+          || session.getAccountInfo().getId() != token.getAccountId()) {
+         LogHelper.fine("Sessions: unknown session for account "
+            + token.getAccountId());
+         throw new ATMException ("Session closed or unknown!");
+      }
+      if (session.isExpired(System.currentTimeMillis())) {
+         remove(token.getSessionId(), session);
+         LogHelper.fine("Sessions: expired session for account "
+            + token.getAccountId());
+         throw new ATMException ("Session expired!");
+      }
+      return session;
+   }
+
+   /**
+    * <code> close </code> forgets the session matching a token. Closing an
+    * unknown or already closed session does nothing.
+    */
+   public void close(SessionToken token) {
+      if (token == null) return;
+      Session session = sessions.get(token.getSessionId());
+      if (session != null
+          && session.getAccountInfo().getId() == token.getAccountId()
+          && remove(token.getSessionId(), session)) {
+         if (LogHelper.isFiner())
+            LogHelper.finer("Sessions: closed a session for account "
+               + token.getAccountId());
+      }
+   }
+
+   /**
+    * @return the number of sessions currently held, expired or not
+    */
+   public int size() {
+      return sessions.size();
+   }
+
+   // Drop a session and give back its slot, unless another caller
+   // dropped it first
+   private boolean remove(long id, Session session) {
+      if (sessions.remove(id, session) == false) return false;
+      slots.release();
+      return true;
+   }
+
+   // Drop every expired session on the open path, unless a caller did
+   // within INLINE_PURGE_MILLIS: a single caller wins the purge
+   private void purgeIfDue(long now) {
+      long last = lastInlinePurge.get();
+      if (now - last >= INLINE_PURGE_MILLIS
+          && lastInlinePurge.compareAndSet(last, now))
+         purgeExpired(now);
+   }
+
+   // Drop every expired session, on the purger thread or from purgeIfDue
+   private void purgeExpired(long now) {
+      int purged = 0;
+      Iterator<Map.Entry<Long, Session>> itr = sessions.entrySet().iterator();
+      while (itr.hasNext()) {
+         Map.Entry<Long, Session> entry = itr.next();
+         if (entry.getValue().isExpired(now)
+             && remove(entry.getKey(), entry.getValue())) purged++;
+      }
+      if (purged > 0)
+         LogHelper.fine("Sessions: purged {} expired sessions", purged);
+   }
+
+} // end class Sessions
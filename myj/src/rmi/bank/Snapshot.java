@@ -0,0 +1,188 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ *         The class <code> Snapshot </code> writes and loads checkpoints of
+ *         every account balance, so that a restart replays only the
+ *         journal written since the last checkpoint, rather than all of
+ *         it. A snapshot file is a HEADER_BYTES header (magic, version,
+ *         account count, journal offset, CRC32 of the entries) followed by
+ *         one ENTRY_BYTES entry (id, balance in cents) per account. It is
+ *         written and read through a memory mapping.
+ *
+ *         A checkpoint does not stop the bank: it notes the journal offset,
+ *         then reads each balance holding only that account's stripe, while
+ *         other operations go on. The balances read may therefore be newer
+ *         than the offset, but never older. Every change made after the
+ *         offset is journaled after it, and replaying a journal record
+ *         sets a balance (it does not add to it). So the snapshot plus the
+ *         journal from the offset on gives the same balances as the whole
+ *         journal.
+ *
+ *         A snapshot is written to a temporary file, forced to disk, then
+ *         renamed over the previous one, so a crash mid-checkpoint leaves
+ *         the previous snapshot in place.
+ */
+public class Snapshot {
+
+   private static final long MAGIC = 0x524D4942414E4B53L; // "RMIBANKS"
+   private static final int VERSION = 1;
+   static final int HEADER_BYTES = 32;
+   static final int ENTRY_BYTES = 12;
+
+   /*** State variables for class Snapshot */
+   private final File file;
+   private final int count;       // The number of accounts held
+   private final long lsn;        // The journal offset to replay from
+   private final MappedByteBuffer entries;
+
+   //// Constructor, used by read ////
+   private Snapshot(File snapshotFile, int accountCount, long journalLsn,
+      MappedByteBuffer mapped) {
+      file = snapshotFile;
+      count = accountCount;
+      lsn = journalLsn;
+      entries = mapped;
+   }
+
+   /**
+    * <code> write </code> checkpoints every balance of a store.
+    *
+    * @param
+    *    store - the store, which may be in use meanwhile
+    *    journal - the store's journal, for the offset to replay from
+    *    target - the snapshot file, replaced once the new one is on disk
+    *
+    * @return
+    *    the journal offset recorded in the snapshot
+    */
+   public static long write(AccountStore store, Journal journal, File target)
+      throws IOException {
+
+      // The offset first: all changes before it are in memory by now,
+      // and changes after it are in the journal's tail
+      long lsn = journal.getAppendedLsn();
+      int[] ids = store.ids();
+      long size = HEADER_BYTES + (long) ids.length * ENTRY_BYTES;
+      if (size > Integer.MAX_VALUE)
+         throw new IOException ("Too many accounts for one snapshot!");
+
+      File temp = new File(target.getPath() + ".tmp");
+      int written = 0;
+      CRC32 crc = new CRC32();
+      try (FileChannel channel = FileChannel.open(temp.toPath(),
+              StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+         MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+         out.position(HEADER_BYTES);
+         for (int id : ids) {
+            Account account = store.get(id);
+            if (account == null) continue;
+            out.putInt(id).putLong(account.getBalanceCents());
+            written++;
+         }
+         int end = out.position();
+
+         ByteBuffer body = out.duplicate();
+         body.position(HEADER_BYTES).limit(end);
+         crc.update(body);
+         out.putLong(0, MAGIC).putInt(8, VERSION).putInt(12, written)
+            .putLong(16, lsn).putInt(24, (int) crc.getValue());
+         out.force();
+         channel.truncate(end);
+         channel.force(true);
+      }
+
+      // Every balance read above has its journal record appended by now
+      // (an account's record is appended under its stripe, which
+      // getBalanceCents takes too). They must be on disk before the snapshot replaces the
+      // old one: else, after a crash, the snapshot could hold changes the
+      // journal lost, and its offset could lie past the journal's end.
+      try {
+         journal.awaitDurable(journal.getAppendedLsn());
+      }
+      catch (ATMException e) {
+         temp.delete();
+         throw new IOException ("Journal not durable: " + e.getMessage());
+      }
+      Files.move(temp.toPath(), target.toPath(),
+         StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      LogHelper.fine("Snapshot: wrote " + written + " accounts at journal offset "
+         + lsn + " to " + target);
+      return lsn;
+   } // end write
+
+   /**
+    * <code> read </code> maps a snapshot file and checks it.
+    *
+    * @return
+    *    the snapshot, or null if there is none or it is damaged, in which
+    *    case the whole journal must be replayed
+    */
+   public static Snapshot read(File file) throws IOException {
+      if (file.exists() == false) return null;
+      try (FileChannel channel = FileChannel.open(file.toPath(),
+              StandardOpenOption.READ)) {
+         long size = channel.size();
+         if (size < HEADER_BYTES) {
+            LogHelper.warn("Snapshot: " + file + " is truncated, ignoring it!");
+            return null;
+         }
+         MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+         int count = in.getInt(12);
+         if (in.getLong(0) != MAGIC || in.getInt(8) != VERSION
+             || count < 0 || size != HEADER_BYTES + (long) count * ENTRY_BYTES) {
+            LogHelper.warn("Snapshot: " + file + " is not a valid snapshot, ignoring it!");
+            return null;
+         }
+         CRC32 crc = new CRC32();
+         ByteBuffer body = in.duplicate();
+         body.position(HEADER_BYTES);
+         crc.update(body);
+         if ((int) crc.getValue() != in.getInt(24)) {
+            LogHelper.warn("Snapshot: " + file + " fails its checksum, ignoring it!");
+            return null;
+         }
+         return new Snapshot(file, count, in.getLong(16), in);
+      }
+   } // end read
+
+   /**
+    * <code> restore </code> loads every balance of the snapshot into a
+    * store, before the store is shared.
+    */
+   public void restore(AccountStore store) throws ATMException {
+      ByteBuffer in = entries.duplicate();
+      in.position(HEADER_BYTES);
+      for (int i = 0; i < count; i++)
+         store.restore(in.getInt(), in.getLong());
+      LogHelper.fine("Snapshot: restored " + count + " accounts from " + file);
+   }
+
+   /**
+    * @return the number of accounts in the snapshot
+    */
+   public int getCount() {
+      return count;
+   }
+
+   /**
+    * @return the journal offset to replay from, after restoring
+    */
+   public long getLsn() {
+      return lsn;
+   }
+
+} // end class Snapshot
@@ -0,0 +1,124 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *         The class <code> SocketStats </code> counts the traffic of the RMI
+ *         connections of one remote interface, on one side: the "client"
+ *         side calling it or the "server" side exporting it, so that both
+ *         can be told apart when they share a jvm. The connections are made
+ *         by a TunedSocketFactory, which feeds the counts.
+ *
+ *         A call is timed from the connection's first write after reading
+ *         to its first read after writing on the client side (round trip),
+ *         from its first read after writing to its first write after
+ *         reading on the server side (time in the server). RMI's own
+ *         traffic on the connections, e.g. the handshake of a new
+ *         connection and distributed garbage collection calls, counts as
+ *         calls too.
+ */
+public class SocketStats {
+
+   // The stats of this jvm, by interface name and side
+   private static final ConcurrentMap<String, SocketStats> all
+      = new ConcurrentHashMap<String, SocketStats>();
+
+   /*** State variables for class SocketStats */
+   private final String name;
+   private final String side;
+   final AtomicLong opened = new AtomicLong();     // Connections opened
+   final AtomicInteger open = new AtomicInteger(); // Connections open now
+   final AtomicLong bytesIn = new AtomicLong();
+   final AtomicLong bytesOut = new AtomicLong();
+   final AtomicLong calls = new AtomicLong();
+   final AtomicLong callNanos = new AtomicLong();
+   final AtomicLong maxCallNanos = new AtomicLong();
+
+   private SocketStats(String interfaceName, String connectionSide) {
+      name = interfaceName;
+      side = connectionSide;
+   }
+
+   /**
+    * <code> of </code> returns the stats of a remote interface on one side,
+    * created on first use.
+    *
+    * @param
+    *    name - the remote interface, e.g. Bank
+    *    side - "client" or "server"
+    */
+   public static SocketStats of(String name, String side) {
+      String key = name + "." + side;
+      SocketStats stats = all.get(key);
+      if (stats == null) {
+         SocketStats created = new SocketStats(name, side);
+         stats = all.putIfAbsent(key, created);
+         if (stats == null) stats = created;
+      }
+      return stats;
+   }
+
+   /**
+    * @return the stats of every interface and side used in this jvm
+    */
+   public static List<SocketStats> all() {
+      List<SocketStats> list = new ArrayList<SocketStats>(all.values());
+      Collections.sort(list, new java.util.Comparator<SocketStats>() {
+         @Override
+         public int compare(SocketStats a, SocketStats b) {
+            return a.toKey().compareTo(b.toKey());
+         }
+      });
+      return list;
+   }
+
+   void recordCall(long nanos) {
+      calls.incrementAndGet();
+      callNanos.addAndGet(nanos);
+      long max;
+      while (nanos > (max = maxCallNanos.get())
+             && maxCallNanos.compareAndSet(max, nanos) == false) {
+         // Lost a race with a longer call, try again
+      }
+   }
+
+   public String getName() { return name; }
+   public String getSide() { return side; }
+   public long getConnectionsOpened() { return opened.get(); }
+   public int getConnectionsOpen() { return open.get(); }
+   public long getBytesIn() { return bytesIn.get(); }
+   public long getBytesOut() { return bytesOut.get(); }
+   public long getCalls() { return calls.get(); }
+   public long getMaxCallNanos() { return maxCallNanos.get(); }
+
+   /**
+    * @return the mean time of a call, in nanoseconds, 0 if none
+    */
+   public long getMeanCallNanos() {
+      long n = calls.get();
+      return n == 0 ? 0 : callNanos.get() / n;
+   }
+
+   @Override
+   public String toString() {
+      return String.format("%s %s: %d connections (%d open), %d calls, "
+         + "mean %.1f us, max %.1f us, %d bytes in, %d bytes out",
+         name, side, opened.get(), open.get(), calls.get(),
+         getMeanCallNanos() / 1e3, maxCallNanos.get() / 1e3,
+         bytesIn.get(), bytesOut.get());
+   }
+
+   private String toKey() {
+      return name + "." + side;
+   }
+
+} // end class SocketStats
@@ -0,0 +1,213 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *         The class <code> StubHolder </code> looks up a remote object in
+ *         the registry once, and caches its stub. A process needs a single
+ *         holder per registry url, obtained via <code> of </code>, which
+ *         all its users share.
+ *
+ *         The <code> proxy </code> of a holder implements the remote
+ *         interface and calls through the cached stub. If a call fails
+ *         because the stub is stale, i.e. its server is down or was
+ *         restarted (ConnectException, ConnectIOException or
+ *         NoSuchObjectException, all raised before the call reaches the
+ *         object), the holder drops the stub and the call is retried once
+ *         on a fresh one. Concurrent callers that hit the same stale stub
+ *         share a single new lookup. A failed lookup is not retried for
+ *         a backoff time, doubled on every failure up to a maximum, during
+ *         which calls fail fast.
+ */
+public class StubHolder<T extends Remote> {
+
+   private static final long MIN_BACKOFF_MILLIS
+      = Long.getLong("rmi.bank.lookup.minBackoffMillis", 100);
+   private static final long MAX_BACKOFF_MILLIS
+      = Long.getLong("rmi.bank.lookup.maxBackoffMillis", 10000);
+
+   // The holders of this process, by url
+   private static final Map<String, StubHolder<?>> holders
+      = new HashMap<String, StubHolder<?>>();
+
+   /*** State variables for class StubHolder */
+   private final String url;
+   private final Class<T> type;
+   private volatile T stub;         // The cached stub, null until looked up
+   private final T proxy;
+
+   // Guarded by this
+   private long backoffMillis;      // Wait after the last failed lookup
+   private long nextLookupAt;       // No lookup before this time
+   private Exception lastFailure;   // The cause of the last failed lookup
+   private long lookups;
+   private long failures;
+
+   //// Constructor, via of ////
+   private StubHolder(String lookupUrl, Class<T> remoteType) {
+      url = lookupUrl;
+      type = remoteType;
+      proxy = type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+         new Class<?>[] { type }, new Handler()));
+   }
+
+   /**
+    * <code> of </code> returns the holder of this process for a url,
+    * creating it on first use. No lookup is made until a stub is needed.
+    *
+    * @param
+    *    url - the registry url, e.g. //localhost/bank
+    *    type - the remote interface bound at the url
+    */
+   public static synchronized <T extends Remote> StubHolder<T> of(String url,
+      Class<T> type) {
+      StubHolder<?> holder = holders.get(url);
+      if (holder == null) {
+         holder = new StubHolder<T>(url, type);
+         holders.put(url, holder);
+      }
+      assert holder.type == type : "StubHolder for " + url + " has another type!";
+      @SuppressWarnings("unchecked")
+      StubHolder<T> typed = (StubHolder<T>) holder;
+      return typed;
+   }
+
+   /**
+    * <code> proxy </code> returns an object implementing the remote
+    * interface, calling through the cached stub and replacing it when
+    * stale.
+    */
+   public T proxy() {
+      return proxy;
+   }
+
+   /**
+    * <code> get </code> returns the cached stub, looking it up first if
+    * there is none.
+    *
+    * @throws RemoteException
+    *    if the lookup fails, or failed less than the backoff time ago
+    */
+   public T get() throws RemoteException {
+      T current = stub;
+      if (current != null) return current;
+      synchronized (this) {
+         // Another caller may have looked it up while we waited
+         if (stub != null) return stub;
+
+         long now = System.currentTimeMillis();
+         if (now < nextLookupAt) {
+            throw new ConnectException ("Lookup of " + url + " failed, retrying in "
+               + (nextLookupAt - now) + " ms", lastFailure);
+         }
+         lookups++;
+         try {
+            stub = type.cast(Naming.lookup(url));
+            backoffMillis = 0;
+            lastFailure = null;
+            LogHelper.fine("StubHolder: looked up " + url);
+            return stub;
+         }
+         catch (Exception e) {
+            failures++;
+            lastFailure = e;
+            backoffMillis = backoffMillis == 0 ? MIN_BACKOFF_MILLIS
+               : Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            nextLookupAt = now + backoffMillis;
+            LogHelper.warn("StubHolder: lookup of " + url + " failed, next try in "
+               + backoffMillis + " ms: " + e);
+            if (e instanceof RemoteException) throw (RemoteException) e;
+            throw new ConnectException ("Lookup of " + url + " failed", e);
+         }
+      }
+   }
+
+   /**
+    * <code> invalidate </code> drops a stale stub, unless it was already
+    * replaced by a fresh one.
+    */
+   public synchronized void invalidate(T stale) {
+      if (stub == stale) {
+         stub = null;
+         LogHelper.fine("StubHolder: dropped the stale stub of " + url);
+      }
+   }
+
+   public String getUrl() {
+      return url;
+   }
+
+   public synchronized long getLookupCount() {
+      return lookups;
+   }
+
+   public synchronized long getFailedLookupCount() {
+      return failures;
+   }
+
+   @Override
+   public String toString() {
+      return "StubHolder[" + url + "]";
+   }
+
+   /*** private functions ***/
+
+   // True if a call failed before reaching the remote object
+   private static boolean isStale(Throwable t) {
+      return t instanceof ConnectException || t instanceof ConnectIOException
+         || t instanceof NoSuchObjectException;
+   }
+
+   /**
+    * The <code> Handler </code> of the proxy: call through the cached
+    * stub, and once more through a fresh one if it was stale.
+    */
+   private class Handler implements InvocationHandler {
+      @Override
+      public Object invoke(Object self, Method method, Object[] args)
+         throws Throwable {
+
+         if (method.getDeclaringClass() == Object.class) {
+            if (method.getName().equals("equals")) return self == args[0];
+            if (method.getName().equals("hashCode")) return System.identityHashCode(self);
+            return StubHolder.this.toString();
+         }
+
+         T target = get();
+         try {
+            return method.invoke(target, args);
+         }
+         catch (InvocationTargetException e) {
+            if (isStale(e.getCause()) == false) throw e.getCause();
+            LogHelper.fine("StubHolder: " + method.getName() + " on " + url
+               + " failed, looking up again: " + e.getCause());
+            invalidate(target);
+         }
+
+         // The call did not reach the object; one more try on a fresh stub
+         target = get();
+         try {
+            return method.invoke(target, args);
+         }
+         catch (InvocationTargetException e) {
+            if (isStale(e.getCause())) invalidate(target);
+            throw e.getCause();
+         }
+      }
+   } // end class Handler
+
+} // end class StubHolder
@@ -3,6 +3,8 @@
  */
 package rmi.bank;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /**
@@ -10,6 +12,8 @@ import java.io.Serializable;
  *         encapsulates a notification regarding an account that is sent to
  *         all registered listeners (in the real world, it would be serialized
  *         with custom methods implementing encryption...
+ *
+ *         It travels as a compact WireForm, not by default serialization.
  */
 public class TransactionNotification implements Serializable {
 
@@ -17,7 +21,7 @@ public class TransactionNotification implements Serializable {
    private int account1_id;      // The first and generally the only account id
    private int account2_id;      // The second account id, if any
    private Operation operation;  // The operation performed
-   private Float amount;
+   private long amountCents;     // The amount transacted, in cents
 
    // Formatting Strings
    private static final String HEADER = "<Transaction Notification Message>";
@@ -25,7 +29,7 @@ public class TransactionNotification implements Serializable {
    //// Constructor ////
    /* Constructor for TransactionNotification for 1 and 2 account operations */
    public TransactionNotification(AccountInfo info1, AccountInfo info2,
-      Operation operationPerformed, Float amountTransacted)
+      Operation operationPerformed, long centsTransacted)
    {
       assert (info1 != null) : "Missing AccountInfo object";
 
@@ -37,7 +41,7 @@ public class TransactionNotification implements Serializable {
       // Now save the data
       account1_id = info1.getId();
       operation = operationPerformed;
-      amount = amountTransacted;
+      amountCents = centsTransacted;
 
       // Save account2_id if provided, else mark explicitly as not to be used.
       if (info2 != null)
@@ -45,8 +49,26 @@ public class TransactionNotification implements Serializable {
       else
          account2_id = -1;
 
-      LogHelper.fine ("TransactionNotification constructor created with operation "
-         + operationPerformed);
+      LogHelper.fine ("TransactionNotification constructor created with operation {}",
+         operationPerformed);
+   }
+
+   /* Constructor for WireForm, from the ids sent */
+   TransactionNotification(int id1, int id2, Operation operationPerformed,
+      long centsTransacted)
+   {
+      account1_id = id1;
+      account2_id = id2;
+      operation = operationPerformed;
+      amountCents = centsTransacted;
+   }
+
+   /* Constructor kept for compatibility, with the amount in dollars */
+   public TransactionNotification(AccountInfo info1, AccountInfo info2,
+      Operation operationPerformed, Float amountTransacted) throws ATMException
+   {
+      this(info1, info2, operationPerformed,
+         amountTransacted == null ? 0 : Money.toCents(amountTransacted));
    }
 
 
@@ -60,6 +82,16 @@ public class TransactionNotification implements Serializable {
       operation = Operation.UNINITALIZED;
    }
 
+   /**
+    * Return the id of the account, the source account of a transfer
+    *
+    * @return
+    *    The account id, -1 if unknown
+    */
+   public int getAccountId() {
+      return account1_id;
+   }
+
    /**
     * Return the operation performed as an enum
     *
@@ -70,6 +102,26 @@ public class TransactionNotification implements Serializable {
       return operation;
    }
 
+   /**
+    * Return the amount transacted, in cents
+    *
+    * @return
+    *    The amount, 0 for a BALANCE operation
+    */
+   public long getAmountCents() {
+      return amountCents;
+   }
+
+   /**
+    * Return the amount transacted, in dollars (kept for compatibility)
+    *
+    * @return
+    *    The amount, 0 for a BALANCE operation
+    */
+   public float getAmount() {
+      return Money.toDollars(amountCents);
+   }
+
 
    /**
     * Decode the notification and make it printable
@@ -83,16 +135,16 @@ public class TransactionNotification implements Serializable {
       String msg;
       switch (operation) {
          case TRANSFER:
-            msg = String.format("%s\n%s $%.2f from account %d to account %d",
-               HEADER, operation, amount, account1_id, account2_id);
+            msg = String.format("%s\n%s $%s from account %d to account %d",
+               HEADER, operation, Money.format(amountCents), account1_id, account2_id);
             break;
          case DEPOSIT:
-            msg = String.format("%s\n%s $%.2f, into account %d",
-               HEADER, operation, amount, account1_id);
+            msg = String.format("%s\n%s $%s, into account %d",
+               HEADER, operation, Money.format(amountCents), account1_id);
             break;
          case WITHDRAW:
-            msg = String.format("%s\n%s $%.2f, from account %d",
-               HEADER, operation, amount, account1_id);
+            msg = String.format("%s\n%s $%s, from account %d",
+               HEADER, operation, Money.format(amountCents), account1_id);
             break;
          case BALANCE:
             msg = String.format("%s\n%s for account %d",
@@ -102,11 +154,21 @@ public class TransactionNotification implements Serializable {
             msg = String.format("%s enum received! (Internal Error!)",
                HEADER, operation);
          }
-      LogHelper.finer("Transaction Notification toString called, returned: "
-         + msg);
+      LogHelper.finer("Transaction Notification toString called, returned: {}",
+         msg);
       return msg;
    }
 
+   /*** Serialization, via WireForm ***/
+
+   private Object writeReplace() {
+      return new WireForm(account1_id, account2_id, operation, amountCents);
+   }
+
+   private void readObject(ObjectInputStream in) throws InvalidObjectException {
+      throw new InvalidObjectException ("TransactionNotification is sent as a WireForm!");
+   }
+
 
 } // end class TransactionNotification
 
@@ -0,0 +1,340 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *         The class <code> TunedSocketFactory </code> makes the sockets of
+ *         the RMI connections to one remote interface. The exporting server
+ *         chooses its settings, and they travel in the stubs to the
+ *         callers, which make their connections the same way. Every
+ *         connection is counted in the SocketStats of its interface, on
+ *         each side.
+ *
+ *         The settings apply per hop: "atm" for the objects ATMServer
+ *         exports to clients (ATM, ATMFactory), "bank" for the objects
+ *         BankServer exports to the ATMs (Bank, Security, Account). They
+ *         are read at export time from system properties, for a hop h:
+ *
+ *            rmi.bank.rmi.h.tcpNoDelay          default true
+ *            rmi.bank.rmi.h.keepAlive           default true
+ *            rmi.bank.rmi.h.sendBufferBytes     default 0, the system's
+ *            rmi.bank.rmi.h.receiveBufferBytes  default 0, the system's
+ *            rmi.bank.rmi.h.maxConnections      default 0, unlimited
+ *
+ *         maxConnections caps the connections a server keeps open to an
+ *         interface; a new connection waits to be accepted until another
+ *         closes, so callers reuse the ones open. How long a caller keeps
+ *         an idle connection for reuse is RMI's own per-jvm setting,
+ *         sun.rmi.transport.connectionTimeout (15 seconds by default).
+ *
+ *         -Drmi.bank.rmi.tunedSockets=false exports with RMI's default
+ *         sockets instead.
+ */
+public class TunedSocketFactory
+   implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+
+   private static final long serialVersionUID = 1L;
+
+   // The factories exported by this jvm, by hop and interface
+   private static final Map<String, TunedSocketFactory> exported
+      = new HashMap<String, TunedSocketFactory>();
+
+   /*** State variables for class TunedSocketFactory */
+   private final String hop;
+   private final String name;          // The remote interface
+   private final boolean tcpNoDelay;
+   private final boolean keepAlive;
+   private final int sendBufferBytes;
+   private final int receiveBufferBytes;
+   private final int maxConnections;
+   private transient Semaphore permits; // Server side, if maxConnections > 0
+
+   //// Constructor ////
+   public TunedSocketFactory(String hopName, String interfaceName,
+      boolean noDelay, boolean alive, int sendBytes, int receiveBytes,
+      int maxOpenConnections) {
+      hop = hopName;
+      name = interfaceName;
+      tcpNoDelay = noDelay;
+      keepAlive = alive;
+      sendBufferBytes = sendBytes;
+      receiveBufferBytes = receiveBytes;
+      maxConnections = maxOpenConnections;
+   }
+
+   /**
+    * <code> forHop </code> returns the factory to export a remote
+    * interface with, configured by the properties of its hop, or null
+    * (RMI's default sockets) if tuned sockets are turned off.
+    *
+    * @param
+    *    hop - "atm" or "bank"
+    *    name - the remote interface, e.g. Bank
+    */
+   public static synchronized TunedSocketFactory forHop(String hop, String name) {
+      // Read here, not when the class loads: the registry loads it too,
+      // under a security manager that denies reading properties
+      if (Boolean.parseBoolean(System.getProperty("rmi.bank.rmi.tunedSockets", "true")) == false)
+         return null;
+      String key = hop + "." + name;
+      TunedSocketFactory factory = exported.get(key);
+      if (factory == null) {
+         String prefix = "rmi.bank.rmi." + hop + ".";
+         factory = new TunedSocketFactory(hop, name,
+            Boolean.parseBoolean(System.getProperty(prefix + "tcpNoDelay", "true")),
+            Boolean.parseBoolean(System.getProperty(prefix + "keepAlive", "true")),
+            Integer.getInteger(prefix + "sendBufferBytes", 0),
+            Integer.getInteger(prefix + "receiveBufferBytes", 0),
+            Integer.getInteger(prefix + "maxConnections", 0));
+         exported.put(key, factory);
+         LogHelper.fine("TunedSocketFactory: exporting with {}", factory);
+      }
+      return factory;
+   }
+
+   @Override
+   public Socket createSocket(String host, int port) throws IOException {
+      CountingSocket socket = new CountingSocket(SocketStats.of(name, "client"),
+         false, null);
+      try {
+         configure(socket);
+         socket.connect(new InetSocketAddress(host, port));
+      }
+      catch (IOException e) {
+         socket.close();
+         throw e;
+      }
+      socket.opened();
+      return socket;
+   }
+
+   @Override
+   public ServerSocket createServerSocket(int port) throws IOException {
+      synchronized (this) {
+         if (maxConnections > 0 && permits == null)
+            permits = new Semaphore(maxConnections);
+      }
+      ServerSocket server = new TunedServerSocket(SocketStats.of(name, "server"), permits);
+      if (receiveBufferBytes > 0) server.setReceiveBufferSize(receiveBufferBytes);
+      server.bind(new InetSocketAddress(port));
+      return server;
+   }
+
+   public String getHop() {
+      return hop;
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (o == this) return true;
+      if (o == null || o.getClass() != getClass()) return false;
+      TunedSocketFactory other = (TunedSocketFactory) o;
+      return hop.equals(other.hop) && name.equals(other.name)
+         && tcpNoDelay == other.tcpNoDelay && keepAlive == other.keepAlive
+         && sendBufferBytes == other.sendBufferBytes
+         && receiveBufferBytes == other.receiveBufferBytes
+         && maxConnections == other.maxConnections;
+   }
+
+   @Override
+   public int hashCode() {
+      int h = hop.hashCode() * 31 + name.hashCode();
+      h = h * 31 + (tcpNoDelay ? 1 : 0) + (keepAlive ? 2 : 0);
+      h = h * 31 + sendBufferBytes;
+      h = h * 31 + receiveBufferBytes;
+      return h * 31 + maxConnections;
+   }
+
+   @Override
+   public String toString() {
+      return "TunedSocketFactory[" + hop + " " + name + ", tcpNoDelay " + tcpNoDelay
+         + ", keepAlive " + keepAlive + ", send " + sendBufferBytes + ", receive "
+         + receiveBufferBytes + ", maxConnections " + maxConnections + "]";
+   }
+
+   /*** private functions ***/
+
+   // Apply the settings, which RMI may not change afterwards
+   private void configure(CountingSocket socket) throws IOException {
+      socket.setTcpNoDelay(tcpNoDelay);
+      socket.setKeepAlive(keepAlive);
+      if (sendBufferBytes > 0) socket.setSendBufferSize(sendBufferBytes);
+      if (receiveBufferBytes > 0) socket.setReceiveBufferSize(receiveBufferBytes);
+      socket.configured = true;
+   }
+
+   /**
+    * A <code> TunedServerSocket </code> accepts configured, counting
+    * sockets, at most maxConnections open at once.
+    */
+   private class TunedServerSocket extends ServerSocket {
+      private final SocketStats stats;
+      private final Semaphore limit;
+
+      TunedServerSocket(SocketStats serverStats, Semaphore permits)
+         throws IOException {
+         super();
+         stats = serverStats;
+         limit = permits;
+      }
+
+      @Override
+      public Socket accept() throws IOException {
+         if (limit != null) limit.acquireUninterruptibly();
+         CountingSocket socket = new CountingSocket(stats, true, limit);
+         try {
+            implAccept(socket);
+            configure(socket);
+         }
+         catch (IOException e) {
+            if (limit != null) limit.release();
+            socket.close();
+            throw e;
+         }
+         socket.opened();
+         return socket;
+      }
+   } // end class TunedServerSocket
+
+   /**
+    * A <code> CountingSocket </code> counts its bytes and times its calls
+    * in its SocketStats. RMI uses a connection for one call at a time.
+    */
+   private static class CountingSocket extends Socket {
+      private static final int READING = 1;
+      private static final int WRITING = 2;
+
+      private final SocketStats stats;
+      private final boolean serverSide;
+      private final Semaphore limit;     // Released at close, if any
+      private final AtomicBoolean closed = new AtomicBoolean();
+      private volatile boolean counted;  // Counted as open
+      boolean configured;                // By the factory, RMI may not reset it
+      private InputStream countingIn;
+      private OutputStream countingOut;
+      private int phase;
+      private long phaseStart;
+
+      CountingSocket(SocketStats socketStats, boolean server, Semaphore permits) {
+         stats = socketStats;
+         serverSide = server;
+         limit = permits;
+      }
+
+      // RMI turns these on for its sockets; the factory's settings stand
+      @Override
+      public void setTcpNoDelay(boolean on) throws java.net.SocketException {
+         if (configured == false) super.setTcpNoDelay(on);
+      }
+
+      @Override
+      public void setKeepAlive(boolean on) throws java.net.SocketException {
+         if (configured == false) super.setKeepAlive(on);
+      }
+
+      void opened() {
+         stats.opened.incrementAndGet();
+         stats.open.incrementAndGet();
+         counted = true;
+      }
+
+      @Override
+      public synchronized InputStream getInputStream() throws IOException {
+         if (countingIn == null) {
+            countingIn = new FilterInputStream(super.getInputStream()) {
+               @Override
+               public int read() throws IOException {
+                  int b = super.read();
+                  if (b >= 0) didRead(1);
+                  return b;
+               }
+
+               @Override
+               public int read(byte[] buffer, int offset, int length) throws IOException {
+                  int n = super.read(buffer, offset, length);
+                  if (n > 0) didRead(n);
+                  return n;
+               }
+            };
+         }
+         return countingIn;
+      }
+
+      @Override
+      public synchronized OutputStream getOutputStream() throws IOException {
+         if (countingOut == null) {
+            countingOut = new FilterOutputStream(super.getOutputStream()) {
+               @Override
+               public void write(int b) throws IOException {
+                  willWrite(1);
+                  out.write(b);
+               }
+
+               @Override
+               public void write(byte[] buffer, int offset, int length) throws IOException {
+                  willWrite(length);
+                  out.write(buffer, offset, length);
+               }
+            };
+         }
+         return countingOut;
+      }
+
+      @Override
+      public void close() throws IOException {
+         try {
+            super.close();
+         }
+         finally {
+            if (closed.compareAndSet(false, true)) {
+               if (counted) stats.open.decrementAndGet();
+               if (limit != null && counted) limit.release();
+            }
+         }
+      }
+
+      // A caller's call ends when its answer starts coming in
+      private void didRead(int n) {
+         stats.bytesIn.addAndGet(n);
+         if (phase != READING) {
+            long now = System.nanoTime();
+            if (serverSide == false && phase == WRITING) stats.recordCall(now - phaseStart);
+            phase = READING;
+            phaseStart = now;
+         }
+      }
+
+      // A server's call ends when its answer starts going out
+      private void willWrite(int n) {
+         stats.bytesOut.addAndGet(n);
+         if (phase != WRITING) {
+            long now = System.nanoTime();
+            if (serverSide && phase == READING) stats.recordCall(now - phaseStart);
+            phase = WRITING;
+            phaseStart = now;
+         }
+      }
+   } // end class CountingSocket
+
+} // end class TunedSocketFactory
@@ -0,0 +1,154 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+
+/**
+ *         The class <code> WireForm </code> is the serialized form of an
+ *         AccountInfo and of a TransactionNotification, which hand it to
+ *         the stream in their place (writeReplace) and are rebuilt from
+ *         it (readResolve). It writes their fields by hand, rather than
+ *         letting default serialization describe every field and class:
+ *
+ *            byte version, byte kind, then for
+ *            ACCOUNT_INFO:  int id, int pin
+ *            NOTIFICATION:  byte operation, int account1, int account2,
+ *                           long amount in cents
+ *
+ *         The operation is sent as a fixed code, not by enum name, so
+ *         reordering Operation does not change the wire. A later version
+ *         may only append fields after these: a reader reads the fields of
+ *         its own version and leaves the rest, which the stream skips (an
+ *         Externalizable's data is written in blocks), and a reader of the
+ *         later version reads them only when the version says they are
+ *         present. A kind a reader does not know is rejected.
+ *
+ *         WireForm is only for serialization: public, as Externalizable
+ *         requires of its constructor, but not to be used directly.
+ */
+final class WireForm implements Externalizable {
+
+   private static final long serialVersionUID = 1L;
+   private static final byte VERSION = 1;
+
+   // The kinds of objects
+   private static final byte ACCOUNT_INFO = 1;
+   private static final byte NOTIFICATION = 2;
+
+   /*** State variables for class WireForm */
+   private byte kind;
+   private int id1;           // The account id, or the first account id
+   private int id2;           // The pin, or the second account id
+   private byte operation;    // The operation code of a notification
+   private long amountCents;
+
+   //// Constructor for deserialization ////
+   public WireForm() {
+   }
+
+   /* Constructor for an AccountInfo */
+   WireForm(AccountInfo info) {
+      kind = ACCOUNT_INFO;
+      id1 = info.getId();
+      id2 = info.getPin();
+   }
+
+   /* Constructor for a TransactionNotification */
+   WireForm(int account1, int account2, Operation op, long cents) {
+      kind = NOTIFICATION;
+      id1 = account1;
+      id2 = account2;
+      operation = codeOf(op);
+      amountCents = cents;
+   }
+
+   @Override
+   public void writeExternal(ObjectOutput out) throws IOException {
+      out.writeByte(VERSION);
+      out.writeByte(kind);
+      switch (kind) {
+         case ACCOUNT_INFO:
+            out.writeInt(id1);
+            out.writeInt(id2);
+            break;
+         case NOTIFICATION:
+            out.writeByte(operation);
+            out.writeInt(id1);
+            out.writeInt(id2);
+            out.writeLong(amountCents);
+            break;
+         default:
+            throw new InvalidObjectException ("WireForm of unknown kind " + kind + "!");
+      }
+   }
+
+   @Override
+   public void readExternal(ObjectInput in) throws IOException {
+      // Fields a later version appends are left unread, and skipped by
+      // the stream at the end of this form's block data
+      byte version = in.readByte();
+      if (version < 1)
+         throw new InvalidObjectException ("WireForm version " + version
+            + " not supported!");
+      kind = in.readByte();
+      switch (kind) {
+         case ACCOUNT_INFO:
+            id1 = in.readInt();
+            id2 = in.readInt();
+            break;
+         case NOTIFICATION:
+            operation = in.readByte();
+            id1 = in.readInt();
+            id2 = in.readInt();
+            amountCents = in.readLong();
+            break;
+         default:
+            throw new InvalidObjectException ("WireForm of unknown kind " + kind + "!");
+      }
+   }
+
+   // Rebuild the object this form was written for
+   private Object readResolve() throws ObjectStreamException {
+      switch (kind) {
+         case ACCOUNT_INFO:
+            return new AccountInfo(id1, id2);
+         case NOTIFICATION:
+            return new TransactionNotification(id1, id2, operationOf(operation),
+               amountCents);
+         default:
+            throw new InvalidObjectException ("WireForm of unknown kind " + kind + "!");
+      }
+   }
+
+   /*** Operation codes, also used by WireProtocol ***/
+
+   static byte codeOf(Operation op) {
+      switch (op) {
+         case DEPOSIT:  return 1;
+         case WITHDRAW: return 2;
+         case BALANCE:  return 3;
+         case TRANSFER: return 4;
+         default:       return 0;
+      }
+   }
+
+   static Operation operationOf(byte code) throws InvalidObjectException {
+      switch (code) {
+         case 0: return Operation.UNINITALIZED;
+         case 1: return Operation.DEPOSIT;
+         case 2: return Operation.WITHDRAW;
+         case 3: return Operation.BALANCE;
+         case 4: return Operation.TRANSFER;
+         default:
+            throw new InvalidObjectException ("Unknown operation code " + code + "!");
+      }
+   }
+
+} // end class WireForm
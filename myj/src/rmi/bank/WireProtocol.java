@@ -0,0 +1,144 @@
+/**
+ *  Manuel W. Mendez
+ */
+package rmi.bank;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *         The class <code> WireProtocol </code> encodes and decodes the
+ *         frames ATMWireServer and ATMWireClient exchange. All integers are
+ *         big-endian. Every frame is an int length, counting the bytes
+ *         after it, then an int correlation id, chosen by the client and
+ *         echoed in the response, then a byte operation code (as in
+ *         WireForm):
+ *
+ *            request:   DEPOSIT, WITHDRAW   int id, int pin, long cents
+ *                       BALANCE             int id, int pin
+ *                       TRANSFER            int id, int pin, int toId,
+ *                                           int toPin, long cents
+ *            response:  byte status, then
+ *                       OK                  long balance cents, if BALANCE
+ *                       FAILED              short length, UTF-8 message
+ *
+ *         A client may send many requests without waiting (pipelining);
+ *         the responses may come back in any order, matched by their ids.
+ */
+final class WireProtocol {
+
+   static final int MAX_FRAME_BYTES = 1024; // After the length
+   static final int HEADER_BYTES = 9;       // Length, correlation id, operation
+   static final byte OK = 0;
+   static final byte FAILED = 1;
+   private static final int MAX_MESSAGE_CHARS = 300;
+
+   private WireProtocol() {
+   }
+
+   /**
+    * <code> frameLength </code> returns the length of the frame at the
+    * buffer's position, length included, or -1 if its length is not all
+    * there yet.
+    *
+    * @throws StreamCorruptedException
+    *    if the length is out of bounds
+    */
+   static int frameLength(ByteBuffer in) throws StreamCorruptedException {
+      if (in.remaining() < 4) return -1;
+      int length = in.getInt(in.position());
+      if (length < HEADER_BYTES - 4 || length > MAX_FRAME_BYTES)
+         throw new StreamCorruptedException ("Bad frame length " + length + "!");
+      return 4 + length;
+   }
+
+   /*** Requests ***/
+
+   static void writeRequest(ByteBuffer out, int correlationId,
+      ATMCommand command) {
+      int start = out.position();
+      out.position(start + 4);
+      Operation operation = command.getOperation();
+      out.putInt(correlationId).put(WireForm.codeOf(operation));
+      putAccount(out, command.getAccount());
+      if (operation == Operation.TRANSFER) putAccount(out, command.getToAccount());
+      if (operation != Operation.BALANCE) out.putLong(command.getAmountCents());
+      out.putInt(start, out.position() - start - 4);
+   }
+
+   /**
+    * <code> readRequest </code> decodes the request frame at the buffer's
+    * position, after its length and correlation id were read.
+    */
+   static ATMCommand readRequest(ByteBuffer in) throws IOException {
+      Operation operation = WireForm.operationOf(in.get());
+      AccountInfo info = getAccount(in);
+      switch (operation) {
+         case DEPOSIT:
+            return ATMCommand.depositCents(info, in.getLong());
+         case WITHDRAW:
+            return ATMCommand.withdrawCents(info, in.getLong());
+         case BALANCE:
+            return ATMCommand.balance(info);
+         case TRANSFER:
+            AccountInfo toInfo = getAccount(in);
+            return ATMCommand.transferCents(info, toInfo, in.getLong());
+         default:
+            throw new InvalidObjectException ("No such request: " + operation + "!");
+      }
+   }
+
+   /*** Responses ***/
+
+   static void writeResponse(ByteBuffer out, int correlationId,
+      ATMResult result) {
+      int start = out.position();
+      out.position(start + 4);
+      Operation operation = result.getOperation();
+      out.putInt(correlationId).put(WireForm.codeOf(operation));
+      if (result.isOk()) {
+         out.put(OK);
+         if (operation == Operation.BALANCE) out.putLong(result.getBalanceCents());
+      }
+      else {
+         String message = String.valueOf(result.getError().getMessage());
+         if (message.length() > MAX_MESSAGE_CHARS)
+            message = message.substring(0, MAX_MESSAGE_CHARS);
+         byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+         out.put(FAILED).putShort((short) bytes.length).put(bytes);
+      }
+      out.putInt(start, out.position() - start - 4);
+   }
+
+   /**
+    * <code> readResponse </code> decodes the response frame at the
+    * buffer's position, after its length and correlation id were read.
+    */
+   static ATMResult readResponse(ByteBuffer in) throws IOException {
+      Operation operation = WireForm.operationOf(in.get());
+      byte status = in.get();
+      if (status == OK) {
+         return ATMResult.success(operation,
+            operation == Operation.BALANCE ? Long.valueOf(in.getLong()) : null);
+      }
+      byte[] bytes = new byte[in.getShort() & 0xFFFF];
+      in.get(bytes);
+      return ATMResult.failure(operation,
+         new ATMException (new String(bytes, StandardCharsets.UTF_8)));
+   }
+
+   /*** private functions ***/
+
+   private static void putAccount(ByteBuffer out, AccountInfo info) {
+      out.putInt(info.getId()).putInt(info.getPin());
+   }
+
+   private static AccountInfo getAccount(ByteBuffer in) {
+      int id = in.getInt();
+      return new AccountInfo(id, in.getInt());
+   }
+
+} // end class WireProtocol